@@ -176,27 +176,11 @@ public class JadeNode {
 	 * @return string with newick representation of the subtree rooted at this node
 	 */
 	public String getNewick(boolean bl) {
-		StringBuffer ret = new StringBuffer("");
-		for (int i = 0; i < this.getChildCount(); i++) {
-			if (i == 0) {
-				ret.append("(");
-			}
-			ret.append(this.getChild(i).getNewick(bl));
-			if (bl) {
-			    double branchLength = this.getChild(i).getBL();
-			    if (branchLength == 0)
-			        branchLength = MIN_BRANCHLENGTH;
-
-			    ret.append(":".concat(String.valueOf(branchLength)));
-			}
-			if (i == this.getChildCount()-1) {
-				ret.append(")");
-			} else {
-				ret.append(",");
-			}
-		}
-		if (this.name != null) {
-			ret.append(escapeNewickName(this.name));
+		StringBuilder ret = new StringBuilder();
+		try {
+			NewickWriter.write(this, bl, ret);
+		} catch (java.io.IOException e) {
+			throw new RuntimeException(e); // not thrown by a StringBuilder
 		}
 		return ret.toString();
 	}
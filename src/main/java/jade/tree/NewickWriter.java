@@ -0,0 +1,112 @@
+package jade.tree;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Writes a tree as newick to an Appendable (a Writer, a PrintStream, a StringBuilder...) as it walks the tree, with an
+ * explicit stack instead of recursion, so neither the depth of the tree nor its size is limited by the call stack,
+ * and the newick string never has to be held whole. The output is the same as that of JadeNode.getNewick.
+ *
+ * Any tree can be written by giving a TreeSource for it; JADE_TREE_SOURCE is for JadeNode trees.
+ *
+ * @param <N> the type of the nodes of the tree
+ */
+public class NewickWriter<N> {
+
+	/**
+	 * The structure and labels of the tree being written.
+	 */
+	public interface TreeSource<N> {
+
+		/**
+		 * @return the children of `node`, in the order they are written
+		 */
+		public Iterator<N> getChildren(N node);
+
+		/**
+		 * @return the name of `node`, or null if it has none
+		 */
+		public String getName(N node);
+
+		/**
+		 * @return the length of the branch from `node` to its parent
+		 */
+		public double getBranchLength(N node);
+	}
+
+	public static final TreeSource<JadeNode> JADE_TREE_SOURCE = new TreeSource<JadeNode>() {
+		public Iterator<JadeNode> getChildren(JadeNode node) {
+			return node.getChildren().iterator();
+		}
+
+		public String getName(JadeNode node) {
+			return node.getName();
+		}
+
+		public double getBranchLength(JadeNode node) {
+			return node.getBL();
+		}
+	};
+
+	private final TreeSource<N> source;
+	private final boolean bl;
+
+	/**
+	 * @param bl should be true to include branch lengths
+	 */
+	public NewickWriter(TreeSource<N> source, boolean bl) {
+		this.source = source;
+		this.bl = bl;
+	}
+
+	/**
+	 * Write the newick of the subtree rooted at the JadeNode `root`, without a closing semicolon.
+	 */
+	public static void write(JadeNode root, boolean bl, Appendable out) throws IOException {
+		new NewickWriter<JadeNode>(JADE_TREE_SOURCE, bl).write(root, out);
+	}
+
+	/**
+	 * Write the newick of the subtree rooted at `root`, without a closing semicolon.
+	 */
+	public void write(N root, Appendable out) throws IOException {
+		// the nodes on the path from the root to the current node, with the children still to be written
+		ArrayList<N> nodes = new ArrayList<N>();
+		ArrayList<Iterator<N>> children = new ArrayList<Iterator<N>>();
+		ArrayList<Boolean> hasWrittenChild = new ArrayList<Boolean>();
+		nodes.add(root);
+		children.add(source.getChildren(root));
+		hasWrittenChild.add(Boolean.FALSE);
+		while (nodes.isEmpty() == false) {
+			int top = nodes.size() - 1;
+			if (children.get(top).hasNext()) {
+				N child = children.get(top).next();
+				out.append(hasWrittenChild.get(top) ? "," : "(");
+				hasWrittenChild.set(top, Boolean.TRUE);
+				nodes.add(child);
+				children.add(source.getChildren(child));
+				hasWrittenChild.add(Boolean.FALSE);
+				continue;
+			}
+			// all the children of the node are written
+			N node = nodes.remove(top);
+			children.remove(top);
+			if (hasWrittenChild.remove(top)) {
+				out.append(")");
+			}
+			String name = source.getName(node);
+			if (name != null) {
+				out.append(JadeNode.escapeNewickName(name));
+			}
+			if (bl && top > 0) {
+				double branchLength = source.getBranchLength(node);
+				if (branchLength == 0) {
+					branchLength = JadeNode.MIN_BRANCHLENGTH;
+				}
+				out.append(":").append(String.valueOf(branchLength));
+			}
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package opentree;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Roaring style compressed bitmap storage for taxon sets, serialized into a byte[] property.
+ *
+ * The ids are split into chunks of 2^16 by their high bits and each chunk is stored in whichever
+ * container is smallest: a sorted array of the low 16 bits, a 2^16 bit bitmap, or a list of runs.
+ * Taxonomy node ids are handed out in load order, so the descendants of a taxon tend to come in
+ * long runs and the sets stored on high nodes shrink from megabytes to a few kilobytes.
+ *
+ * Layout: a version byte and the container count (int), then for each container the key
+ * (id >>> 16, int), the container type (byte) and the payload:
+ * 		array - cardinality - 1 (char), then the low bits of each id (char)
+ * 		bitmap - 1024 longs
+ * 		run - number of runs - 1 (char), then the low bits of the start and the length - 1 of each run (char, char)
+ * The containers hold each id once. If any id is repeated (as in outmrca, which keeps an id once for each tip it is
+ * below), they are followed by the number of repeated ids (int) and for each the id (long) and the number of times it
+ * is there beyond the first (int). Values without that part have no repeats.
+ */
+public class BitmapTaxonSetCodec implements TaxonSetCodec {
+
+	public static final String NAME = "bitmap";
+
+	private static final byte VERSION = 1;
+	private static final byte ARRAY_CONTAINER = 0;
+	private static final byte BITMAP_CONTAINER = 1;
+	private static final byte RUN_CONTAINER = 2;
+
+	private static final int CHUNK_BITS = 16;
+	private static final int LOW_MASK = (1 << CHUNK_BITS) - 1;
+	private static final int BITMAP_WORDS = (1 << CHUNK_BITS) / 64;
+	private static final int CONTAINER_HEADER_BYTES = 5;
+
+	public String getName() {
+		return NAME;
+	}
+
+	public boolean canDecode(Object stored) {
+		return stored instanceof byte [] && ((byte []) stored).length > 0 && ((byte []) stored)[0] == VERSION;
+	}
+
+	public Object encode(long [] sortedIds) {
+		// first pass sizes the buffer, second pass fills it
+		int nContainers = 0;
+		int totalBytes = 5;
+		TLongArrayList repeatedIds = new TLongArrayList();
+		TIntArrayList repeats = new TIntArrayList();
+		for (int j = 1; j < sortedIds.length; j++) {
+			if (sortedIds[j] == sortedIds[j - 1]) {
+				if (repeatedIds.isEmpty() || repeatedIds.get(repeatedIds.size() - 1) != sortedIds[j]) {
+					repeatedIds.add(sortedIds[j]);
+					repeats.add(1);
+				} else {
+					repeats.set(repeats.size() - 1, repeats.get(repeats.size() - 1) + 1);
+				}
+			}
+		}
+		if (repeatedIds.isEmpty() == false) {
+			totalBytes += 4 + 12 * repeatedIds.size();
+		}
+		int i = 0;
+		while (i < sortedIds.length) {
+			int end = chunkEnd(sortedIds, i);
+			int [] cardRuns = countChunk(sortedIds, i, end);
+			totalBytes += CONTAINER_HEADER_BYTES + payloadBytes(containerType(cardRuns[0], cardRuns[1]), cardRuns[0], cardRuns[1]);
+			nContainers++;
+			i = end;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(totalBytes);
+		buf.put(VERSION);
+		buf.putInt(nContainers);
+		i = 0;
+		while (i < sortedIds.length) {
+			int end = chunkEnd(sortedIds, i);
+			int [] cardRuns = countChunk(sortedIds, i, end);
+			byte type = containerType(cardRuns[0], cardRuns[1]);
+			buf.putInt((int) (sortedIds[i] >>> CHUNK_BITS));
+			buf.put(type);
+			if (type == ARRAY_CONTAINER) {
+				buf.putChar((char) (cardRuns[0] - 1));
+				long prev = -1;
+				for (int j = i; j < end; j++) {
+					if (sortedIds[j] != prev) {
+						buf.putChar((char) (sortedIds[j] & LOW_MASK));
+						prev = sortedIds[j];
+					}
+				}
+			} else if (type == BITMAP_CONTAINER) {
+				long [] words = new long[BITMAP_WORDS];
+				for (int j = i; j < end; j++) {
+					int low = (int) (sortedIds[j] & LOW_MASK);
+					words[low >>> 6] |= (1L << low);
+				}
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					buf.putLong(words[w]);
+				}
+			} else {
+				buf.putChar((char) (cardRuns[1] - 1));
+				int j = i;
+				while (j < end) {
+					long start = sortedIds[j];
+					long last = start;
+					j++;
+					while (j < end && (sortedIds[j] == last || sortedIds[j] == last + 1)) {
+						last = sortedIds[j];
+						j++;
+					}
+					buf.putChar((char) (start & LOW_MASK));
+					buf.putChar((char) (last - start));
+				}
+			}
+			i = end;
+		}
+		if (repeatedIds.isEmpty() == false) {
+			buf.putInt(repeatedIds.size());
+			for (int j = 0; j < repeatedIds.size(); j++) {
+				buf.putLong(repeatedIds.get(j));
+				buf.putInt(repeats.get(j));
+			}
+		}
+		return buf.array();
+	}
+
+	public long [] decode(Object stored) {
+		ByteBuffer buf = ByteBuffer.wrap((byte []) stored);
+		if (buf.get() != VERSION) {
+			throw new java.lang.IllegalArgumentException("unrecognized taxon set bitmap version");
+		}
+		int nContainers = buf.getInt();
+		int containersStart = buf.position();
+
+		// first pass counts the ids so the result can be allocated once
+		int total = 0;
+		for (int c = 0; c < nContainers; c++) {
+			buf.getInt();
+			byte type = buf.get();
+			if (type == ARRAY_CONTAINER) {
+				int card = buf.getChar() + 1;
+				total += card;
+				buf.position(buf.position() + 2 * card);
+			} else if (type == BITMAP_CONTAINER) {
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					total += Long.bitCount(buf.getLong());
+				}
+			} else {
+				int nRuns = buf.getChar() + 1;
+				for (int r = 0; r < nRuns; r++) {
+					buf.getChar();
+					total += buf.getChar() + 1;
+				}
+			}
+		}
+
+		long [] ids = new long[total];
+		int n = 0;
+		buf.position(containersStart);
+		for (int c = 0; c < nContainers; c++) {
+			long high = ((long) buf.getInt()) << CHUNK_BITS;
+			byte type = buf.get();
+			if (type == ARRAY_CONTAINER) {
+				int card = buf.getChar() + 1;
+				for (int j = 0; j < card; j++) {
+					ids[n++] = high | buf.getChar();
+				}
+			} else if (type == BITMAP_CONTAINER) {
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					long word = buf.getLong();
+					while (word != 0) {
+						int bit = Long.numberOfTrailingZeros(word);
+						ids[n++] = high | (w << 6) | bit;
+						word &= word - 1;
+					}
+				}
+			} else {
+				int nRuns = buf.getChar() + 1;
+				for (int r = 0; r < nRuns; r++) {
+					long start = high | buf.getChar();
+					int length = buf.getChar() + 1;
+					for (int j = 0; j < length; j++) {
+						ids[n++] = start + j;
+					}
+				}
+			}
+		}
+		if (buf.hasRemaining() == false) {
+			return ids;
+		}
+
+		// put the repeated ids back
+		int nRepeated = buf.getInt();
+		long [] repeatedIds = new long[nRepeated];
+		int [] repeats = new int[nRepeated];
+		int nRepeats = 0;
+		for (int r = 0; r < nRepeated; r++) {
+			repeatedIds[r] = buf.getLong();
+			repeats[r] = buf.getInt();
+			nRepeats += repeats[r];
+		}
+		long [] withRepeats = new long[total + nRepeats];
+		n = 0;
+		int r = 0;
+		for (int j = 0; j < total; j++) {
+			withRepeats[n++] = ids[j];
+			if (r < nRepeated && repeatedIds[r] == ids[j]) {
+				for (int k = 0; k < repeats[r]; k++) {
+					withRepeats[n++] = ids[j];
+				}
+				r++;
+			}
+		}
+		return withRepeats;
+	}
+
+	/**
+	 * @return the index one past the last id that shares the chunk of sortedIds[start]
+	 */
+	private static int chunkEnd(long [] sortedIds, int start) {
+		long id = sortedIds[start];
+		if (id < 0 || (id >>> CHUNK_BITS) > Integer.MAX_VALUE) {
+			throw new java.lang.IllegalArgumentException("the node id " + id + " cannot be stored in a taxon set bitmap");
+		}
+		long key = id >>> CHUNK_BITS;
+		int end = start + 1;
+		while (end < sortedIds.length && (sortedIds[end] >>> CHUNK_BITS) == key) {
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * @return {cardinality, number of runs} for the distinct ids in sortedIds[start, end)
+	 */
+	private static int [] countChunk(long [] sortedIds, int start, int end) {
+		int card = 0;
+		int runs = 0;
+		long prev = -2;
+		for (int j = start; j < end; j++) {
+			long v = sortedIds[j];
+			if (v != prev) {
+				card++;
+				if (v != prev + 1) {
+					runs++;
+				}
+				prev = v;
+			}
+		}
+		int [] ret = {card, runs};
+		return ret;
+	}
+
+	private static byte containerType(int card, int runs) {
+		int arrayBytes = payloadBytes(ARRAY_CONTAINER, card, runs);
+		int runBytes = payloadBytes(RUN_CONTAINER, card, runs);
+		int bitmapBytes = payloadBytes(BITMAP_CONTAINER, card, runs);
+		if (arrayBytes <= runBytes && arrayBytes <= bitmapBytes) {
+			return ARRAY_CONTAINER;
+		} else if (runBytes <= bitmapBytes) {
+			return RUN_CONTAINER;
+		}
+		return BITMAP_CONTAINER;
+	}
+
+	private static int payloadBytes(byte type, int card, int runs) {
+		if (type == ARRAY_CONTAINER) {
+			return 2 + 2 * card;
+		} else if (type == RUN_CONTAINER) {
+			return 2 + 4 * runs;
+		}
+		return BITMAP_WORDS * 8;
+	}
+}
@@ -0,0 +1,271 @@
+package opentree;
+
+import jade.tree.NewickWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Writes a stored synthetic tree (the relationships of a given tree, see SynthTreeUtil) as newick or JSON while it walks
+ * the graph, with an explicit stack instead of recursion. Only the path from the root of the export to the current node
+ * is held in memory, so a tree of any size and depth can be exported, e.g. the whole draft tree to a file.
+ *
+ * The children of a node are written in the order of its relationships, which is the order used by
+ * GraphExplorer.extractDraftTree, so the newick is the same as that of the JadeTree it returns. With a
+ * TopologySnapshot the children are read from its SYNTHCHILDOF rows, in the same order, instead of from all the
+ * incoming relationships of each node; only the names and branch properties are then read from the graph.
+ */
+public class DraftTreeExporter {
+
+	private final String synthTreeName;
+	private final int maxDepth;
+	private TopologySnapshot snapshot = null;
+	private int snapshotLabel;
+
+	/**
+	 * @param synthTreeName the name of the synthetic tree
+	 * @param maxDepth the most edges between the root of the export and a written node, or a negative number to write
+	 * 		the whole tree. The nodes at maxDepth are written as tips.
+	 */
+	public DraftTreeExporter(String synthTreeName, int maxDepth) {
+		this.synthTreeName = synthTreeName;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Export the whole tree named `synthTreeName`.
+	 */
+	public DraftTreeExporter(String synthTreeName) {
+		this(synthTreeName, -1);
+	}
+
+	/**
+	 * Read the children of the nodes from `snapshot`, which must have been written after the tree was last stored.
+	 */
+	public void setTopologySnapshot(TopologySnapshot snapshot) {
+		this.snapshot = snapshot;
+		this.snapshotLabel = snapshot.getLabel(synthTreeName);
+	}
+
+	/**
+	 * Write the newick of the tree below `root`, without a closing semicolon.
+	 * @param bl should be true to include the branch lengths
+	 */
+	public void writeNewick(Node root, boolean bl, Appendable out) throws IOException {
+		new NewickWriter<Branch>(new BranchSource(), bl).write(new Branch(root, null, 0), out);
+	}
+
+	/**
+	 * Write the tree below `root` as nested JSON objects with the fields "name" (if the node has one), "nodeid",
+	 * "supportedBy" (the supporting sources of the branch to the parent), "children", "nleaves" (the number of tips
+	 * written below the node) and "hasChildren" (only on the nodes at maxDepth that have children in the tree).
+	 */
+	public void writeJSON(Node root, Appendable out) throws IOException {
+		BranchSource source = new BranchSource();
+		// the path from the root to the current node
+		ArrayList<Branch> branches = new ArrayList<Branch>();
+		ArrayList<Iterator<Branch>> children = new ArrayList<Iterator<Branch>>();
+		ArrayList<int []> counts = new ArrayList<int []>(); // the children written and the leaves below them
+		Branch rootBranch = new Branch(root, null, 0);
+		writeJSONFields(rootBranch, out);
+		branches.add(rootBranch);
+		children.add(source.getChildren(rootBranch));
+		counts.add(new int [2]);
+		while (branches.isEmpty() == false) {
+			int top = branches.size() - 1;
+			int [] topCounts = counts.get(top);
+			if (children.get(top).hasNext()) {
+				Branch child = children.get(top).next();
+				out.append(topCounts[0] == 0 ? ", \"children\": [" : ", ");
+				topCounts[0] += 1;
+				writeJSONFields(child, out);
+				branches.add(child);
+				children.add(source.getChildren(child));
+				counts.add(new int [2]);
+				continue;
+			}
+			// all the children of the node are written
+			Branch branch = branches.remove(top);
+			children.remove(top);
+			counts.remove(top);
+			int nLeaves = topCounts[1];
+			if (topCounts[0] > 0) {
+				out.append("]");
+			} else if (isCut(branch) && hasChildren(branch.node)) {
+				out.append(", \"hasChildren\": true");
+			}
+			out.append(", \"nleaves\": ").append(String.valueOf(nLeaves)).append("}");
+			if (top > 0) {
+				counts.get(top - 1)[1] += nLeaves == 0 ? 1 : nLeaves;
+			}
+		}
+	}
+
+	/**
+	 * Write the opening brace and the fields known before the children are visited.
+	 */
+	private void writeJSONFields(Branch branch, Appendable out) throws IOException {
+		out.append("{");
+		if (branch.node.hasProperty("name")) {
+			out.append("\"name\": ");
+			JSONExporter.writeQuotedString(out, String.valueOf(branch.node.getProperty("name")));
+			out.append(", ");
+		}
+		out.append("\"nodeid\": ").append(String.valueOf(branch.node.getId()));
+		if (branch.parentRel != null && branch.parentRel.hasProperty("supporting_sources")) {
+			out.append(", \"supportedBy\": [");
+			String [] sources = (String []) branch.parentRel.getProperty("supporting_sources");
+			for (int i = 0; i < sources.length; i++) {
+				if (i > 0) {
+					out.append(", ");
+				}
+				JSONExporter.writeQuotedString(out, sources[i]);
+			}
+			out.append("]");
+		}
+	}
+
+	private boolean hasChildren(Node nd) {
+		if (snapshot == null) {
+			return SynthTreeUtil.hasChildren(nd, synthTreeName);
+		}
+		return new SnapshotChildIterator(nd, 0).hasNext();
+	}
+
+	/**
+	 * @return true if the children of the branch are not written because of the depth limit
+	 */
+	private boolean isCut(Branch branch) {
+		return maxDepth >= 0 && branch.depth >= maxDepth;
+	}
+
+	/**
+	 * A node of the tree, with the relationship to its parent (null at the root of the export) and its depth below
+	 * the root of the export.
+	 */
+	private static final class Branch {
+		final Node node;
+		final Relationship parentRel;
+		final int depth;
+
+		Branch(Node node, Relationship parentRel, int depth) {
+			this.node = node;
+			this.parentRel = parentRel;
+			this.depth = depth;
+		}
+	}
+
+	/**
+	 * The children of a node in the tree, read from its relationships as they are needed.
+	 */
+	private final class ChildIterator implements Iterator<Branch> {
+		private final Iterator<Relationship> rels;
+		private final int childDepth;
+		private Relationship next;
+
+		ChildIterator(Node parent, int childDepth) {
+			this.rels = SynthTreeUtil.getRelationships(parent, Direction.INCOMING, synthTreeName).iterator();
+			this.childDepth = childDepth;
+			this.next = advance();
+		}
+
+		private Relationship advance() {
+			return rels.hasNext() ? rels.next() : null;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public Branch next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Branch child = new Branch(next.getStartNode(), next, childDepth);
+			next = advance();
+			return child;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * The children of a node in the tree, read from the SYNTHCHILDOF rows of the snapshot.
+	 */
+	private final class SnapshotChildIterator implements Iterator<Branch> {
+		private final Node parent;
+		private final TopologySnapshot.Adjacency children;
+		private final int end;
+		private final int childDepth;
+		private int position;
+
+		SnapshotChildIterator(Node parent, int childDepth) {
+			this.parent = parent;
+			this.children = snapshot.getAdjacency(RelTypes.SYNTHCHILDOF, Direction.INCOMING);
+			LicaUtil.checkNodeId(parent);
+			int nodeId = (int) parent.getId();
+			this.position = nodeId < snapshot.getNodeCount() ? children.start(nodeId) : 0;
+			this.end = nodeId < snapshot.getNodeCount() ? children.end(nodeId) : 0;
+			this.childDepth = childDepth;
+			advance();
+		}
+
+		private void advance() {
+			while (position < end && (snapshotLabel == TopologySnapshot.NO_LABEL || children.label(position) != snapshotLabel)) {
+				position++;
+			}
+		}
+
+		public boolean hasNext() {
+			return position < end;
+		}
+
+		public Branch next() {
+			if (position >= end) {
+				throw new NoSuchElementException();
+			}
+			GraphDatabaseService graphDb = parent.getGraphDatabase();
+			Branch child = new Branch(graphDb.getNodeById(children.neighbour(position)), graphDb.getRelationshipById(children.relId(position)),
+					childDepth);
+			position++;
+			advance();
+			return child;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private final class BranchSource implements NewickWriter.TreeSource<Branch> {
+
+		public Iterator<Branch> getChildren(Branch branch) {
+			if (isCut(branch)) {
+				return new ArrayList<Branch>(0).iterator();
+			} else if (snapshot != null) {
+				return new SnapshotChildIterator(branch.node, branch.depth + 1);
+			}
+			return new ChildIterator(branch.node, branch.depth + 1);
+		}
+
+		public String getName(Branch branch) {
+			return branch.node.hasProperty("name") ? String.valueOf(branch.node.getProperty("name")) : null;
+		}
+
+		public double getBranchLength(Branch branch) {
+			if (branch.parentRel != null && branch.parentRel.hasProperty("branch_length")) {
+				return (Double) branch.parentRel.getProperty("branch_length");
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package opentree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * The LICA of any set of nodes of a stored synthetic tree in constant time (see PreorderLicaTable), instead of walking
+ * up the tree and reading the mrca of each node on the way as LicaUtil.getSynthTreeLICA does.
+ *
+ * The index is built when the synthesis has stored the tree and saved in a file in the directory of the graph. get()
+ * loads it from there the first time it is needed, and again whenever the file is rewritten. The file is not updated
+ * with the graph: it has to be stored again after the tree changes.
+ */
+public class DraftTreeLicaIndex {
+
+	private static final String FILE_PREFIX = "synth_tree_lica.";
+	private static final int MAGIC = 0x4f54544c; // OTTL
+	private static final int VERSION = 1;
+
+	// the indexes read by get(), by file
+	private static final ConcurrentHashMap<String, DraftTreeLicaIndex> loaded = new ConcurrentHashMap<String, DraftTreeLicaIndex>();
+
+	private final String treeName;
+	private final PreorderLicaTable table;
+	private final long lastModified; // of the file it was read from, 0 if it was built from the graph
+
+	/**
+	 * Index the synthetic tree `treeName` below `root`.
+	 */
+	public DraftTreeLicaIndex(Node root, final String treeName) {
+		this.treeName = treeName;
+		this.table = PreorderLicaTable.build(root, new PreorderLicaTable.ChildRelationships() {
+			public Iterable<Relationship> get(Node nd) {
+				return SynthTreeUtil.getRelationships(nd, Direction.INCOMING, treeName);
+			}
+		});
+		this.lastModified = 0;
+	}
+
+	private DraftTreeLicaIndex(String treeName, PreorderLicaTable table, long lastModified) {
+		this.treeName = treeName;
+		this.table = table;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * @return the root of the synthetic tree `treeName` that `nd` is in
+	 */
+	public static Node findRoot(Node nd, String treeName) {
+		Relationship rel;
+		while ((rel = SynthTreeUtil.getParentRel(nd, treeName)) != null) {
+			nd = rel.getEndNode();
+		}
+		return nd;
+	}
+
+	/**
+	 * @return the file of the index of the synthetic tree `treeName` in the directory of a graph
+	 */
+	public static File getFile(String storeDir, String treeName) {
+		return new File(storeDir, FILE_PREFIX + treeName);
+	}
+
+	/**
+	 * Index the whole synthetic tree `treeName` that `nodeInTree` is in, and save it in the directory of the graph.
+	 * @return the index
+	 * @throws IllegalArgumentException if `nodeInTree` has no parent and no children in the tree, so isn't in it
+	 */
+	public static DraftTreeLicaIndex store(GraphDatabaseAgent graphDb, Node nodeInTree, String treeName) throws IOException {
+		String storeDir = graphDb.getStoreDir();
+		if (storeDir == null) {
+			throw new IOException("the directory of the graph is not known");
+		}
+		Node root = findRoot(nodeInTree, treeName);
+		if (root.equals(nodeInTree) && SynthTreeUtil.getRelationships(root, Direction.INCOMING, treeName).iterator().hasNext() == false) {
+			throw new IllegalArgumentException("the node " + nodeInTree.getId() + " is not in the synthetic tree " + treeName);
+		}
+		DraftTreeLicaIndex index = new DraftTreeLicaIndex(root, treeName);
+		index.write(getFile(storeDir, treeName));
+		return index;
+	}
+
+	/**
+	 * @return the index of the synthetic tree `treeName` saved in the directory of the graph, or null if there is none
+	 */
+	public static DraftTreeLicaIndex get(GraphDatabaseAgent graphDb, String treeName) throws IOException {
+		String storeDir = graphDb.getStoreDir();
+		if (storeDir == null) {
+			return null;
+		}
+		File file = getFile(storeDir, treeName);
+		String key = file.getAbsolutePath();
+		DraftTreeLicaIndex index = loaded.get(key);
+		if (file.exists() == false) {
+			loaded.remove(key);
+			return null;
+		} else if (index == null || index.lastModified != file.lastModified()) {
+			index = read(file);
+			loaded.put(key, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Write the index to `file`. It is written to a temporary file first, so that a reader never sees part of it.
+	 */
+	public void write(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(treeName);
+			table.write(out);
+		} finally {
+			out.close();
+		}
+		if (tmp.renameTo(file) == false && (file.delete() == false || tmp.renameTo(file) == false)) {
+			throw new IOException("could not replace " + file);
+		}
+	}
+
+	public static DraftTreeLicaIndex read(File file) throws IOException {
+		long lastModified = file.lastModified();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(file + " is not a synthetic tree lica index of version " + VERSION);
+			}
+			String treeName = in.readUTF();
+			return new DraftTreeLicaIndex(treeName, PreorderLicaTable.read(in), lastModified);
+		} finally {
+			in.close();
+		}
+	}
+
+	PreorderLicaTable getTable() {
+		return table;
+	}
+
+	public String getTreeName() {
+		return treeName;
+	}
+
+	/**
+	 * @return the node id of the root of the tree
+	 */
+	public long getRootId() {
+		return table.getNodeId(0);
+	}
+
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	public int size() {
+		return table.size();
+	}
+
+	/**
+	 * @return true if the node is in the tree
+	 */
+	public boolean contains(long nodeId) {
+		return table.getPosition(nodeId) != -1;
+	}
+
+	/**
+	 * @return true if `ancestorId` is `descendantId` or one of its ancestors in the tree, false if either isn't in it
+	 */
+	public boolean isAncestor(long ancestorId, long descendantId) {
+		return table.isAncestor(ancestorId, descendantId);
+	}
+
+	/**
+	 * @return the parent of the node in the tree, or -1 if it is the root or isn't in the tree
+	 */
+	public long getParent(long nodeId) {
+		return table.getParent(nodeId);
+	}
+
+	/**
+	 * @return the id of the lowest node that is or is an ancestor of all the nodes in the tree, or -1 if there are none
+	 * 		or any of them isn't in the tree
+	 */
+	public long getLICA(long [] nodeIds) {
+		return table.getLICA(nodeIds);
+	}
+}
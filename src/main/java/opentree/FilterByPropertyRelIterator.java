@@ -64,7 +64,7 @@ public class FilterByPropertyRelIterator implements Iterator<Relationship> {
         long [] leafIDArr = (long[]) metadataNode.getProperty("original_taxa_map"); //@TEMP this is going to be slow on big trees...
         this.leafSet = gb.idArrayToNodeSet(leafIDArr);
         debugnodeset("treeleaves:", this.leafSet);
-        long [] nodeMRCAArr = (long[]) startNode.getProperty("mrca"); //@TEMP this is going to be slow deep in the tree...
+        long [] nodeMRCAArr = TaxonSetUtil.getMrca(startNode); //@TEMP this is going to be slow deep in the tree...
         HashSet<Node> rootNodesLeaves = gb.idArrayToNodeSet(nodeMRCAArr);
         debugnodeset("mrca:", rootNodesLeaves);
         this.graphDB = gb;
@@ -105,7 +105,7 @@ public class FilterByPropertyRelIterator implements Iterator<Relationship> {
                     Node furtherNode = (this.direction == Direction.INCOMING ? rel.getStartNode() : rel.getEndNode());
                     HashSet<Node> fnNodes;
                     if (furtherNode.hasProperty("mrca")) {
-                        long [] nodeMRCAArr = (long[]) furtherNode.getProperty("mrca"); //@TEMP this is going to be slow deep in the tree...
+                        long [] nodeMRCAArr = TaxonSetUtil.getMrca(furtherNode); //@TEMP this is going to be slow deep in the tree...
                         fnNodes = this.graphDB.idArrayToNodeSet(nodeMRCAArr);
                         fnNodes.retainAll(this.leafSet);
                     } else {
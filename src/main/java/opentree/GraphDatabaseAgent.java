@@ -4,11 +4,14 @@ import java.util.Map;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.tooling.GlobalGraphOperations;
 
 /**
  * An abstraction of the Neo4J database that provides identical modes of access to both embedded and served databases,
@@ -28,20 +31,56 @@ public class GraphDatabaseAgent {
     private EmbeddedGraphDatabase embeddedGraphDb;
     private GraphDatabaseService graphDbService;
     private boolean embedded;
+    private TaxonSetCodec taxonSetCodec;
 
     public GraphDatabaseAgent(GraphDatabaseService gdbs) {
         graphDbService = gdbs;
         embedded = false;
+        configureTaxonSetCodec();
     }
 
     public GraphDatabaseAgent(EmbeddedGraphDatabase egdb) {
         embeddedGraphDb = egdb;
         embedded = true;
+        configureTaxonSetCodec();
     }
 
     public GraphDatabaseAgent(String graphDbName) {
         embeddedGraphDb = new EmbeddedGraphDatabase(graphDbName);
         embedded = true;
+        configureTaxonSetCodec();
+    }
+
+    /**
+     * Use the taxon set codec recorded for this graph (if any) when writing mrca, outmrca and nested_mrca.
+     * Graphs without the property keep the original long[] storage.
+     */
+    private void configureTaxonSetCodec() {
+        Object codecName = null;
+        try {
+            codecName = getGraphProperty(TaxonSetUtil.CODEC_PROPERTY);
+        } catch (NotFoundException nfe) {
+            // no reference node, so nothing has been recorded
+        }
+        if (codecName == null) {
+            taxonSetCodec = TaxonSetUtil.getDefaultCodec();
+        } else {
+            taxonSetCodec = TaxonSetUtil.getCodec((String) codecName);
+        }
+    }
+
+    /**
+     * @return the codec to write mrca, outmrca and nested_mrca of this graph with
+     */
+    public TaxonSetCodec getTaxonSetCodec() {
+        return taxonSetCodec;
+    }
+
+    /**
+     * Write the taxon sets with `codec` from now on. Doesn't record it in the graph.
+     */
+    public void setTaxonSetCodec(TaxonSetCodec codec) {
+        taxonSetCodec = codec;
     }
 
     public Index<Node> getNodeIndex(String indexName) {
@@ -89,6 +128,13 @@ public class GraphDatabaseAgent {
             return graphDbService.getNodeById(arg0);
     }
 
+    public Iterable<Node> getAllNodes() {
+        if (embedded)
+            return GlobalGraphOperations.at(embeddedGraphDb).getAllNodes();
+        else
+            return GlobalGraphOperations.at(graphDbService).getAllNodes();
+    }
+
     public Relationship getRelationshipById(Long arg0) {
         if (embedded)
             return embeddedGraphDb.getRelationshipById(arg0);
@@ -100,6 +146,18 @@ public class GraphDatabaseAgent {
         registerShutdownHook();
     }
 
+    /**
+     * @return the directory of the graph, or null if the database doesn't tell
+     */
+    public String getStoreDir() {
+    	if (embedded) {
+    		return embeddedGraphDb.getStoreDir();
+    	} else if (graphDbService instanceof GraphDatabaseAPI) {
+    		return ((GraphDatabaseAPI) graphDbService).getStoreDir();
+    	}
+    	return null;
+    }
+
     /**
      * These assume that the graph properties will be stored at the 
      * root node as properties. The root node should always be node 0
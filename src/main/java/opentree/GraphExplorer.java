@@ -24,12 +24,14 @@ import java.util.Stack;
 import opentree.synthesis.DraftTreePathExpander;
 import opentree.synthesis.FilterComparisonType;
 import opentree.synthesis.RankResolutionMethod;
-import opentree.synthesis.RankResolutionMethodInferredPath;
+import opentree.synthesis.ParallelSubtreeResolver;
+import opentree.synthesis.RankResolutionMethodInferredPathUnion;
 import opentree.synthesis.RankingOrder;
 import opentree.synthesis.RelationshipConflictResolver;
 import opentree.synthesis.RelationshipFilter;
 import opentree.synthesis.RelationshipRanker;
 import opentree.synthesis.ResolvingExpander;
+import opentree.synthesis.SourceMetadataCache;
 import opentree.synthesis.SourceProperty;
 import opentree.synthesis.SourcePropertyFilterCriterion;
 import opentree.synthesis.SourcePropertyPrioritizedRankingCriterion;
@@ -43,11 +45,16 @@ import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.PathExpander;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.traversal.Evaluation;
+import org.neo4j.graphdb.traversal.Evaluator;
 import org.neo4j.graphdb.traversal.Evaluators;
 import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.helpers.Predicate;
+import org.neo4j.helpers.collection.FilteringIterable;
 import org.neo4j.kernel.Traversal;
 
 
@@ -60,6 +67,10 @@ public class GraphExplorer extends GraphBase {
     private boolean sinkLostChildren;
     private HashSet<Long> knownIdsInTree;
 
+    private int draftTreeWriteBatchSize;
+    private boolean resumeDraftTree;
+    private TaxonomyIntervalIndex taxonomyIntervalIndex; // built on first use
+
     public GraphExplorer(String graphname) {
         graphDb = new GraphDatabaseAgent(graphname);
         setDefaultParameters();
@@ -87,6 +98,8 @@ public class GraphExplorer extends GraphBase {
 
     private void setDefaultParameters() {
     	sinkLostChildren = false;
+    	draftTreeWriteBatchSize = 10000;
+    	resumeDraftTree = false;
     }
     
     /* -------------------- DEPRECATED info: collapsing children based on graph decisions ----------------------- */
@@ -129,7 +142,7 @@ public class GraphExplorer extends GraphBase {
             return;
         }
 
-        long[] mrcas = (long[]) gn.getProperty("mrca");
+        long[] mrcas = TaxonSetUtil.getMrca(gn);
         for (int i = 0; i < mrcas.length; i++) {
             Node tn = graphDb.getNodeById(mrcas[i]);
             if (tn.hasProperty("name")) {
@@ -169,7 +182,7 @@ public class GraphExplorer extends GraphBase {
 
     		// add this node's MRCA descendants to the hashmap
     		LinkedList<Node> tipDescendants = new LinkedList<Node>();
-    		for (long nid : (long[]) curTip.getProperty("mrca")) {
+    		for (long nid : TaxonSetUtil.getMrca(curTip)) {
     			tipDescendants.add(graphDb.getNodeById(nid));
     		}
     		treeTipGraphMRCADescendantsMap.put(treeTip, tipDescendants);
@@ -426,7 +439,7 @@ public class GraphExplorer extends GraphBase {
                 System.out.println(friendnode.getProperty("name") + " (" + node_score.get(friendnode) + ") " + friendnode);
                 mrname = (String) friendnode.getProperty("name");
             } else {
-                long[] mrcas = (long[]) friendnode.getProperty("mrca");
+                long[] mrcas = TaxonSetUtil.getMrca(friendnode);
                 for (int i = 0; i < mrcas.length; i++) {
                     if (id_to_name.containsKey((Long) mrcas[i]) == false) {
                         id_to_name.put((Long) mrcas[i], (String) graphDb.getNodeById(mrcas[i]).getProperty("name"));
@@ -443,7 +456,7 @@ public class GraphExplorer extends GraphBase {
             for (Node tnode : scores.get(friendnode).keySet()) {
                 System.out.println("\t\t" + tnode + " " + scores.get(friendnode).get(tnode));
                 System.out.print("\t\t");
-                long[] mrcas = (long[]) tnode.getProperty("mrca");
+                long[] mrcas = TaxonSetUtil.getMrca(tnode);
                 for (int i = 0; i < mrcas.length; i++) {
                     if (id_to_name.containsKey((Long) mrcas[i]) == false) {
                         id_to_name.put((Long) mrcas[i], (String) graphDb.getNodeById(mrcas[i]).getProperty("name"));
@@ -535,7 +548,7 @@ public class GraphExplorer extends GraphBase {
                 // throw new TaxonNotFoundException(processedname);
             } else {
                 // added for nested nodes
-                long[] mrcas = (long[]) hitnode.getProperty("mrca");
+                long[] mrcas = TaxonSetUtil.getMrca(hitnode);
                 ArrayList<Long> tset = new ArrayList<Long>();
                 for (int k = 0; k < mrcas.length; k++) {
                     ndidssearch.add(mrcas[k]);
@@ -600,7 +613,7 @@ public class GraphExplorer extends GraphBase {
                 }
                 Node[] dbnodesob = (Node[]) inode.getChild(i).getObject("dbnodes");
                 for (int k = 0; k < dbnodesob.length; k++) {
-                    long[] mrcas = ((long[]) dbnodesob[k].getProperty("mrca"));
+                    long[] mrcas = TaxonSetUtil.getMrca(dbnodesob[k]);
                     for (int j = 0; j < mrcas.length; j++) {
                         if (childndids.contains(mrcas[j]) == false)
                             childndids.add(mrcas[j]);
@@ -673,7 +686,7 @@ public class GraphExplorer extends GraphBase {
                     pnode.setName(String.valueOf((long) friendnode.getId()));
                 pnode.setName(pnode.getName() + "_" + String.valueOf(node_score.get(friendnode)));
             }
-            long[] mrcas = (long[]) friendnode.getProperty("mrca");
+            long[] mrcas = TaxonSetUtil.getMrca(friendnode);
             HashSet<Long> pmrcas = new HashSet<Long>();
             for (int i = 0; i < mrcas.length; i++) {
                 pmrcas.add(mrcas[i]);
@@ -691,7 +704,7 @@ public class GraphExplorer extends GraphBase {
                         int tscore = childs_scores.get(friendnode).get(tnode);
                         if (tscore >= highest) {// could specifically choose the equal weighted by resolution
                             boolean br = false;
-                            long[] mrcas2 = (long[]) tnode.getProperty("mrca");
+                            long[] mrcas2 = TaxonSetUtil.getMrca(tnode);
                             for (int i = 0; i < mrcas2.length; i++) {
                                 if (curmrcas.contains((Long) mrcas2[i])) {
                                     br = true;
@@ -710,7 +723,7 @@ public class GraphExplorer extends GraphBase {
                 if (bnode == null) {
                     nomatch = true;
                 } else {
-                    long[] mrcas1 = (long[]) bnode.getProperty("mrca");
+                    long[] mrcas1 = TaxonSetUtil.getMrca(bnode);
                     for (int i = 0; i < mrcas1.length; i++) {
                         curmrcas.add(mrcas1[i]);
                     }
@@ -756,6 +769,243 @@ public class GraphExplorer extends GraphBase {
      * @throws OttolIdNotFoundException 
      */
     public boolean synthesizeAndStoreDraftTreeBranches(Node startNode, Iterable<String> preferredSourceIds, boolean test) throws OttolIdNotFoundException {        
+
+        // define the synthesis protocol
+        ResolvingExpander draftSynthesisMethod = getDraftSynthesisMethod(preferredSourceIds);
+
+        // user feedback
+        System.out.println("\n"+draftSynthesisMethod.getDescription());
+        
+        // recusively build the tree structure
+        if (storeDraftTree(startNode, draftSynthesisMethod, preferredSourceIds, test) == false) {
+        	return false;
+        }
+
+        // somehow need to identify the taxonomy root node for starting the addition of lost children
+        // CURENTLY SET MANUALLY FOR TESTING ONLY
+        Node taxRootNode = findGraphNodeByName("life");
+
+        Transaction tx = graphDb.beginTx();
+        try {
+            //addMissingChildrenToDraftTreeTEMP(startNode);
+        	tx.success();
+
+        } catch (Exception ex) {
+        	tx.failure();
+        	ex.printStackTrace();
+
+        } finally {
+        	tx.finish();
+        }
+        
+        return true;
+        
+    }
+
+    /**
+     * As synthesizeAndStoreDraftTreeBranches above, but the nodes are resolved on `nThreads` threads before the tree is
+     * stored, each subtree starting `splitDepth` levels below the start node being resolved as one task. The stored
+     * draft tree is the same.
+     * 
+     * @param startNode this is the beginning node for analysis
+     * @param preferredSourceIds this includes the list of preferred sources
+     * @param nThreads the number of threads resolving the subtrees
+     * @param splitDepth the number of levels below the start node that are resolved before splitting into subtrees
+     * @param test this will just run through the motions but won't store the synthesis
+     * @return true if the draft tree was resolved and stored
+     */
+    public boolean synthesizeAndStoreDraftTreeBranches(Node startNode, final Iterable<String> preferredSourceIds, int nThreads, int splitDepth, boolean test) {
+
+        ParallelSubtreeResolver resolver = new ParallelSubtreeResolver(graphDb, new ParallelSubtreeResolver.SynthesisMethodFactory() {
+        	public ResolvingExpander newSynthesisMethod() {
+        		return getDraftSynthesisMethod(preferredSourceIds);
+        	}
+        }, nThreads, splitDepth);
+
+        // user feedback
+        System.out.println("\n" + getDraftSynthesisMethod(preferredSourceIds).getDescription());
+
+        long start = System.currentTimeMillis();
+        try {
+        	int nSubtrees = resolver.resolve(startNode);
+        	System.out.println("resolved " + resolver.getResolvedCount() + " nodes (" + nSubtrees + " subtrees on " + nThreads + " threads) in "
+        			+ (System.currentTimeMillis() - start) / 1000F + " seconds");
+        } catch (InterruptedException ie) {
+        	System.out.println("interrupted while resolving the draft tree");
+        	return false;
+        }
+
+        // store the tree in the same order as the single threaded synthesis
+        return storeDraftTree(startNode, resolver.getResolvedExpander(), preferredSourceIds, test);
+    }
+
+    /**
+     * Set the most draft tree relationships stored in one transaction by the synthesis (10,000 by default).
+     */
+    public void setDraftTreeWriteBatchSize(int draftTreeWriteBatchSize) {
+    	this.draftTreeWriteBatchSize = draftTreeWriteBatchSize;
+    }
+
+    /**
+     * Set whether the synthesis should resume the unfinished run of the same synthesis that left a checkpoint in the
+     * graph. Without this, the synthesis refuses to start while there is a checkpoint.
+     */
+    public void setResumeDraftTree(boolean resumeDraftTree) {
+    	this.resumeDraftTree = resumeDraftTree;
+    }
+
+    /**
+     * @return the interval index of the taxonomy below "life", which is built the first time it is needed
+     */
+    private TaxonomyIntervalIndex getTaxonomyIntervalIndex() {
+    	if (taxonomyIntervalIndex == null) {
+    		taxonomyIntervalIndex = new TaxonomyIntervalIndex(findGraphNodeByName("life"));
+    	}
+    	return taxonomyIntervalIndex;
+    }
+
+    /**
+     * Store the draft tree relationships chosen by `draftSynthesisMethod` below the start node, in batches through a
+     * SynthesisBranchWriter.
+     * 
+     * @return true if the whole tree was stored
+     */
+    private boolean storeDraftTree(Node startNode, PathExpander draftSynthesisMethod, Iterable<String> preferredSourceIds, boolean test) {
+        StringBuffer runId = new StringBuffer(DRAFTTREENAME + " from node " + startNode.getId() + " with sources");
+        for (String sourceId : preferredSourceIds) {
+        	runId.append(" ").append(sourceId);
+        }
+        SynthesisBranchWriter writer = new SynthesisBranchWriter(graphDb, DRAFTTREENAME, runId.toString(), draftTreeWriteBatchSize, test);
+        knownIdsInTree = new HashSet<Long>();
+        try {
+        	if (resumeDraftTree) {
+        		writer.resume();
+        	} else if (test == false) {
+        		writer.begin();
+        	}
+        	for (Relationship rel : Traversal.description().breadthFirst().expand(draftSynthesisMethod).traverse(startNode).relationships()) {
+        		writer.write(rel);
+        		// remember the ids of taxa we add, this is when sinking lost children
+        		knownIdsInTree.add(rel.getStartNode().getId());
+        	}
+        	writer.finish();
+
+        } catch (Exception ex) {
+        	writer.abort();
+        	ex.printStackTrace();
+        	return false;
+        }
+        if (test == false) {
+        	storeDraftTreeLicaIndex(startNode);
+        }
+        return true;
+    }
+
+    /**
+     * Find the MRCA in the draft tree of the taxa with the ottol ids, with the DraftTreeLicaIndex saved with the graph.
+     * 
+     * @return the node id ("mrca_node_id"), name ("mrca_name") and ottol id ("mrca_ottol_id") of the MRCA if any of the
+     *      taxa are in the draft tree, and the ottol ids that are not in the graph ("ottol_ids_not_found") or not in the
+     *      draft tree ("ottol_ids_not_in_tree")
+     */
+    public HashMap<String, Object> getDraftTreeMRCAForOttolIds(Iterable<String> ottolIds) throws IOException {
+    	TLongArrayList inTree = new TLongArrayList();
+    	ArrayList<String> notFound = new ArrayList<String>();
+    	ArrayList<String> notInTree = new ArrayList<String>();
+    	DraftTreeLicaIndex index = findDraftTreeNodes(ottolIds, inTree, notFound, notInTree);
+    	HashMap<String, Object> results = new HashMap<String, Object>();
+    	if (inTree.isEmpty() == false) {
+    		Node mrca = graphDb.getNodeById(index.getLICA(inTree.toArray()));
+    		results.put("mrca_node_id", mrca.getId());
+    		if (mrca.hasProperty("name")) {
+    			results.put("mrca_name", mrca.getProperty("name"));
+    		}
+    		if (mrca.hasProperty("tax_uid")) {
+    			results.put("mrca_ottol_id", mrca.getProperty("tax_uid"));
+    		}
+    	}
+    	results.put("ottol_ids_not_found", notFound);
+    	results.put("ottol_ids_not_in_tree", notInTree);
+    	return results;
+    }
+
+    /**
+     * Write the newick (with a closing semicolon) of the subtree of the draft tree induced by the taxa with the ottol
+     * ids (see InducedSubtree), with the DraftTreeLicaIndex saved with the graph. The ottol ids that are not in the
+     * graph are added to `notFound`, and those not in the draft tree to `notInTree`.
+     * 
+     * @return the induced subtree, or null (and nothing is written) if none of the taxa are in the draft tree
+     */
+    public InducedSubtree writeDraftTreeInducedSubtree(Iterable<String> ottolIds, Appendable out, List<String> notFound,
+    		List<String> notInTree) throws IOException {
+    	TLongArrayList inTree = new TLongArrayList();
+    	DraftTreeLicaIndex index = findDraftTreeNodes(ottolIds, inTree, notFound, notInTree);
+    	if (inTree.isEmpty()) {
+    		return null;
+    	}
+    	InducedSubtree subtree = new InducedSubtree(index, inTree.toArray());
+    	subtree.writeNewick(graphDb, out);
+    	out.append(";");
+    	return subtree;
+    }
+
+    /**
+     * Find the draft tree nodes of the taxa with the ottol ids, adding their node ids to `inTree`, the ottol ids that
+     * are not in the graph to `notFound` and those that are not in the draft tree to `notInTree`.
+     * 
+     * @return the DraftTreeLicaIndex of the draft tree
+     * @throws IOException if the index hasn't been stored (by the synthesis or draftlicaindex) or can't be read
+     */
+    private DraftTreeLicaIndex findDraftTreeNodes(Iterable<String> ottolIds, TLongArrayList inTree, List<String> notFound,
+    		List<String> notInTree) throws IOException {
+    	TLongArrayList nodeIds = new TLongArrayList();
+    	for (String ottolId : ottolIds) {
+    		Node nd = findGraphTaxNodeByUID(ottolId);
+    		if (nd == null) {
+    			notFound.add(ottolId);
+    		} else {
+    			nodeIds.add(nd.getId());
+    		}
+    	}
+    	DraftTreeLicaIndex index = DraftTreeLicaIndex.get(graphDb, DRAFTTREENAME);
+    	if (index == null) {
+    		// not built here: a taxon that isn't in the draft tree would give an index of itself alone
+    		throw new IOException("there is no lica index of the draft tree " + DRAFTTREENAME + " (store it with draftlicaindex)");
+    	}
+    	for (int i = 0; i < nodeIds.size(); i++) {
+    		if (index.contains(nodeIds.get(i))) {
+    			inTree.add(nodeIds.get(i));
+    		} else {
+    			notInTree.add((String) graphDb.getNodeById(nodeIds.get(i)).getProperty("tax_uid"));
+    		}
+    	}
+    	return index;
+    }
+
+    /**
+     * Save the DraftTreeLicaIndex of the draft tree that `nodeInTree` is in, in the directory of the graph. The tree
+     * is already stored, so failing to save the index is only reported.
+     */
+    public void storeDraftTreeLicaIndex(Node nodeInTree) {
+    	try {
+    		long start = System.currentTimeMillis();
+    		DraftTreeLicaIndex index = DraftTreeLicaIndex.store(graphDb, nodeInTree, DRAFTTREENAME);
+    		System.out.println("stored the lica index of the " + index.size() + " draft tree nodes in "
+    				+ (System.currentTimeMillis() - start) / 1000F + " seconds");
+    	} catch (IOException ioe) {
+    		System.err.println("WARNING: could not store the lica index of the draft tree: " + ioe.getMessage());
+    	} catch (IllegalArgumentException iae) {
+    		System.err.println("WARNING: could not store the lica index of the draft tree: " + iae.getMessage());
+    	}
+    }
+
+    /**
+     * Build the synthesis method (filter, ranking and conflict resolution) used for the draft tree.
+     * 
+     * @param preferredSourceIds this includes the list of preferred sources
+     * @return the expander that picks the draft tree children of each node
+     */
+    private ResolvingExpander getDraftSynthesisMethod(Iterable<String> preferredSourceIds) {
     	
     	// build the list of ids, have to use generic objects
         ArrayList<Object> sourceIdPriorityList = new ArrayList<Object>();
@@ -766,6 +1016,9 @@ public class GraphExplorer extends GraphBase {
         // define the synthesis protocol
         ResolvingExpander draftSynthesisMethod = new ResolvingExpander();
 
+        // the source metadata is looked up once per source and shared by all the criteria
+        SourceMetadataCache sourceMetadata = new SourceMetadataCache(sourceMetaIndex);
+
         // set filtering criteria
         //RelationshipFilter rf = new RelationshipFilter();
         //rf.addCriterion(new SourcePropertyFilterCriterion(SourceProperty.YEAR, FilterComparisonType.GREATEROREQUAL, new TestValue(2000), sourceMetaIndex));
@@ -785,90 +1038,334 @@ public class GraphExplorer extends GraphBase {
             }
         }
         System.out.println("filtered: "+filteredsources);
-        rf.addCriterion(new SourcePropertyFilterCriterion(SourceProperty.STUDYID,FilterComparisonType.CONTAINS,new TestValue(filteredsources),sourceMetaIndex));
+        rf.addCriterion(new SourcePropertyFilterCriterion(SourceProperty.STUDYID,FilterComparisonType.CONTAINS,new TestValue(filteredsources),sourceMetadata));
         //draftSynthesisMethod.setFilter(rf);
         //if(true == true)
         //	return true;
         // set ranking criteria
         RelationshipRanker rs = new RelationshipRanker();
-        rs.addCriterion(new SourcePropertyPrioritizedRankingCriterion(SourceProperty.STUDYID, sourceIdPriorityList, sourceMetaIndex));
-        rs.addCriterion(new SourcePropertyRankingCriterion(SourceProperty.YEAR, RankingOrder.DECREASING, sourceMetaIndex));
+        rs.addCriterion(new SourcePropertyPrioritizedRankingCriterion(SourceProperty.STUDYID, sourceIdPriorityList, sourceMetadata));
+        rs.addCriterion(new SourcePropertyRankingCriterion(SourceProperty.YEAR, RankingOrder.DECREASING, sourceMetadata));
         draftSynthesisMethod.setRanker(rs);
 
         // set conflict resolution criteria
-        RelationshipConflictResolver rcr = new RelationshipConflictResolver(new RankResolutionMethodInferredPath());
+        RelationshipConflictResolver rcr = new RelationshipConflictResolver(new RankResolutionMethodInferredPathUnion());
         draftSynthesisMethod.setConflictResolver(rcr);
         
-        // user feedback
-        System.out.println("\n"+draftSynthesisMethod.getDescription());
-        
-        // set empty parameters for initial recursion
-        Node originalParent = null;
+        return draftSynthesisMethod;
+    }
 
-        // recusively build the tree structure
+    /**
+     * Store a STREECHILDOF relationship chosen by the synthesis as a draft tree SYNTHCHILDOF relationship
+     * carrying the sources that support it. Must be called within a transaction.
+     * 
+     * @param rel the chosen relationship
+     * @param sourceNames the source names by source id, or null if the graph doesn't keep source ids
+     * @param test don't store anything
+     */
+    private void storeDraftTreeBranch(Relationship rel, String [] sourceNames, boolean test) {
+    	if (test == false) {
+    		SynthesisBranchWriter.storeBranch(rel, DRAFTTREENAME, sourceNames);
+    	}
+    	// remember the ids of taxa we add, this is when sinking lost children
+        knownIdsInTree.add(rel.getStartNode().getId());
+    }
+
+    /**
+     * Get the nodes whose draft tree resolution could have been changed by adding the sources: the nodes at
+     * either end of the STREECHILDOF relationships of the sources, and the nodes that the new nodes were
+     * attached to with MRCACHILDOF (the super licas).
+     * 
+     * @param sourcenames the names of the sources that were added
+     * @return the touched nodes
+     */
+    public HashSet<Node> getNodesTouchedBySources(Iterable<String> sourcenames) {
+    	HashSet<Node> touched = new HashSet<Node>();
+    	for (String sourcename : sourcenames) {
+    		IndexHits<Relationship> hits = sourceRelIndex.get("source", sourcename);
+    		try {
+    			while (hits.hasNext()) {
+    				Relationship rel = hits.next();
+    				touched.add(rel.getStartNode());
+    				touched.add(rel.getEndNode());
+    			}
+    		} finally {
+    			hits.close();
+    		}
+    	}
+    	ArrayList<Node> superLICAs = new ArrayList<Node>();
+    	for (Node nd : touched) {
+    		for (Relationship rel : nd.getRelationships(RelTypes.MRCACHILDOF, Direction.OUTGOING)) {
+    			superLICAs.add(rel.getEndNode());
+    		}
+    	}
+    	touched.addAll(superLICAs);
+    	return touched;
+    }
+
+    /**
+     * Incremental version of synthesizeAndStoreDraftTreeBranches. Only the draft tree subtrees whose resolution could
+     * have been changed by the touched nodes (e.g. GraphImporter.getUpdatedNodes and getUpdatedSuperLICAs, or
+     * getNodesTouchedBySources) are resynthesized: 
+     * 		1. each touched node is mapped to the nearest draft tree nodes at or above it (following STREECHILDOF, as
+     * 			the synthesis does, and MRCACHILDOF to the super licas). Its STREECHILDOF parents are included as
+     * 			well, since changes to the mrca of a node change the conflicts at its parents
+     * 		2. nested subtrees are dropped, keeping the smallest set of subtree roots that covers them
+     * 		3. the draft tree SYNTHCHILDOF relationships below each root are deleted and the synthesis is rerun from
+     * 			the root. Nodes that are still in the draft tree elsewhere are not taken into the new subtree. Each
+     * 			subtree is replaced in its own transaction
+     * 		4. if the rerun leaves out nodes that were below the root, and any of their STREECHILDOF parents lead up to
+     * 			draft tree nodes outside the subtree, a full resynthesis could place them there instead. The subtree is
+     * 			then rolled back and the root is moved up to the draft tree LICA of the root and those nodes, as far as
+     * 			the start node. Nodes left out with nowhere else to go are dropped, as a full resynthesis drops them
+     * 
+     * @param startNode the root of the draft tree
+     * @param preferredSourceIds the list of preferred sources, as for the full synthesis
+     * @param touchedNodes the nodes touched by adding the new sources
+     * @param test this will just run through the motions but won't change the stored synthesis
+     * @return the number of subtrees that were resynthesized, or -1 if the update failed (the subtrees replaced before
+     * 		the failure are kept)
+     */
+    public int updateDraftTreeBranches(Node startNode, Iterable<String> preferredSourceIds, Iterable<Node> touchedNodes, boolean test) {
+    	
+    	// 1. find the draft tree nodes whose children could change
+    	ArrayList<Node> toMap = new ArrayList<Node>();
+    	for (Node nd : touchedNodes) {
+    		toMap.add(nd);
+    		for (Relationship rel : nd.getRelationships(RelTypes.STREECHILDOF, Direction.OUTGOING)) {
+    			toMap.add(rel.getEndNode());
+    		}
+    	}
+    	HashSet<Node> candidateRoots = new HashSet<Node>();
+    	int nChecked = findDraftTreeNodesAbove(toMap, startNode, new HashSet<Long>(), candidateRoots);
+    	
+    	// 2. keep only the roots that are not below another root
+    	LinkedList<Node> roots = new LinkedList<Node>();
+    	for (Node nd : candidateRoots) {
+    		boolean nested = false;
+    		for (Node anc : getPathToRoot(nd, RelTypes.SYNTHCHILDOF, DRAFTTREENAME)) {
+    			if (candidateRoots.contains(anc)) {
+    				nested = true;
+    				break;
+    			}
+    		}
+    		if (nested == false) {
+    			roots.add(nd);
+    		}
+    	}
+    	System.out.println(nChecked + " nodes checked, " + roots.size() + " draft tree subtrees to resynthesize");
+    	
+    	// 3. replace the subtrees, each in its own transaction
+        ResolvingExpander draftSynthesisMethod = getDraftSynthesisMethod(preferredSourceIds);
+        String [] sourceNames = SourceIdUtil.getSourceNames(graphDb);
         knownIdsInTree = new HashSet<Long>();
-        Transaction tx = graphDb.beginTx();
-        String synthTreeName = DRAFTTREENAME;
-        try {
-        	for(Relationship rel: Traversal.description().breadthFirst().expand(draftSynthesisMethod).traverse(startNode).relationships()){
-                // store the relationship
-        		Node parentNode = rel.getEndNode();
-        		Node curNode = rel.getStartNode();
-        		
-            	if (parentNode != null && test == false) {
-            		Relationship newRel = curNode.createRelationshipTo(parentNode, RelTypes.SYNTHCHILDOF);
-            		newRel.setProperty("name", synthTreeName);
-
-            		// get all the sources supporting this relationship
-            		HashSet<String> sources = new HashSet<String>();
-            		for (Relationship rel2 : curNode.getRelationships(RelTypes.STREECHILDOF)) {
-            			if (rel2.hasProperty("source")) {
-            				sources.add(String.valueOf(rel2.getProperty("source")));
-            			}
-            		}
-            		
-            		// store the sources in a string array
-            		String[] sourcesArray = new String[sources.size()];
-            		Iterator<String> sourcesIter = sources.iterator();
-            		for (int i = 0; i < sources.size(); i++) {
-            			sourcesArray[i] = sourcesIter.next();
-            		}
-            		
-            		// set the string array as a property of the relationship
-            		newRel.setProperty("supporting_sources", sourcesArray);
-            	}
-            	// remember the ids of taxa we add, this is when sinking lost children
-                knownIdsInTree.add(curNode.getId());
-        	}
-        	tx.success();
+        int nReplaced = 0;
+        boolean failed = false;
+    	while (roots.isEmpty() == false) {
+    		Node root = roots.removeFirst();
+    		Node widerRoot = null;
+    		long start = System.currentTimeMillis();
+    		Transaction tx = graphDb.beginTx();
+    		try {
+    			HashSet<Long> removedIds = new HashSet<Long>();
+    			int nDeleted = removeDraftTreeBelow(root, removedIds, test);
+    			HashSet<Long> droppedIds = new HashSet<Long>(removedIds);
+    			int nAdded = 0;
+    			for (Relationship rel : Traversal.description().breadthFirst().expand(draftSynthesisMethod)
+    					.evaluator(new DraftTreeMemberEvaluator(root, removedIds)).traverse(root).relationships()) {
+    				storeDraftTreeBranch(rel, sourceNames, test);
+    				droppedIds.remove(rel.getStartNode().getId());
+    				nAdded += 1;
+    			}
 
-        } catch (Exception ex) {
-        	tx.failure();
-        	ex.printStackTrace();
+    			// 4. nodes that were below the root and were not placed again
+    			if (droppedIds.isEmpty() == false) {
+    				widerRoot = getWiderResynthesisRoot(root, startNode, droppedIds, removedIds);
+    			}
+    			if (widerRoot != null) {
+    				tx.failure();
+    				System.out.println(droppedIds.size() + " nodes below " + root + " were not placed again and could go elsewhere, "
+    						+ "resynthesizing from " + widerRoot + " instead");
+    			} else {
+    				tx.success();
+    				System.out.println("resynthesized below " + root + ": " + nDeleted + " rels removed, " + nAdded + " rels added, "
+    						+ droppedIds.size() + " nodes left out in " + (System.currentTimeMillis() - start) / 1000F + " seconds");
+    			}
+    		} catch (Exception ex) {
+    			tx.failure();
+    			ex.printStackTrace();
+    			failed = true;
+    		} finally {
+    			tx.finish();
+    		}
+    		if (failed) {
+    			System.out.println(nReplaced + " subtrees were resynthesized before the failure");
+    			break;
+    		}
+    		if (widerRoot == null) {
+    			nReplaced += 1;
+    		} else {
+    			queueResynthesisRoot(widerRoot, roots);
+    		}
+    	}
+    	if (test == false && nReplaced > 0) {
+    		storeDraftTreeLicaIndex(startNode);
+    	}
+    	return failed ? -1 : nReplaced;
+    }
 
-        } finally {
-        	tx.finish();
-        }
+    /**
+     * Add the nearest draft tree nodes at or above each of `nodes` to `found`, going up the STREECHILDOF and
+     * MRCACHILDOF relationships of the nodes that are not in the draft tree. The nodes in `removedIds` are taken
+     * to be in the draft tree, whether or not their relationships have been deleted yet.
+     * @return the number of nodes checked
+     */
+    private int findDraftTreeNodesAbove(Iterable<Node> nodes, Node startNode, HashSet<Long> removedIds, HashSet<Node> found) {
+    	HashSet<Node> seen = new HashSet<Node>();
+    	LinkedList<Node> toVisit = new LinkedList<Node>();
+    	for (Node nd : nodes) {
+    		toVisit.add(nd);
+    	}
+    	while (toVisit.isEmpty() == false) {
+    		Node nd = toVisit.removeFirst();
+    		if (seen.add(nd) == false) {
+    			continue;
+    		}
+    		if (removedIds.contains(nd.getId()) || isInDraftTree(nd, startNode)) {
+    			found.add(nd);
+    			continue;
+    		}
+    		for (Relationship rel : nd.getRelationships(Direction.OUTGOING, RelTypes.STREECHILDOF, RelTypes.MRCACHILDOF)) {
+    			toVisit.add(rel.getEndNode());
+    		}
+    	}
+    	return seen.size();
+    }
 
-        // somehow need to identify the taxonomy root node for starting the addition of lost children
-        // CURENTLY SET MANUALLY FOR TESTING ONLY
-        Node taxRootNode = findGraphNodeByName("life");
+    /**
+     * Find where to rerun a subtree resynthesis that left out the nodes `droppedIds`: the draft tree LICA of `root` and
+     * the draft tree nodes outside the subtree that their STREECHILDOF parents lead up to, but no higher than
+     * `startNode`. Must be called within the transaction of the rerun.
+     * @param removedIds the nodes that were below `root`
+     * @return the new root, or null if the nodes can't be placed outside the subtree or `root` is the start node
+     */
+    private Node getWiderResynthesisRoot(Node root, Node startNode, HashSet<Long> droppedIds, HashSet<Long> removedIds) {
+    	if (root.equals(startNode)) {
+    		return null;
+    	}
+    	ArrayList<Node> parents = new ArrayList<Node>();
+    	for (Long id : droppedIds) {
+    		for (Relationship rel : graphDb.getNodeById(id).getRelationships(RelTypes.STREECHILDOF, Direction.OUTGOING)) {
+    			parents.add(rel.getEndNode());
+    		}
+    	}
+    	HashSet<Node> above = new HashSet<Node>();
+    	findDraftTreeNodesAbove(parents, startNode, removedIds, above);
+
+    	// the ancestors of the root that could be the new root, nearest first
+    	ArrayList<Node> rootAncestors = new ArrayList<Node>();
+    	for (Node anc : getPathToRoot(root, RelTypes.SYNTHCHILDOF, DRAFTTREENAME)) {
+    		rootAncestors.add(anc);
+    		if (anc.equals(startNode)) {
+    			break;
+    		}
+    	}
+    	int highest = -1;
+    	for (Node nd : above) {
+    		if (nd.equals(root) || removedIds.contains(nd.getId())) {
+    			// the rerun from the root has had the chance to place the nodes there
+    			continue;
+    		}
+    		if (rootAncestors.contains(nd)) {
+    			highest = Math.max(highest, rootAncestors.indexOf(nd));
+    			continue;
+    		}
+    		for (Node anc : getPathToRoot(nd, RelTypes.SYNTHCHILDOF, DRAFTTREENAME)) {
+    			int i = rootAncestors.indexOf(anc);
+    			if (i >= 0) {
+    				highest = Math.max(highest, i);
+    				break;
+    			}
+    		}
+    	}
+    	return highest < 0 ? null : rootAncestors.get(highest);
+    }
 
-        tx = graphDb.beginTx();
-        try {
-            //addMissingChildrenToDraftTreeTEMP(startNode);
-        	tx.success();
+    /**
+     * Add `root` to the front of the subtree roots still to be resynthesized, dropping the ones below it, unless it is
+     * below one of them already.
+     */
+    private void queueResynthesisRoot(Node root, LinkedList<Node> roots) {
+    	HashSet<Node> ancestors = new HashSet<Node>(getPathToRoot(root, RelTypes.SYNTHCHILDOF, DRAFTTREENAME));
+    	ancestors.add(root);
+    	Iterator<Node> iter = roots.iterator();
+    	while (iter.hasNext()) {
+    		Node nd = iter.next();
+    		if (ancestors.contains(nd)) {
+    			return;
+    		}
+    		if (getPathToRoot(nd, RelTypes.SYNTHCHILDOF, DRAFTTREENAME).contains(root)) {
+    			iter.remove();
+    		}
+    	}
+    	roots.addFirst(root);
+    }
 
-        } catch (Exception ex) {
-        	tx.failure();
-        	ex.printStackTrace();
+    /**
+     * @return true if `nd` is the draft tree root or has a draft tree parent
+     */
+    private boolean isInDraftTree(Node nd, Node draftTreeRoot) {
+    	if (nd.equals(draftTreeRoot)) {
+    		return true;
+    	}
+    	return SynthTreeUtil.getParentRel(nd, DRAFTTREENAME) != null;
+    }
 
-        } finally {
-        	tx.finish();
-        }
-        
-        return true;
-        
+    /**
+     * Add the ids of the draft tree nodes below `root` to `removedIds` and delete their draft tree SYNTHCHILDOF
+     * relationships, or in test mode only count them. Must be called within a transaction.
+     * @return the number of relationships removed
+     */
+    private int removeDraftTreeBelow(Node root, HashSet<Long> removedIds, boolean test) {
+    	int count = 0;
+    	LinkedList<Node> stack = new LinkedList<Node>();
+    	stack.add(root);
+    	while (stack.isEmpty() == false) {
+    		Node nd = stack.removeLast();
+    		ArrayList<Relationship> childRels = new ArrayList<Relationship>();
+    		for (Relationship rel : SynthTreeUtil.getRelationships(nd, Direction.INCOMING, DRAFTTREENAME)) {
+    			childRels.add(rel);
+    		}
+    		for (Relationship rel : childRels) {
+    			stack.add(rel.getStartNode());
+    			removedIds.add(rel.getStartNode().getId());
+    			if (test == false) {
+    				rel.delete();
+    			}
+    			count += 1;
+    		}
+    	}
+    	return count;
+    }
+
+    /**
+     * Keeps a resynthesized subtree from taking in nodes that are still in the draft tree elsewhere. The nodes that
+     * were below its root (`removedIds`) are not, even in test mode where their relationships are kept.
+     */
+    private final class DraftTreeMemberEvaluator implements Evaluator {
+    	private final Node root;
+    	private final HashSet<Long> removedIds;
+    	DraftTreeMemberEvaluator(Node root, HashSet<Long> removedIds) {
+    		this.root = root;
+    		this.removedIds = removedIds;
+    	}
+    	public Evaluation evaluate(Path path) {
+    		Node nd = path.endNode();
+    		if (path.length() > 0 && removedIds.contains(nd.getId()) == false && isInDraftTree(nd, root)) {
+    			return Evaluation.EXCLUDE_AND_PRUNE;
+    		}
+    		return Evaluation.INCLUDE_AND_CONTINUE;
+    	}
     }
     
     /**
@@ -887,17 +1384,26 @@ public class GraphExplorer extends GraphBase {
         return new JadeTree(extractStoredSyntheticTreeRecur(startNode, parentJadeNode, incomingRel, DRAFTTREENAME));
     }
 
+    /**
+     * Write the newick of the synthetic tree `synthTreeName` stored below `startNode` to `out` while it is read from the
+     * graph, without building a JadeTree, so the memory used doesn't depend on the size of the tree. Gives the same
+     * newick as the JadeTree returned by extractDraftTree.
+     * 
+     * @param bl should be true to include the branch lengths
+     */
+    public void writeSynthTreeNewick(Node startNode, String synthTreeName, boolean bl, Appendable out) throws IOException {
+    	new DraftTreeExporter(synthTreeName).writeNewick(startNode, bl, out);
+    }
+
     private List<Node> getPathToRoot(Node startNode, RelTypes relType, String nameToFilterBy) {
         ArrayList<Node> path = new ArrayList<Node>();
         Node curNode = startNode;
         while (true) {
             Node nextNode = null;
-            Iterable<Relationship> parentRels = curNode.getRelationships(relType, Direction.OUTGOING);
+            Iterable<Relationship> parentRels = getRelationshipsByName(curNode, Direction.OUTGOING, relType, nameToFilterBy);
             for (Relationship m : parentRels) {
-                if (String.valueOf(m.getProperty("name")).equals(nameToFilterBy)) {
-                    nextNode = m.getEndNode();
-                    break;
-                }
+                nextNode = m.getEndNode();
+                break;
             }
             if (nextNode != null) {
                 path.add(nextNode);
@@ -929,24 +1435,16 @@ public class GraphExplorer extends GraphBase {
 	    	// testing
 //	    	System.out.println("looking for parents of " + curParent.toString());
 
-	    	Iterable<Relationship> parentRels = curParent.getRelationships(RelTypes.SYNTHCHILDOF, Direction.OUTGOING);
+	    	Relationship m = SynthTreeUtil.getParentRel(curParent, DRAFTTREENAME);
         	atRoot = true; // assume we have hit the root until proven otherwise
-        	for (Relationship m : parentRels) {
-        		
-        		// testing
-//        		System.out.println("current rel name = " + m.getProperty("name") + "; drafttreename = " + DRAFTTREENAME);
-        		
-        		if (String.valueOf(m.getProperty("name")).equals(DRAFTTREENAME)) {
-
-        	    	atRoot = false; // if we found an acceptable relationship to a parent then we're not done yet
-        			curParent = m.getEndNode();
-
-        			// testing
-//        			System.out.println("found a parent! " + curParent.toString());
-        			
-        			path.add(curParent.getId());
-        			break;
-        		}
+        	if (m != null) {
+    	    	atRoot = false; // if we found an acceptable relationship to a parent then we're not done yet
+    			curParent = m.getEndNode();
+
+    			// testing
+//    			System.out.println("found a parent! " + curParent.toString());
+    			
+    			path.add(curParent.getId());
         	}
 	    }
 	    
@@ -1050,7 +1548,7 @@ public class GraphExplorer extends GraphBase {
             ArrayList<Node> nodesInTree = new ArrayList<Node>();
             
             // get all external descendants of this taxon, remember if they're in the tree or not
-            for (long cid : (long[]) taxNode.getProperty("mrca")) {
+            for (long cid : TaxonSetUtil.getMrca(taxNode)) {
             	Node childNode = graphDb.getNodeById(cid);
 
                 // `knownIdsInTree` should already have been started during synthesis
@@ -1089,8 +1587,7 @@ public class GraphExplorer extends GraphBase {
 
 //                System.out.println("attempting to add child: " + taxName + " to " + mrca.getName());
 
-                Relationship newRel = childNode.createRelationshipTo(mrca, RelTypes.SYNTHCHILDOF);
-                newRel.setProperty("name", DRAFTTREENAME);
+                Relationship newRel = SynthTreeUtil.createRelationship(childNode, mrca, DRAFTTREENAME);
                 newRel.setProperty("supporting_sources", supportingSources);
 
 //                JadeNode newChild = new JadeNode();
@@ -1145,7 +1642,7 @@ public class GraphExplorer extends GraphBase {
             if (cnode.hasRelationship(RelTypes.TAXCHILDOF) == false){
             	System.out.println("no tax for "+cnode);
             }
-            TLongArrayList m = new TLongArrayList ((long[]) cnode.getProperty("mrca"));
+            TLongArrayList m = new TLongArrayList (TaxonSetUtil.getMrca(cnode));
             TLongArrayList smc = new TLongArrayList(synthtips);
             smc.removeAll(m);
             //get parent
@@ -1155,15 +1652,15 @@ public class GraphExplorer extends GraphBase {
             	}
             	visited.add(cnode.getId());
             	//this assumes that m will be the list of mrcas at the node
-            	Node tcnode = LicaUtil.getTaxonomicLICA(m,graphDb);
-            	TLongArrayList tcmrcas = new TLongArrayList((long[]) tcnode.getProperty("mrca"));
+            	Node tcnode = LicaUtil.getTaxonomicLICA(m,getTaxonomyIntervalIndex(),graphDb);
+            	TLongArrayList tcmrcas = new TLongArrayList(TaxonSetUtil.getMrca(tcnode));
             	Node pnode = cnode.getRelationships(Direction.OUTGOING, RelTypes.SYNTHCHILDOF).iterator().next().getEndNode();
-            	TLongArrayList pmrcas = new TLongArrayList((long[]) pnode.getProperty("mrca"));
+            	TLongArrayList pmrcas = new TLongArrayList(TaxonSetUtil.getMrca(pnode));
             	TLongArrayList psmc = new TLongArrayList(smc);
             	psmc.removeAll(pmrcas);
-            	Node tnode = LicaUtil.getTaxonomicLICA(pmrcas,graphDb);
+            	Node tnode = LicaUtil.getTaxonomicLICA(pmrcas,getTaxonomyIntervalIndex(),graphDb);
 //            	System.out.println(tnode.getProperty("name")+" "+pmrcas+" "+m);
-            	TLongArrayList tmrcas = new TLongArrayList((long[]) tnode.getProperty("mrca"));
+            	TLongArrayList tmrcas = new TLongArrayList(TaxonSetUtil.getMrca(tnode));
 
             	//original relationship that will be deleted
             	Relationship rel = cnode.getSingleRelationship(RelTypes.SYNTHCHILDOF, Direction.OUTGOING);
@@ -1237,13 +1734,9 @@ public class GraphExplorer extends GraphBase {
         
         // get the immediate synth children of the current node
         LinkedList<Relationship> synthChildRels = new LinkedList<Relationship>();
-        for (Relationship synthChildRel : curGraphNode.getRelationships(Direction.INCOMING, RelTypes.SYNTHCHILDOF)) {
-        	        	
-        	// TODO: here is where we would filter synthetic trees using metadata (or in the traversal itself)
-        	if (synthTreeName.equals(String.valueOf(synthChildRel.getProperty("name"))))	{
-        		// currently just filtering on name
-        		synthChildRels.add(synthChildRel);
-        	}
+        // TODO: here is where we would filter synthetic trees using metadata (or in the traversal itself)
+        for (Relationship synthChildRel : SynthTreeUtil.getRelationships(curGraphNode, Direction.INCOMING, synthTreeName)) {
+        	synthChildRels.add(synthChildRel);
         }
 
         // recursively add the children to the tree we're building
@@ -1354,7 +1847,7 @@ public class GraphExplorer extends GraphBase {
 
                 // save this candidate's mrca descendants
                 HashSet<Long> descIds = new HashSet<Long>();
-                for (long descId : (long[]) graphDb.getNodeById(cid).getProperty("mrca"))
+                for (long descId : TaxonSetUtil.getMrca(graphDb.getNodeById(cid)))
                     descIds.add(descId);
                 candNodeDescendantIdsMap.put(cid, descIds);
 
@@ -1454,7 +1947,7 @@ public class GraphExplorer extends GraphBase {
             // get ids of all descendants of accepted candidates
             HashSet<Long> impliedDescendantIds = new HashSet<Long>();
             for (Long cid : candidateNodeIds) {
-                for (long descId : (long[]) graphDb.getNodeById(cid).getProperty("mrca"))
+                for (long descId : TaxonSetUtil.getMrca(graphDb.getNodeById(cid)))
                     impliedDescendantIds.add(descId);
             }
 
@@ -1498,7 +1991,7 @@ public class GraphExplorer extends GraphBase {
 
     /**
      * Constructs a JadeTree object containing a synthetic tree, breaking ties based on branch and bound or exhaustive search.
-     * Stores the synthetic tree in the graph as SYNTHCHILDOF relationships, bearing the value of `syntheticTreeName` in their "name" property.
+     * Stores the synthetic tree in the graph as relationships of the type of `syntheticTreeName` (see SynthTreeUtil), bearing it in their "name" property.
      * 
      * Deprecated. Needs to be reimplemented in the new synthesis methods.
      * 
@@ -1559,7 +2052,7 @@ public class GraphExplorer extends GraphBase {
     		if (synthTreeName == null) {
     			throw new java.lang.IllegalStateException("Attempt to store synthetic tree relationships in the graph without a name for the synthetic tree.");
     		} else {
-    			curGraphNode.createRelationshipTo(parentGraphNode, RelTypes.SYNTHCHILDOF).setProperty("name", synthTreeName);
+    			SynthTreeUtil.createRelationship(curGraphNode, parentGraphNode, synthTreeName);
     		}
     	}
     	
@@ -1606,7 +2099,7 @@ public class GraphExplorer extends GraphBase {
             if (testnodes_scores.containsKey(tnd) == false) {
                 testnodes_scores.put(tnd, 0);
                 HashSet<Long> mrcas1 = new HashSet<Long>();
-                long[] dbnodei = (long[]) graphDb.getNodeById(tnd).getProperty("mrca");
+                long[] dbnodei = TaxonSetUtil.getMrca(graphDb.getNodeById(tnd));
                 for (long temp : dbnodei) {
                     mrcas1.add(temp);
                 }
@@ -1660,7 +2153,7 @@ public class GraphExplorer extends GraphBase {
             return null;
         }
 
-        int totalmrcas = ((long[]) curGraphNode.getProperty("mrca")).length;
+        int totalmrcas = (TaxonSetUtil.getMrca(curGraphNode)).length;
         int total = 0;
         for (Long nd : testnodes) {
             total += storedmrcas.get(nd).size();
@@ -1769,7 +2262,7 @@ public class GraphExplorer extends GraphBase {
             ArrayList<String> namesInTree = new ArrayList<String>();
             
             // get all external descendants of this taxon, remember if they're in the tree or not
-            for (long cid : (long[]) taxNode.getProperty("mrca")) {
+            for (long cid : TaxonSetUtil.getMrca(taxNode)) {
                 //@MTH avoiding name cleaning
                 //String name = GeneralUtils.cleanName((String) graphDb.getNodeById(cid).getProperty("name"));
                 String name = (String) graphDb.getNodeById(cid).getProperty("name");
@@ -2157,15 +2650,25 @@ public class GraphExplorer extends GraphBase {
     }
 
     public static boolean hasIncomingRel(Node subtreeRoot, RelTypes relType, String treeID) {
-        for (Relationship rel : subtreeRoot.getRelationships(Direction.INCOMING, relType)) {
-            boolean matches = false;
-            if (treeID == null || treeID.length() == 0) {
-                return true;
-            } else if (rel.hasProperty("name") && treeID.equals((String)rel.getProperty("name"))) {
-                return true;
+        return getRelationshipsByName(subtreeRoot, Direction.INCOMING, relType, treeID).iterator().hasNext();
+    }
+
+    /**
+     * @return the relationships of type `relType` at `nd` whose name property is `treeID`, or all of them if treeID is
+     *      null or empty. The synthetic tree relationships are found by their type (see SynthTreeUtil) when asked for
+     *      SYNTHCHILDOF with a tree name.
+     */
+    private static Iterable<Relationship> getRelationshipsByName(Node nd, Direction dir, RelTypes relType, final String treeID) {
+        if (treeID == null || treeID.length() == 0) {
+            return nd.getRelationships(dir, relType);
+        } else if (relType == RelTypes.SYNTHCHILDOF) {
+            return SynthTreeUtil.getRelationships(nd, dir, treeID);
+        }
+        return new FilteringIterable<Relationship>(nd.getRelationships(dir, relType), new Predicate<Relationship>() {
+            public boolean accept(Relationship rel) {
+                return treeID.equals(rel.getProperty("name", null));
             }
-        }
-        return false;
+        });
     }
 
     ///@TODO @TEMP inefficient recursive impl as a placeholder...
@@ -2173,18 +2676,10 @@ public class GraphExplorer extends GraphBase {
         ArrayList<String> toReturn = new ArrayList<String>();
         Node firstChild = null;
         Node lastChild = null;
-        for (Relationship rel : subtreeRoot.getRelationships(Direction.INCOMING, relType)) {
-            boolean matches = false;
-            if (treeID == null || treeID.length() == 0) {
-                matches = true;
-            } else if (rel.hasProperty("name") && treeID.equals((String)rel.getProperty("name"))) {
-                matches = true;
-            }
-            if (matches) {
-                lastChild = rel.getStartNode();
-                if (firstChild == null) {
-                    firstChild = lastChild;
-                }
+        for (Relationship rel : getRelationshipsByName(subtreeRoot, Direction.INCOMING, relType, treeID)) {
+            lastChild = rel.getStartNode();
+            if (firstChild == null) {
+                firstChild = lastChild;
             }
         }
         if (firstChild != null) {
@@ -2243,7 +2738,8 @@ public class GraphExplorer extends GraphBase {
         boolean printlengths = false;
         HashMap<Node, JadeNode> node2JadeNode = new HashMap<Node, JadeNode>();
         node2JadeNode.put(rootnode, root);
-        TraversalDescription synthEdgeTraversal = Traversal.description().relationships(RelTypes.SYNTHCHILDOF, Direction.INCOMING);
+        TraversalDescription synthEdgeTraversal = Traversal.description().relationships(SynthTreeUtil.getRelType(treeID), Direction.INCOMING)
+        		.relationships(RelTypes.SYNTHCHILDOF, Direction.INCOMING);
         //@TEMP should create an evaluator to check the name of the SYNTHCHILDOF rel and not follow paths with the wrong name...
         synthEdgeTraversal = synthEdgeTraversal.depthFirst();
         if (maxDepth >= 0) {
@@ -2256,7 +2752,7 @@ public class GraphExplorer extends GraphBase {
         for (Path path : synthEdgeTraversal.traverse(rootnode)) {
             Relationship furshestRel = path.lastRelationship();
             if (furshestRel != null && furshestRel.hasProperty("name")) {
-                String rn = (String) furshestRel.getProperty("name");
+                String rn = SynthTreeUtil.getTreeName(furshestRel);
                 if (rn.equals(treeID)) {
                     Node parNode = furshestRel.getEndNode();
                     Node childNode = furshestRel.getStartNode();
@@ -2358,7 +2854,7 @@ public class GraphExplorer extends GraphBase {
     		}
     		//System.out.println(nodeSet);
     		if(nodeSet.size() > 1){
-    			Node tnd = LicaUtil.getTaxonomicLICA(nodeSet,graphDb);
+    			Node tnd = LicaUtil.getTaxonomicLICA(nodeSet,getTaxonomyIntervalIndex(),graphDb);
     		//	System.out.println(tnd);
     			tree.getInternalNode(i).setName((String)tnd.getProperty("name"));
     		}
@@ -202,7 +202,7 @@ public class GraphExporter extends GraphBase {
 //			System.out.println(tnode.getProperty("name"));
 			
 			HashSet<String> sources = new HashSet<String>();
-			long[] mrcas = (long[]) tnode.getProperty("mrca");
+			long[] mrcas = TaxonSetUtil.getMrca(tnode);
 			for (int i = 0; i < mrcas.length; i++) {
 				sources.addAll(sourcelists.get((Long) mrcas[i]));
 			}
@@ -386,7 +386,7 @@ public class GraphExporter extends GraphBase {
 		HashSet<Long> nodeids = new HashSet<Long>();
 		HashMap<Long, HashSet<Long>> mrpmap = new HashMap<Long, HashSet<Long>>(); // key is the id for the taxon and the hashset is the list of nodes to which
 																				  // the taxon is a member
-		long[] dbnodei = (long[]) startnode.getProperty("mrca");
+		long[] dbnodei = TaxonSetUtil.getMrca(startnode);
 		for (long temp : dbnodei) {
 			tids.add(temp);
 			mrpmap.put(temp, new HashSet<Long>());
@@ -394,7 +394,7 @@ public class GraphExporter extends GraphBase {
 		TraversalDescription STREECHILDOF_TRAVERSAL = Traversal.description()
 				.relationships(RelTypes.STREECHILDOF, Direction.INCOMING);
 		for (Node tnd : STREECHILDOF_TRAVERSAL.traverse(startnode).nodes()) {
-			long[] dbnodet = (long[]) tnd.getProperty("mrca");
+			long[] dbnodet = TaxonSetUtil.getMrca(tnd);
 			if (dbnodet.length == 1)
 				continue;
 			for (long temp : dbnodet) {
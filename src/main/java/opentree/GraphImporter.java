@@ -1,7 +1,6 @@
 package opentree;
 
 import gnu.trove.list.array.TLongArrayList;
-import gnu.trove.set.hash.TLongHashSet;
 import jade.tree.*;
 
 import java.lang.StringBuffer;
@@ -13,6 +12,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.StringTokenizer;
 
 import java.util.Map;
@@ -56,6 +56,22 @@ public class GraphImporter extends GraphBase{
 	private Transaction	tx;
 	//THIS IS FOR PERFORMANCE
 	private TLongArrayList root_ndids;
+	// the tips of the tree being ingested in the order of getTips(), resolved once per tree by resolveTreeTips(). The tips
+	// below any node of the tree are a range of tipNodes, and the nodes of their mrcas the matching range of tipSearchNodes.
+	private ArrayList<Node> tipNodes;
+	private ArrayList<Node> tipSearchNodes;
+	private int [] tipSearchStarts; // where the mrca nodes of each tip (and the end of the last) start in tipSearchNodes
+	private TreeTaxonSet treeTaxonSet; // the mrca ids of all the tips, as in ndidssearch
+	private long [] rootExclusiveMrca; // the sorted ids of the nodes of all the tips
+	private static final String TIP_RANGE = "tiprange";
+	private static final String TIP_SEARCH_IDS = "tipsearchids";
+	private boolean tipsMapped = false; // set by mapTreeTipsToGraph, reset with the tree
+	private LicaCache licaCache = new LicaCache(); // the bipart LICA searches of this importer's trees, unless shared
+	// the mrcas and outmrcas widened by the LICA searches of the tree being ingested. They are written in node id order
+	// when the whole tree is done, so a tree that is rolled back leaves no partial widening behind
+	private TaxonSetOverlay widenedTaxonSets;
+	private String sourceIdName = null; // the source that sourceId is the id of
+	private int sourceId = -1;
 	boolean assumecomplete = false;//this will trigger getalllica if true (getbipart otherwise)
 	
 	public GraphImporter(String graphname) {
@@ -86,6 +102,34 @@ public class GraphImporter extends GraphBase{
 		sourceMetaIndex = graphDb.getNodeIndex("sourceMetaNodes");
 	}
 
+	/**
+	 * @return the nodes created for the last tree added (for incremental synthesis)
+	 */
+	public ArrayList<Node> getUpdatedNodes() {
+		return updatedNodes;
+	}
+
+	/**
+	 * @return the nodes that the new nodes of the last tree added were attached to with MRCACHILDOF
+	 */
+	public HashSet<Node> getUpdatedSuperLICAs() {
+		return updatedSuperLICAs;
+	}
+
+	/**
+	 * @return the cache of the LICA searches, for its hit rate
+	 */
+	public LicaCache getLicaCache() {
+		return licaCache;
+	}
+
+	/**
+	 * Share a cache of LICA searches with the other importers of a load, which must add their trees one at a time.
+	 */
+	public void setLicaCache(LicaCache cache) {
+		licaCache = cache;
+	}
+
 	public boolean hasSoureTreeName(String sourcename) {
 		IndexHits<Node> hits = sourceRootIndex.get("rootnode", sourcename);
 		return (hits != null && hits.size() > 0);
@@ -120,12 +164,14 @@ public class GraphImporter extends GraphBase{
 	 */
 	public void setTree(JadeTree tree) {
 		jt = tree;
+		tipsMapped = false;
 		treestring = jt.getRoot().getNewick(true) + ";";
 		System.out.println("tree set");
 	}
 	
 	public void setTree(JadeTree tree, String ts) {
 		jt = tree;
+		tipsMapped = false;
 		treestring = ts;
 		System.out.println("tree set");
 	}
@@ -145,6 +191,46 @@ public class GraphImporter extends GraphBase{
 		updatedNodes = new ArrayList<Node>();
 		updatedSuperLICAs = new HashSet<Node>();
 		assumecomplete = taxacompletelyoverlap;
+		if (tipsMapped == false) {
+			mapTreeTipsToGraph();
+		}
+		resolveTreeTips();
+		boolean added = false;
+		boolean committed = false;
+		try {
+			tx = graphDb.beginTx();
+			try {
+				widenedTaxonSets = new TaxonSetOverlay();
+				if(test == false)
+					postOrderAddProcessedTreeToGraph(jt.getRoot(), jt.getRoot(), sourcename, (String)jt.getObject("id"));
+				else
+					postOrderAddProcessedTreeToGraphNoAdd(jt.getRoot(), jt.getRoot(), sourcename, (String)jt.getObject("id"));
+				widenedTaxonSets.write(graphDb);
+				tx.success();
+				added = true;
+			} finally {
+				if (added == false) {
+					// nothing of a tree that fails is kept, as its widened mrcas were never written
+					tx.failure();
+				}
+				tx.finish();
+			}
+			committed = true;
+		} finally {
+			if (committed == false) {
+				// the cached searches may have seen nodes and mrcas that were rolled back
+				licaCache.clear();
+			}
+		}
+	}
+
+	/**
+	 * Map the tips of the current JadeTree (which must all have ot:ottolid set) to their taxonomy
+	 * nodes and store the ids that the ingest needs in the root. This only reads taxonomy nodes,
+	 * whose mrcas do not change as trees are added, so it can be done ahead of (and on another
+	 * thread from) addSetTreeToGraphWIdsSet, which calls it if it hasn't been done.
+	 */
+	public void mapTreeTipsToGraph() throws TaxonNotFoundException {
 		ArrayList<JadeNode> nds = jt.getRoot().getTips();
 
 		/* TODO making the ndids a Set<Long>, sorted ArrayList<Long> or HashSet<Long>
@@ -173,7 +259,7 @@ public class GraphImporter extends GraphBase{
 			hitnode = hits.getSingle();
 			hits.close();
 			// added for nested nodes 
-			long [] mrcas = (long[])hitnode.getProperty("mrca");
+			long [] mrcas = TaxonSetUtil.getMrca(hitnode);
 			ArrayList<Long> tset = new ArrayList<Long>(); 
 			for (int k = 0; k < mrcas.length; k++) {
 				ndidssearch.add(mrcas[k]);
@@ -191,16 +277,7 @@ public class GraphImporter extends GraphBase{
 		jt.getRoot().assocObject("hashnodeidssearch", hashnodeidssearch);
 		ndids.sort();
 		root_ndids = ndids;
-		try {
-			tx = graphDb.beginTx();
-			if(test == false)
-				postOrderAddProcessedTreeToGraph(jt.getRoot(), jt.getRoot(), sourcename, (String)jt.getObject("id"));
-			else
-				postOrderAddProcessedTreeToGraphNoAdd(jt.getRoot(), jt.getRoot(), sourcename, (String)jt.getObject("id"));
-			tx.success();
-		} finally {
-			tx.finish();
-		}
+		tipsMapped = true;
 	}
 	
 	/**
@@ -280,7 +357,7 @@ public class GraphImporter extends GraphBase{
 				throw new TaxonNotFoundException(processedname);
 			}
 			// added for nested nodes 
-			long [] mrcas = (long[])hitnode.getProperty("mrca");
+			long [] mrcas = TaxonSetUtil.getMrca(hitnode);
 			ArrayList<Long> tset = new ArrayList<Long>(); 
 			for (int k = 0; k < mrcas.length; k++) {
 				ndidssearch.add(mrcas[k]);
@@ -299,19 +376,94 @@ public class GraphImporter extends GraphBase{
 		jt.getRoot().assocObject("hashnodeidssearch", hashnodeidssearch);
 		ndids.sort();
 		root_ndids = ndids;
+		resolveTreeTips();
+		boolean added = false;
+		boolean committed = false;
 		try {
 			tx = graphDb.beginTx();
-			if(test == false)
-				postOrderAddProcessedTreeToGraph(jt.getRoot(), jt.getRoot(), sourcename, (String)jt.getObject("id"));
-			else
-				postOrderAddProcessedTreeToGraphNoAdd(jt.getRoot(), jt.getRoot(), sourcename, (String)jt.getObject("id"));
-			tx.success();
+			try {
+				widenedTaxonSets = new TaxonSetOverlay();
+				if(test == false)
+					postOrderAddProcessedTreeToGraph(jt.getRoot(), jt.getRoot(), sourcename, (String)jt.getObject("id"));
+				else
+					postOrderAddProcessedTreeToGraphNoAdd(jt.getRoot(), jt.getRoot(), sourcename, (String)jt.getObject("id"));
+				widenedTaxonSets.write(graphDb);
+				tx.success();
+				added = true;
+			} finally {
+				if (added == false) {
+					// nothing of a tree that fails is kept, as its widened mrcas were never written
+					tx.failure();
+				}
+				tx.finish();
+			}
+			committed = true;
 		} finally {
-			tx.finish();
+			if (committed == false) {
+				// the cached searches may have seen nodes and mrcas that were rolled back
+				licaCache.clear();
+			}
 		}
 	}
 	
 	
+	/**
+	 * Resolve the nodes of the tips of the current JadeTree and of their mrcas (mapped by mapTreeTipsToGraph or
+	 * addSetTreeToGraph) once for the whole tree, and set the range and the sorted mrca ids of each tip on it, for
+	 * collectTipSets.
+	 */
+	@SuppressWarnings("unchecked")
+	private void resolveTreeTips() {
+		JadeNode root = jt.getRoot();
+		HashMap<JadeNode, Long> roothash = (HashMap<JadeNode, Long>) root.getObject("hashnodeids");
+		HashMap<JadeNode, ArrayList<Long>> roothashsearch = (HashMap<JadeNode, ArrayList<Long>>) root.getObject("hashnodeidssearch");
+		ArrayList<JadeNode> tips = root.getTips();
+		tipNodes = new ArrayList<Node>(tips.size());
+		tipSearchNodes = new ArrayList<Node>(tips.size());
+		tipSearchStarts = new int[tips.size() + 1];
+		for (int i = 0; i < tips.size(); i++) {
+			JadeNode tip = tips.get(i);
+			tipNodes.add(graphDb.getNodeById(roothash.get(tip)));
+			tipSearchStarts[i] = tipSearchNodes.size();
+			ArrayList<Long> searchIds = roothashsearch.get(tip);
+			long [] sortedSearchIds = new long[searchIds.size()];
+			for (int k = 0; k < searchIds.size(); k++) {
+				tipSearchNodes.add(graphDb.getNodeById(searchIds.get(k)));
+				sortedSearchIds[k] = searchIds.get(k);
+			}
+			Arrays.sort(sortedSearchIds);
+			int [] range = {i, i + 1};
+			tip.assocObject(TIP_RANGE, range);
+			tip.assocObject(TIP_SEARCH_IDS, sortedSearchIds);
+		}
+		tipSearchStarts[tips.size()] = tipSearchNodes.size();
+		treeTaxonSet = new TreeTaxonSet(((TLongArrayList) root.getObject("ndidssearch")).toArray());
+		rootExclusiveMrca = root_ndids.toArray();
+	}
+
+	/**
+	 * Set the range of the tips below `inode` in tipNodes, and the sorted mrca ids of those tips merged from those of
+	 * its children, on `inode`. The children's ids are dropped, as the postorder doesn't need them again, so the tip
+	 * sets are carried up the tree instead of being collected again at every node.
+	 * 
+	 * @return the range of the tips below `inode` in tipNodes, from the first to one past the last
+	 */
+	private int [] collectTipSets(JadeNode inode) {
+		int [] range = {Integer.MAX_VALUE, -1};
+		ArrayList<long []> childSearchIds = new ArrayList<long []>(inode.getChildCount());
+		for (int i = 0; i < inode.getChildCount(); i++) {
+			JadeNode child = inode.getChild(i);
+			int [] childRange = (int []) child.getObject(TIP_RANGE);
+			range[0] = Math.min(range[0], childRange[0]);
+			range[1] = Math.max(range[1], childRange[1]);
+			childSearchIds.add((long []) child.getObject(TIP_SEARCH_IDS));
+			child.assocObject(TIP_SEARCH_IDS, null);
+		}
+		inode.assocObject(TIP_RANGE, range);
+		inode.assocObject(TIP_SEARCH_IDS, TaxonSetUtil.merge(childSearchIds, false));
+		return range;
+	}
+
 	/**
 	 * Finish ingest a tree into the GoL. This is called after the names in the tree
 	 *	have been mapped to IDs for the nodes in the Taxonomy graph. The mappings are stored
@@ -330,55 +482,32 @@ public class GraphImporter extends GraphBase{
 	 *		a TreeIngestException, or rollback the db modifications.
 	 *		
 	 */
-	@SuppressWarnings("unchecked")
 	private void postOrderAddProcessedTreeToGraph(JadeNode inode, JadeNode root, String sourcename, String treeID) throws TreeIngestException {
 		// postorder traversal via recursion
 		for (int i = 0; i < inode.getChildCount(); i++) {
 			postOrderAddProcessedTreeToGraph(inode.getChild(i), root, sourcename, treeID);
 		}
-		//		_LOG.trace("children: "+inode.getChildCount());
-		// roothash are the actual ids with the nested names -- used for storing
-		// roothashsearch are the ids with nested exploded -- used for searching
-		HashMap<JadeNode, Long> roothash = ((HashMap<JadeNode, Long>)root.getObject("hashnodeids"));
-		HashMap<JadeNode, ArrayList<Long>> roothashsearch = ((HashMap<JadeNode, ArrayList<Long>>)root.getObject("hashnodeidssearch"));
-
 		if (inode.getChildCount() > 0) {
 //			System.out.println(inode.getNewick(false));
-			ArrayList<JadeNode> nds = inode.getTips();
-			ArrayList<Node> hit_nodes = new ArrayList<Node>();
-			ArrayList<Node> hit_nodes_search = new ArrayList<Node> ();
-			TLongArrayList hit_nodes_small_search = new TLongArrayList ();
-			// store the hits for each of the nodes in the tips
-			for (int j = 0; j < nds.size(); j++) {
-				hit_nodes.add(graphDb.getNodeById(roothash.get(nds.get(j))));
-				ArrayList<Long> tlist = roothashsearch.get(nds.get(j));
-				hit_nodes_small_search.addAll(tlist);
-				for (int k = 0; k < tlist.size(); k++) {
-					hit_nodes_search.add(graphDb.getNodeById(tlist.get(k)));
-				}
-			}
-			hit_nodes_small_search.sort();
+			// the tips below inode are a range of those of the tree, so their nodes are shared and not collected again
+			int [] tipRange = collectTipSets(inode);
+			List<Node> hit_nodes = tipNodes.subList(tipRange[0], tipRange[1]);
+			List<Node> hit_nodes_search = tipSearchNodes.subList(tipSearchStarts[tipRange[0]], tipSearchStarts[tipRange[1]]);
+			TLongArrayList hit_nodes_small_search = new TLongArrayList((long []) inode.getObject(TIP_SEARCH_IDS));
 			// get all the childids even if they aren't in the tree, this is the postorder part
-			TLongHashSet childndidsh = new TLongHashSet();
+			ArrayList<long []> childMrcas = new ArrayList<long []>();
 			for (int i = 0; i < inode.getChildCount(); i++) {
 				Node [] dbnodesob = (Node [])inode.getChild(i).getObject("dbnodes"); 
 				for (int k = 0; k < dbnodesob.length; k++) {
-					childndidsh.addAll((long[])dbnodesob[k].getProperty("mrca"));
+					childMrcas.add(widenedTaxonSets.getMrca(dbnodesob[k]));
 				}
 			}
-			TLongArrayList childndids = new TLongArrayList(childndidsh);
-			childndids.sort();			
+			long [] childIds = TaxonSetUtil.merge(childMrcas, true);
+			TLongArrayList childndids = new TLongArrayList(childIds);
 			//			_LOG.trace("finished names");
-			TLongArrayList rootids = new TLongArrayList((TLongArrayList) root.getObject("ndidssearch"));
-			TLongArrayList outndids = new TLongArrayList();
-			//add all the children of the mapped nodes to the outgroup as well
-			for (int i = 0; i < root_ndids.size(); i++) {
-				if(childndids.contains(root_ndids.getQuick(i))==false)
-					outndids.addAll((long[])graphDb.getNodeById(root_ndids.get(i)).getProperty("mrca"));
-			}
-			childndids.sort();
-			outndids.removeAll(childndids);
-			outndids.sort();
+			// the mrcas of all the mapped nodes that are not below this node are the outgroup. taxon sets only hold tip
+			// ids, so a mapped node is below this node (and its mrca is removed with childndids) only if it is a tip.
+			TLongArrayList outndids = new TLongArrayList(treeTaxonSet.getOutgroupIds(childIds));
 
 			HashSet<Node> ancestors = null;
 			/*
@@ -388,7 +517,7 @@ public class GraphImporter extends GraphBase{
 			if(assumecomplete == true){
 				ancestors = LicaUtil.getAllLICAt4j(hit_nodes_search, childndids, outndids);
 			}else{
-				ancestors = LicaUtil.getBipart4j(hit_nodes,hit_nodes_search, hit_nodes_small_search,childndids, outndids,graphDb);
+				ancestors = licaCache.getBipart4j(hit_nodes,hit_nodes_search, hit_nodes_small_search,childndids, outndids,graphDb,widenedTaxonSets);
 			}
 						
 			//			_LOG.trace("ancestor "+ancestor);
@@ -401,14 +530,14 @@ public class GraphImporter extends GraphBase{
 				}
 				Arrays.sort(ret);
 				inode.assocObject("exclusive_mrca", ret);
-				inode.assocObject("root_exclusive_mrca", root_ndids.toArray());
+				inode.assocObject("root_exclusive_mrca", rootExclusiveMrca);
 			} else {
 				//				_LOG.trace("need to make a new node");
 				// make a node
 				// get the super lica, or what would be the licas if we didn't have the other taxa in the tree
 				// this is used to connect the new nodes to their licas for easier traversals
 				//HashSet<Node> superlica = LicaUtil.getSuperLICA(hit_nodes_search, childndids);
-				HashSet<Node> superlica = LicaUtil.getSuperLICAt4j(hit_nodes,hit_nodes_search, hit_nodes_small_search, childndids);
+				HashSet<Node> superlica = LicaUtil.getSuperLICAt4j(hit_nodes,hit_nodes_search, hit_nodes_small_search, childndids, widenedTaxonSets);
 				//System.out.println("\t\tsuperlica: "+superlica);
 				// steps
 				// 1. create a node
@@ -418,10 +547,10 @@ public class GraphImporter extends GraphBase{
 				//System.out.println("\t\tnewnode: "+dbnode);
 				Node [] nar = {dbnode};
 				inode.assocObject("dbnodes",nar);
-				dbnode.setProperty("mrca", childndids.toArray());
+				TaxonSetUtil.setMrca(dbnode, childndids.toArray(), graphDb.getTaxonSetCodec());
 				//System.out.println("\t\tmrca: "+childndids);
 				//set outmrcas
-				dbnode.setProperty("outmrca",outndids.toArray());
+				TaxonSetUtil.setOutMrca(dbnode, outndids.toArray(), graphDb.getTaxonSetCodec());
 				//System.out.println("\t\toutmrca: "+outndids);
 				//set exclusive relationships
 				long[] rete = new long[hit_nodes.size()];
@@ -430,22 +559,21 @@ public class GraphImporter extends GraphBase{
 				}
 				Arrays.sort(rete);
 				inode.assocObject("exclusive_mrca",rete);
-				root_ndids.sort();
-				inode.assocObject("root_exclusive_mrca",root_ndids.toArray());
+				inode.assocObject("root_exclusive_mrca", rootExclusiveMrca);
 				Iterator<Node> itrsl = superlica.iterator();
 				while (itrsl.hasNext()) {
 					Node itrnext = itrsl.next();
 					dbnode.createRelationshipTo(itrnext, RelTypes.MRCACHILDOF);
+					licaCache.relationshipAdded(dbnode.getId(), itrnext.getId());
 					updatedSuperLICAs.add(itrnext);
 				}
-				tx.success();
 				// add new nodes so they can be used for updating after tree ingest
 				updatedNodes.add(dbnode);
 			}
 			addProcessedNodeRelationships(inode, sourcename, treeID);
 		} else {
 //			inode.assocObject("dbnode", graphDb.getNodeById(roothash.get(inode)));
-			Node [] nar = {graphDb.getNodeById(roothash.get(inode))};
+			Node [] nar = {tipNodes.get(((int []) inode.getObject(TIP_RANGE))[0])};
 			inode.assocObject("dbnodes", nar);
 		}
 	}
@@ -469,46 +597,22 @@ public class GraphImporter extends GraphBase{
 	 *		a TreeIngestException, or rollback the db modifications.
 	 *		
 	 */
-	@SuppressWarnings("unchecked")
 	private void postOrderAddProcessedTreeToGraphNoAdd(JadeNode inode, JadeNode root, String sourcename, String treeID) throws TreeIngestException {
 		// postorder traversal via recursion
 		for (int i = 0; i < inode.getChildCount(); i++) {
 			postOrderAddProcessedTreeToGraphNoAdd(inode.getChild(i), root, sourcename, treeID);
 		}
-		//		_LOG.trace("children: "+inode.getChildCount());
-		// roothash are the actual ids with the nested names -- used for storing
-		// roothashsearch are the ids with nested exploded -- used for searching
-		HashMap<JadeNode, Long> roothash = ((HashMap<JadeNode, Long>)root.getObject("hashnodeids"));
-		HashMap<JadeNode, ArrayList<Long>> roothashsearch = ((HashMap<JadeNode, ArrayList<Long>>)root.getObject("hashnodeidssearch"));
-
 		if (inode.getChildCount() > 0) {
 			System.out.println(inode.getNewick(false));
-			ArrayList<JadeNode> nds = inode.getTips();
-			ArrayList<Node> hit_nodes = new ArrayList<Node>();
-			ArrayList<Node> hit_nodes_search = new ArrayList<Node> ();
-			TLongArrayList hit_nodes_small_search = new TLongArrayList ();
-			// store the hits for each of the nodes in the tips
-			for (int j = 0; j < nds.size(); j++) {
-				hit_nodes.add(graphDb.getNodeById(roothash.get(nds.get(j))));
-				ArrayList<Long> tlist = roothashsearch.get(nds.get(j));
-				hit_nodes_small_search.addAll(tlist);
-				for (int k = 0; k < tlist.size(); k++) {
-					hit_nodes_search.add(graphDb.getNodeById(tlist.get(k)));
-				}
-			}
-			hit_nodes_small_search.sort();
+			int [] tipRange = collectTipSets(inode);
+			List<Node> hit_nodes = tipNodes.subList(tipRange[0], tipRange[1]);
+			List<Node> hit_nodes_search = tipSearchNodes.subList(tipSearchStarts[tipRange[0]], tipSearchStarts[tipRange[1]]);
+			long [] tipSearchIds = (long []) inode.getObject(TIP_SEARCH_IDS);
+			TLongArrayList hit_nodes_small_search = new TLongArrayList(tipSearchIds);
 			// because we don't associate nodes from the database to this, we have to search based on just the short names			
-			TLongArrayList childndids = new TLongArrayList(hit_nodes_small_search);
-			TLongArrayList outndids = new TLongArrayList();
+			TLongArrayList childndids = new TLongArrayList(tipSearchIds);
 			//add all the children of the mapped nodes to the outgroup as well
-			for (int i = 0; i < root_ndids.size(); i++) {
-				if (childndids.contains(root_ndids.getQuick(i)) == false) {
-					outndids.addAll((long[])graphDb.getNodeById(root_ndids.get(i)).getProperty("mrca"));
-				}
-			}
-			childndids.sort();
-			outndids.removeAll(childndids);
-			outndids.sort();
+			TLongArrayList outndids = new TLongArrayList(treeTaxonSet.getOutgroupIds(tipSearchIds));
 
 			HashSet<Node> ancestors = null;
 			/*
@@ -518,7 +622,7 @@ public class GraphImporter extends GraphBase{
 			if (assumecomplete == true) {
 				ancestors = LicaUtil.getAllLICAt4j(hit_nodes_search, childndids, outndids);
 			} else {
-				ancestors = LicaUtil.getBipart4j(hit_nodes,hit_nodes_search, hit_nodes_small_search,childndids, outndids,graphDb);
+				ancestors = licaCache.getBipart4j(hit_nodes,hit_nodes_search, hit_nodes_small_search,childndids, outndids,graphDb,widenedTaxonSets);
 			}
 			for (Node tnd : ancestors) {
 				System.out.println("\tmatched nodes: "+tnd);
@@ -630,11 +734,16 @@ public class GraphImporter extends GraphBase{
 						if (currGoLNode.hasProperty("name")) {
 							errbuff.append(" ancestor taxonomic name: " + currGoLNode.getProperty("name"));
 						}
-						errbuff.append("\nThe tree has been partially imported into the db.\n");
+						errbuff.append("\nNothing of the tree has been imported into the db.\n");
 						throw new TreeIngestException(errbuff.toString());
 					}
 					// METADATA ENTRY
 					rel.setProperty("source", sourcename);
+					int sid = getSourceId(sourcename);
+					if (sid >= 0) {
+						SourceIdUtil.addSourceId(childGoLNode, sid);
+						SourceIdUtil.addSourceId(currGoLNode, sid);
+					}
 					// TODO this if will cause us to drop 0 length branches. We probably need a "has branch length" flag in JadeNode...
 					if (childJadeNode.getBL() > 0.0) {
 						rel.setProperty("branch_length", childJadeNode.getBL());
@@ -648,6 +757,7 @@ public class GraphImporter extends GraphBase{
 					}
 					if (mrca_rel == false) {
 						Relationship rel2 = childGoLNode.createRelationshipTo(currGoLNode, RelTypes.MRCACHILDOF);
+						licaCache.relationshipAdded(childGoLNode.getId(), currGoLNode.getId());
 						// I'm not sure how this assert could ever trip, given that we create a 
 						// childGoLNode -> currGoLNode relationship above and raise an exception
 						// if the endpoints have the same ID.
@@ -666,6 +776,18 @@ public class GraphImporter extends GraphBase{
 
 	}
 	
+	/**
+	 * @return the source id of `sourcename` (see SourceIdUtil), looked up once per source, or -1 if the graph doesn't
+	 * 		keep source ids
+	 */
+	private int getSourceId(String sourcename) {
+		if (sourcename.equals(sourceIdName) == false) {
+			sourceId = SourceIdUtil.getOrCreateSourceId(graphDb, sourcename);
+			sourceIdName = sourcename;
+		}
+		return sourceId;
+	}
+
 	public void deleteAllTrees() {
 		IndexHits<Node> hits  = sourceMetaIndex.query("source", "*");
 		System.out.println(hits.size());
@@ -709,10 +831,19 @@ public class GraphImporter extends GraphBase{
 		Transaction	tx = graphDb.beginTx();
 		try {
 //			Iterator<Relationship> itrel = tobedeleted.iterator();
+			HashSet<Node> endNodes = new HashSet<Node>();
 			for (Relationship itrel : hits) {
+				endNodes.add(itrel.getStartNode());
+				endNodes.add(itrel.getEndNode());
 				itrel.delete();
 				sourceRelIndex.remove(itrel, "source", source);
 			}
+			// drop the source from the source ids of the nodes it was attached to
+			if (SourceIdUtil.isTracking(graphDb)) {
+				for (Node nd : endNodes) {
+					SourceIdUtil.updateSourceIds(graphDb, nd);
+				}
+			}
 			tx.success();
 		} finally {
 			tx.finish();
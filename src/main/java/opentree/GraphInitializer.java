@@ -8,13 +8,17 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.StringTokenizer;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.traversal.TraversalDescription;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
@@ -337,6 +341,9 @@ public class GraphInitializer extends GraphBase{
 		//start from the node called root
 		Node startnode = (graphNodeIndex.get("name", "life")).next();
 		try {
+			// keep the sources of the STREECHILDOF rels of each node from the start
+			SourceIdUtil.startTracking(graphDb);
+			int taxonomySourceId = SourceIdUtil.getOrCreateSourceId(graphDb, "taxonomy");
 			//root should be the taxonomy startnode
 //			_LOG.debug("startnode name = " + (String)startnode.getProperty("name"));
 			TraversalDescription CHILDOF_TRAVERSAL = Traversal.description()
@@ -347,15 +354,17 @@ public class GraphInitializer extends GraphBase{
 					Node firstchild = getAdjNodeFromFirstRelationshipBySource(friendnode, RelTypes.TAXCHILDOF, Direction.INCOMING, "ottol");
 					if (firstchild == null) {//leaf
 						long [] tmrcas = {friendnode.getId()};
-						friendnode.setProperty("mrca", tmrcas);
+						TaxonSetUtil.setMrca(friendnode, tmrcas, graphDb.getTaxonSetCodec());
 						long [] ntmrcas = {};
-						friendnode.setProperty("nested_mrca", ntmrcas);
+						TaxonSetUtil.setNestedMrca(friendnode, ntmrcas, graphDb.getTaxonSetCodec());
 					}
 					if (startnode != friendnode) {//not the root
 						friendnode.createRelationshipTo(taxparent, RelTypes.MRCACHILDOF);
 						Relationship trel2 = friendnode.createRelationshipTo(taxparent, RelTypes.STREECHILDOF);
 						trel2.setProperty("source", "taxonomy");
 						sourceRelIndex.add(trel2, "source", "taxonomy");
+						SourceIdUtil.addSourceId(friendnode, taxonomySourceId);
+						SourceIdUtil.addSourceId(taxparent, taxonomySourceId);
 					}
 					cur_tran_iter += 1;
 					if (cur_tran_iter % transaction_iter == 0) {
@@ -374,44 +383,98 @@ public class GraphInitializer extends GraphBase{
 		}
 		//start the mrcas
 		System.out.println("calculating mrcas");
-		try {
-			tx = graphDb.beginTx();
-			postorderAddMRCAsTax(startnode);
-			tx.success();
-		} finally {
-			tx.finish();
-		}
+		addMrcasBelow(startnode, RelTypes.MRCACHILDOF, false);
+		System.out.println("labelling taxonomy intervals");
+		TaxonomyIntervalIndex.label(graphDb, startnode);
 		//NOTE: outmrcas don't exist for taxchild of nodes because they are assumed to be the whole thing
 	}
 	
 	/**
-	 * for initial taxonomy to tree processing.  adds a mrca->long[]  property
-	 *	to the node and its children (where the elements of the array are the ids
-	 *	of graph of life nodes). The property is is the union of the mrca properties
-	 *	for the subtree. So the leaves of the tree must already have their mrca property
-	 *	filled in!
+	 * Recompute the mrca and nested_mrca of the taxonomy nodes below `taxnode` (along incoming TAXCHILDOF relationships),
+	 * e.g. after they have been damaged. The mrca of a taxonomy node is the set of taxonomy tips below it. The tips keep
+	 * their mrca (or get their own id, if they have none).
+	 * @return the number of nodes whose mrca was set
+	 */
+	public int rebuildMrcaForSubtree(Node taxnode) {
+		return addMrcasBelow(taxnode, RelTypes.TAXCHILDOF, true);
+	}
+
+	/**
+	 * Adds the mrca and nested_mrca properties to `root` and the nodes below it (along incoming `relType`
+	 * relationships), in postorder. The mrca of a node is the union of the mrca of its children, so the tips of the tree
+	 * must already have their mrca property filled in! Nodes that already have an mrca keep it, unless `rebuild` is
+	 * set, in which case only the tips do.
 	 *
-	 * @param dbnode should be a node in the graph-of-life (has incoming MRCACHILDOF relationship)
+	 * Walks the tree with an explicit stack rather than recursion, so deep taxonomies can't overflow the call stack. The
+	 * ids contributed by the nodes are appended to a single list in preorder, so each node's mrca is the run of the list
+	 * appended during its preorder interval, and the arrays of the children are never held for the parent.
+	 * @return the number of nodes whose mrca was set
 	 */
-	private void postorderAddMRCAsTax(Node dbnode) {
-		//traversal incoming and record all the names
-		for (Relationship rel: dbnode.getRelationships(Direction.INCOMING,RelTypes.MRCACHILDOF)) {
-			Node tnode = rel.getStartNode();
-			postorderAddMRCAsTax(tnode);
-		}
-		//could make this a hashset if dups become a problem
+	private int addMrcasBelow(Node root, RelationshipType relType, boolean rebuild) {
 		TLongArrayList mrcas = new TLongArrayList();
-		TLongArrayList nested_mrcas = new TLongArrayList();
-		if (dbnode.hasProperty("mrca") == false) {
-			for (Relationship rel: dbnode.getRelationships(Direction.INCOMING,RelTypes.MRCACHILDOF)) {
-				Node tnode = rel.getStartNode();
-				mrcas.addAll((long[])tnode.getProperty("mrca"));
-				nested_mrcas.addAll((long[])tnode.getProperty("nested_mrca"));
+		TLongArrayList nestedMrcas = new TLongArrayList();
+		LinkedList<MrcaFrame> stack = new LinkedList<MrcaFrame>();
+		int nSet = 0;
+		tx = graphDb.beginTx();
+		try {
+			stack.push(new MrcaFrame(root, relType, mrcas.size(), nestedMrcas.size()));
+			while (stack.isEmpty() == false) {
+				MrcaFrame frame = stack.peek();
+				if (frame.children.hasNext()) {
+					frame.isTip = false;
+					stack.push(new MrcaFrame(frame.children.next().getStartNode(), relType, mrcas.size(), nestedMrcas.size()));
+					continue;
+				}
+				// all the children are done, so the ids below this node are at the end of the lists
+				stack.pop();
+				Node dbnode = frame.node;
+				boolean keep = rebuild ? frame.isTip && dbnode.hasProperty(TaxonSetUtil.MRCA) : dbnode.hasProperty(TaxonSetUtil.MRCA);
+				if (keep) {
+					// stands in for everything below it
+					mrcas.remove(frame.mrcaStart, mrcas.size() - frame.mrcaStart);
+					mrcas.addAll(TaxonSetUtil.getMrca(dbnode));
+					nestedMrcas.remove(frame.nestedStart, nestedMrcas.size() - frame.nestedStart);
+					nestedMrcas.addAll(TaxonSetUtil.getNestedMrca(dbnode));
+					continue;
+				}
+				if (frame.isTip && rebuild) {
+					mrcas.add(dbnode.getId());
+				}
+				long [] mrca = mrcas.toArray(frame.mrcaStart, mrcas.size() - frame.mrcaStart);
+				Arrays.sort(mrca);
+				TaxonSetUtil.setMrca(dbnode, mrca, graphDb.getTaxonSetCodec());
+				long [] nestedMrca = nestedMrcas.toArray(frame.nestedStart, nestedMrcas.size() - frame.nestedStart);
+				Arrays.sort(nestedMrca);
+				TaxonSetUtil.setNestedMrca(dbnode, nestedMrca, graphDb.getTaxonSetCodec());
+				if (++nSet % transaction_iter == 0) {
+					tx.success();
+					tx.finish();
+					tx = graphDb.beginTx();
+					System.out.println("mrcas: " + nSet);
+				}
 			}
-			mrcas.sort();
-			dbnode.setProperty("mrca", mrcas.toArray());
-			nested_mrcas.sort();
-			dbnode.setProperty("nested_mrca", nested_mrcas.toArray());
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		return nSet;
+	}
+
+	/**
+	 * A node on the stack of addMrcasBelow, with the children still to visit and where its ids start in the lists.
+	 */
+	private static class MrcaFrame {
+		final Node node;
+		final Iterator<Relationship> children;
+		final int mrcaStart;
+		final int nestedStart;
+		boolean isTip = true;
+
+		MrcaFrame(Node node, RelationshipType relType, int mrcaStart, int nestedStart) {
+			this.node = node;
+			this.children = node.getRelationships(Direction.INCOMING, relType).iterator();
+			this.mrcaStart = mrcaStart;
+			this.nestedStart = nestedStart;
 		}
 	}
 	
@@ -0,0 +1,158 @@
+package opentree;
+
+import jade.tree.NewickWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.neo4j.graphdb.Node;
+
+/**
+ * The subtree of a stored synthetic tree induced by a set of its nodes: the nodes, the LICAs of every pair of them,
+ * and nothing else, each joined to its closest ancestor among them. It is built from the DraftTreeLicaIndex of the
+ * tree without reading the graph: the nodes are sorted by their preorder positions, the LICA of each pair of
+ * neighbours in that order is added (which gives the LICAs of all the pairs), and the parents are found with a stack
+ * in one pass over the sorted positions. For k nodes this is O(k log k), whatever the size of the tree.
+ */
+public class InducedSubtree {
+
+	// by preorder position in the induced subtree
+	private final long [] nodeIds;
+	private final int [] parents; // -1 for the root
+	private final int [] firstChildren;
+	private final int [] nextSiblings;
+
+	/**
+	 * @param index the index of the synthetic tree
+	 * @param nodeIds the nodes that induce the subtree, which must all be in the tree
+	 */
+	public InducedSubtree(DraftTreeLicaIndex index, long [] nodeIds) {
+		if (nodeIds.length == 0) {
+			throw new IllegalArgumentException("there are no nodes to induce a subtree");
+		}
+		PreorderLicaTable table = index.getTable();
+		int [] positions = new int[nodeIds.length * 2 - 1];
+		for (int i = 0; i < nodeIds.length; i++) {
+			positions[i] = table.getPosition(nodeIds[i]);
+			if (positions[i] == -1) {
+				throw new IllegalArgumentException("the node " + nodeIds[i] + " is not in the tree " + index.getTreeName());
+			}
+		}
+		int k = sortUnique(positions, nodeIds.length);
+		for (int i = 0; i < k - 1; i++) {
+			positions[k + i] = table.licaPosition(positions[i], positions[i + 1]);
+		}
+		int n = sortUnique(positions, k * 2 - 1);
+
+		// the closest ancestor of each node is the last node before it in preorder that it is below
+		this.nodeIds = new long[n];
+		this.parents = new int[n];
+		this.firstChildren = new int[n];
+		this.nextSiblings = new int[n];
+		Arrays.fill(firstChildren, -1);
+		Arrays.fill(nextSiblings, -1);
+		int [] lastChildren = new int[n];
+		int [] stack = new int[n];
+		int top = -1;
+		for (int i = 0; i < n; i++) {
+			this.nodeIds[i] = table.getNodeId(positions[i]);
+			while (top >= 0 && positions[i] > table.getRight(positions[stack[top]])) {
+				top -= 1;
+			}
+			parents[i] = top >= 0 ? stack[top] : -1;
+			if (parents[i] != -1) {
+				if (firstChildren[parents[i]] == -1) {
+					firstChildren[parents[i]] = i;
+				} else {
+					nextSiblings[lastChildren[parents[i]]] = i;
+				}
+				lastChildren[parents[i]] = i;
+			}
+			stack[++top] = i;
+		}
+	}
+
+	/**
+	 * Sort the first `length` values of `values` and move the distinct ones to the front.
+	 * @return the number of distinct values
+	 */
+	private static int sortUnique(int [] values, int length) {
+		Arrays.sort(values, 0, length);
+		int n = 0;
+		for (int i = 0; i < length; i++) {
+			if (n == 0 || values[i] != values[n - 1]) {
+				values[n++] = values[i];
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return the number of nodes in the induced subtree
+	 */
+	public int size() {
+		return nodeIds.length;
+	}
+
+	/**
+	 * @return the node ids of the induced subtree in preorder, the root first
+	 */
+	public long [] getNodeIds() {
+		return nodeIds.clone();
+	}
+
+	/**
+	 * @return the position in getNodeIds() of the parent of each node in the induced subtree, -1 for the root
+	 */
+	public int [] getParents() {
+		return parents.clone();
+	}
+
+	/**
+	 * Write the newick of the induced subtree, without a closing semicolon, as it is walked. The nodes are labelled
+	 * with their names and the children are in the order of the synthetic tree.
+	 */
+	public void writeNewick(final GraphDatabaseAgent graphDb, Appendable out) throws IOException {
+		new NewickWriter<Integer>(new NewickWriter.TreeSource<Integer>() {
+			public Iterator<Integer> getChildren(Integer node) {
+				return new ChildIterator(node);
+			}
+
+			public String getName(Integer node) {
+				Node nd = graphDb.getNodeById(nodeIds[node]);
+				return nd.hasProperty("name") ? String.valueOf(nd.getProperty("name")) : null;
+			}
+
+			public double getBranchLength(Integer node) {
+				return 0;
+			}
+		}, false).write(0, out);
+	}
+
+	private final class ChildIterator implements Iterator<Integer> {
+		private int next;
+
+		ChildIterator(int parent) {
+			next = firstChildren[parent];
+		}
+
+		public boolean hasNext() {
+			return next != -1;
+		}
+
+		public Integer next() {
+			if (next == -1) {
+				throw new NoSuchElementException();
+			}
+			int child = next;
+			next = nextSiblings[child];
+			return child;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
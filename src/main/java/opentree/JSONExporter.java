@@ -33,6 +33,23 @@ public class JSONExporter {
 		buffer.append("\"");
 	}
 
+	// write s as a JSON string, escaping the quotes, backslashes and control characters
+	public static void writeQuotedString(Appendable out, String s) throws java.io.IOException {
+		out.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			} else if (c < 0x20) {
+				String hex = Integer.toHexString(c);
+				out.append("\\u00").append(hex.length() == 1 ? "0" : "").append(hex);
+			} else {
+				out.append(c);
+			}
+		}
+		out.append('"');
+	}
+
 	// write s as a quoted name appropriate for a JS property name and adds a colon and space for assignment to that property
 	///@TEMP: placeholder for real JSON property name escaping. Are there restrictions here???
 	public static void escapePropertyColon(StringBuffer buffer, String s) {
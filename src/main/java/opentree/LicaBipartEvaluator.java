@@ -47,7 +47,7 @@ public class LicaBipartEvaluator implements Evaluator{
 		}
 		visited.add(tn.getId());
 		
-		TLongArrayList tm = new TLongArrayList((long[])tn.getProperty("mrca"));
+		TLongArrayList tm = new TLongArrayList(TaxonSetUtil.getMrca(tn));
 //		if (smInIdSet != null)
 //			System.out.println("nodeSetinIdSet "+smInIdSet.size());
 //		System.out.println("inIdSet "+inIdSet.size());
@@ -58,10 +58,10 @@ public class LicaBipartEvaluator implements Evaluator{
 		//		they are denoted with not having an outmrca
 		boolean taxnode =false;
 		TLongArrayList to = null;
-		if (tn.hasProperty("outmrca") == false){
+		if (TaxonSetUtil.hasOutMrca(tn) == false){
 			taxnode = true;
 		}else{
-			to = new TLongArrayList((long[])tn.getProperty("outmrca"));
+			to = new TLongArrayList(TaxonSetUtil.getOutMrca(tn));
 //			System.out.println("mrca o: "+to.size());
 		}
 		if(taxnode == false){
@@ -108,7 +108,7 @@ public class LicaBipartEvaluator implements Evaluator{
 						}
 						if(tmt){
 							tm.sort();
-							tn.setProperty("mrca",tm.toArray());
+							TaxonSetUtil.setMrca(tn, tm.toArray(), graphdb.getTaxonSetCodec());
 						}
 						tmt = false;
 						for (int i=0;i<outIdSet.size();i++){
@@ -119,7 +119,7 @@ public class LicaBipartEvaluator implements Evaluator{
 						}
 						if(tmt){
 							to.sort();
-							tn.setProperty("outmrca",to.toArray());
+							TaxonSetUtil.setOutMrca(tn, to.toArray(), graphdb.getTaxonSetCodec());
 						}
 						return Evaluation.INCLUDE_AND_PRUNE;
 					}
@@ -57,7 +57,7 @@ public class LicaBipartEvaluatorBS implements Evaluator{
 			return Evaluation.EXCLUDE_AND_PRUNE;
 		}
 		visited.add(tn.getId());
-		TLongArrayList ttm = new TLongArrayList((long[])tn.getProperty("mrca"));
+		TLongArrayList ttm = new TLongArrayList(TaxonSetUtil.getMrca(tn));
 		BitSet tm = new BitSet((int) ttm.max());
 		for(int i=0;i<ttm.size();i++){
 			tm.set((int)ttm.getQuick(i));
@@ -71,10 +71,10 @@ public class LicaBipartEvaluatorBS implements Evaluator{
 		boolean taxnode =false;
 		BitSet to = null;
 		TLongArrayList tto = null;
-		if (tn.hasProperty("outmrca") == false){
+		if (TaxonSetUtil.hasOutMrca(tn) == false){
 			taxnode = true;
 		}else{
-			tto = new TLongArrayList((long[])tn.getProperty("outmrca"));
+			tto = new TLongArrayList(TaxonSetUtil.getOutMrca(tn));
 			to = new BitSet((int) tto.max());//could set this to the smallest number
 			for(int i=0;i<tto.size();i++){
 				to.set((int)tto.getQuick(i));
@@ -99,7 +99,7 @@ public class LicaBipartEvaluatorBS implements Evaluator{
 						}
 						if(tmt){
 							ttm.sort();
-							tn.setProperty("mrca",ttm.toArray());
+							TaxonSetUtil.setMrca(tn, ttm.toArray(), graphdb.getTaxonSetCodec());
 						}
 						tmt = false;
 						BitSet outIdBS2 = (BitSet) outIdBS.clone();
@@ -112,7 +112,7 @@ public class LicaBipartEvaluatorBS implements Evaluator{
 						}
 						if(tmt){
 							tto.sort();
-							tn.setProperty("outmrca",tto.toArray());
+							TaxonSetUtil.setOutMrca(tn, tto.toArray(), graphdb.getTaxonSetCodec());
 						}
 						return Evaluation.INCLUDE_AND_PRUNE;
 					}
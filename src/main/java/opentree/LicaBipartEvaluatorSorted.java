@@ -0,0 +1,93 @@
+package opentree;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.hash.TLongHashSet;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.traversal.Evaluation;
+import org.neo4j.graphdb.traversal.Evaluator;
+
+/**
+ * This uses the mrca and mrca out bits. Gives the same results as LicaBipartEvaluatorBS but
+ * works directly on the sorted id arrays, so nothing is allocated for a visited node unless
+ * its mrca or outmrca is widened.
+ */
+public class LicaBipartEvaluatorSorted implements Evaluator{
+	TLongHashSet visited = null;
+	long [] inIds = null; //this can be larger than smInIdSet and includes the mrca for the matched nodes in the tree (so the dbnodes of the children)
+	long [] outIds = null; //this is the other part of the bipartition
+	GraphDatabaseAgent graphdb = null;
+	TaxonSetOverlay overlay = null; //if set, the mrcas are read from and widened into this instead of the graph
+	TLongHashSet widened = null; //if set, the ids of the nodes whose mrca or outmrca is widened are added to this
+	public LicaBipartEvaluatorSorted(){}
+	public void setOutset(TLongArrayList fids){
+		outIds = SortedIdSetUtil.sortedUnique(fids);
+	}
+	public void setInset(TLongArrayList fids){
+		inIds = SortedIdSetUtil.sortedUnique(fids);
+	}
+	public void setVisitedSet(TLongHashSet fids){
+		visited = fids;
+	}
+	public void setgraphdb(GraphDatabaseAgent gb){
+		graphdb = gb;
+	}
+	public TLongHashSet getVisitedSet(){
+		return visited;
+	}
+	public void setOverlay(TaxonSetOverlay ov){
+		overlay = ov;
+	}
+	public void setWidenedSet(TLongHashSet fids){
+		widened = fids;
+	}
+
+	public Evaluation evaluate(Path arg0) {
+		Node tn = arg0.endNode();
+		if(visited.add(tn.getId()) == false){//already visited from this or an earlier start node
+			return Evaluation.EXCLUDE_AND_PRUNE;
+		}
+		long [] tm = overlay == null ? TaxonSetUtil.getMrca(tn) : overlay.getMrca(tn);
+
+		//NOTE: in order to cut down on size, taxnodes outmrca are assumed to be "the rest"
+		//		they are denoted with not having an outmrca
+		if (TaxonSetUtil.hasOutMrca(tn)){
+			long [] to = overlay == null ? TaxonSetUtil.getOutMrca(tn) : overlay.getOutMrca(tn);
+			if(SortedIdSetUtil.intersects(tm, outIds) == false){//no overlap of outgroup and ingroup of dbnode
+				if(SortedIdSetUtil.intersects(to, inIds) == false){//no overlap in ingroup and outgroup of dbnode
+					if(SortedIdSetUtil.intersects(tm, inIds)){//some overlap in inbipart -- //LARGEST one, do last
+						//if match, extend the mrca and outmrca
+						long [] ntm = SortedIdSetUtil.addMissing(tm, inIds);
+						if(ntm != tm){
+							if(overlay == null){
+								TaxonSetUtil.setMrca(tn, ntm, graphdb.getTaxonSetCodec());
+							}else{
+								overlay.setMrca(tn, ntm);
+							}
+						}
+						long [] nto = SortedIdSetUtil.addMissing(to, outIds);
+						if(nto != to){
+							if(overlay == null){
+								TaxonSetUtil.setOutMrca(tn, nto, graphdb.getTaxonSetCodec());
+							}else{
+								overlay.setOutMrca(tn, nto);
+							}
+						}
+						if((ntm != tm || nto != to) && widened != null){
+							widened.add(tn.getId());
+						}
+						return Evaluation.INCLUDE_AND_PRUNE;
+					}
+				}
+			}
+		}else{
+			if(SortedIdSetUtil.intersects(outIds, tm) == false){//containsany
+				if(SortedIdSetUtil.containsAll(tm, inIds)){//containsall
+					return Evaluation.INCLUDE_AND_PRUNE;
+				}
+			}
+		}
+		return Evaluation.EXCLUDE_AND_CONTINUE;
+	}
+}
@@ -0,0 +1,211 @@
+package opentree;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.neo4j.graphdb.Node;
+
+/**
+ * The results of the bipartition LICA searches (LicaUtil.getBipart4j) of an ingest run, so that a clade that comes
+ * again with the same taxon sets (in the other trees of a study, or when trees are reprocessed) isn't searched again.
+ *
+ * An entry is keyed by the sorted ids of the start nodes and of the in and out taxon sets, and keeps the ids of the
+ * nodes the search visited. Its result depends on nothing else than the mrca and outmrca of those nodes and the
+ * MRCACHILDOF relationships out of them, so it is dropped when the mrca or outmrca of one of them is widened (which
+ * the searches report) or when the ingest adds a relationship from one of them to a node the search didn't visit
+ * (relationshipAdded). A hit doesn't widen anything: the matched nodes were widened with the same sets when the
+ * entry was made and haven't changed since.
+ *
+ * Not thread safe. The ingest, which is the only user, runs one tree at a time.
+ */
+public class LicaCache {
+
+	// more than this many visited ids kept (including those of dropped entries) and the cache starts again
+	private static final int MAX_VISITED_IDS = 5000000;
+
+	private final HashMap<Key, Entry> entries = new HashMap<Key, Entry>();
+	private final TIntObjectHashMap<Entry> entriesByNumber = new TIntObjectHashMap<Entry>();
+	private final TLongObjectHashMap<TIntArrayList> entriesByVisitedId = new TLongObjectHashMap<TIntArrayList>();
+	private int nextNumber = 0;
+	private long visitedIds = 0;
+
+	private long lookups = 0;
+	private long hits = 0;
+	private long invalidated = 0;
+	private long resets = 0;
+
+	/**
+	 * The same as LicaUtil.getBipart4j, from the cache if the search has been done with the same sets and nothing it
+	 * depends on has changed since. The mrcas are read from and widened into `overlay` if it is not null, which must
+	 * then be written to the graph (or the cache cleared) before the cache is used without it.
+	 */
+	public HashSet<Node> getBipart4j(List<Node> nodeSetsm, List<Node> nodeSet, TLongArrayList nodeSetinIdSet, TLongArrayList inIdSet, TLongArrayList outIdSet, GraphDatabaseAgent graphdb, TaxonSetOverlay overlay) {
+		long [] startIds = new long[nodeSetsm.size()];
+		for (int i = 0; i < startIds.length; i++) {
+			startIds[i] = nodeSetsm.get(i).getId();
+		}
+		Key key = new Key(SortedIdSetUtil.sortedUnique(new TLongArrayList(startIds)), SortedIdSetUtil.sortedUnique(inIdSet),
+				SortedIdSetUtil.sortedUnique(outIdSet));
+		lookups++;
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			hits++;
+			HashSet<Node> licas = new HashSet<Node>();
+			for (long id : entry.licaIds) {
+				licas.add(graphdb.getNodeById(id));
+			}
+			return licas;
+		}
+		TLongHashSet visited = new TLongHashSet();
+		TLongHashSet widened = new TLongHashSet();
+		HashSet<Node> licas = LicaUtil.getBipart4j(nodeSetsm, nodeSet, nodeSetinIdSet, inIdSet, outIdSet, graphdb, overlay, visited, widened);
+		for (long id : widened.toArray()) {
+			nodeChanged(id);
+		}
+		long [] licaIds = new long[licas.size()];
+		int i = 0;
+		for (Node nd : licas) {
+			licaIds[i++] = nd.getId();
+		}
+		put(key, licaIds, visited.toArray());
+		return licas;
+	}
+
+	/**
+	 * Drop the entries whose searches visited the node, as its mrca or outmrca have changed.
+	 */
+	public void nodeChanged(long nodeId) {
+		TIntArrayList numbers = entriesByVisitedId.remove(nodeId);
+		if (numbers == null) {
+			return;
+		}
+		for (int i = 0; i < numbers.size(); i++) {
+			remove(entriesByNumber.get(numbers.get(i)));
+		}
+	}
+
+	/**
+	 * Drop the entries that a new MRCACHILDOF relationship from `startId` to `endId` could change: those whose searches
+	 * visited the start node but not the end node.
+	 */
+	public void relationshipAdded(long startId, long endId) {
+		TIntArrayList numbers = entriesByVisitedId.get(startId);
+		if (numbers == null) {
+			return;
+		}
+		for (int i = 0; i < numbers.size(); i++) {
+			Entry entry = entriesByNumber.get(numbers.get(i));
+			if (entry != null && Arrays.binarySearch(entry.visitedIds, endId) < 0) {
+				remove(entry);
+			}
+		}
+	}
+
+	/**
+	 * Drop everything, as when the graph may have changed in ways the cache hasn't been told of.
+	 */
+	public void clear() {
+		entries.clear();
+		entriesByNumber.clear();
+		entriesByVisitedId.clear();
+		visitedIds = 0;
+	}
+
+	public long getLookups() {
+		return lookups;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return one line with the lookups, hits and hit rate, and the entries dropped and resets of the cache
+	 */
+	public String getStatsString() {
+		return "lica cache lookups: " + lookups + " hits: " + hits + " hit rate: "
+				+ (lookups > 0 ? String.format("%.1f%%", 100.0 * hits / lookups) : "-") + " invalidated: " + invalidated
+				+ " resets: " + resets;
+	}
+
+	private void put(Key key, long [] licaIds, long [] visited) {
+		if (visitedIds + visited.length > MAX_VISITED_IDS) {
+			clear();
+			resets++;
+		}
+		Arrays.sort(visited);
+		Entry entry = new Entry(nextNumber++, key, licaIds, visited);
+		entries.put(key, entry);
+		entriesByNumber.put(entry.number, entry);
+		for (long id : visited) {
+			TIntArrayList numbers = entriesByVisitedId.get(id);
+			if (numbers == null) {
+				numbers = new TIntArrayList(2);
+				entriesByVisitedId.put(id, numbers);
+			}
+			numbers.add(entry.number);
+		}
+		visitedIds += visited.length;
+	}
+
+	private void remove(Entry entry) {
+		if (entry == null || entriesByNumber.remove(entry.number) == null) {
+			return;
+		}
+		entries.remove(entry.key);
+		invalidated++;
+	}
+
+	/**
+	 * The sorted ids of the start nodes and the in and out taxon sets of a search.
+	 */
+	private static final class Key {
+		private final long [] startIds;
+		private final long [] inIds;
+		private final long [] outIds;
+		private final int hash;
+
+		Key(long [] startIds, long [] inIds, long [] outIds) {
+			this.startIds = startIds;
+			this.inIds = inIds;
+			this.outIds = outIds;
+			this.hash = 31 * (31 * Arrays.hashCode(startIds) + Arrays.hashCode(inIds)) + Arrays.hashCode(outIds);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof Key == false) {
+				return false;
+			}
+			Key k = (Key) o;
+			return hash == k.hash && Arrays.equals(startIds, k.startIds) && Arrays.equals(inIds, k.inIds) && Arrays.equals(outIds, k.outIds);
+		}
+	}
+
+	private static final class Entry {
+		final int number;
+		final Key key;
+		final long [] licaIds;
+		final long [] visitedIds; // sorted
+
+		Entry(int number, Key key, long [] licaIds, long [] visitedIds) {
+			this.number = number;
+			this.key = key;
+			this.licaIds = licaIds;
+			this.visitedIds = visitedIds;
+		}
+	}
+}
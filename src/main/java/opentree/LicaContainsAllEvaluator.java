@@ -1,6 +1,7 @@
 package opentree;
 
 import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.hash.TLongHashSet;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
@@ -16,7 +17,7 @@ import org.neo4j.graphdb.traversal.Evaluator;
 public class LicaContainsAllEvaluator implements Evaluator{
 	TLongArrayList inIdSet = null;
 	TLongArrayList smInIdSet = null;
-	TLongArrayList visited = null;
+	TLongHashSet visited = null;
 	public LicaContainsAllEvaluator(){}
 	public void setinIDset(TLongArrayList fids){
 		inIdSet = fids;
@@ -24,19 +25,18 @@ public class LicaContainsAllEvaluator implements Evaluator{
 	public void setSmInSet(TLongArrayList fids){
 		smInIdSet = fids;
 	}
-	public void setVisitedSet(TLongArrayList fids){
+	public void setVisitedSet(TLongHashSet fids){
 		visited = fids;
 	}
-	public TLongArrayList getVisitedSet(){
+	public TLongHashSet getVisitedSet(){
 		return visited;
 	}
 	public Evaluation evaluate(Path arg0) {
 		Node tn = arg0.endNode();
-		if(visited.contains(tn.getId())){
+		if(visited.add(tn.getId()) == false){//already visited from this or an earlier start node
 			return Evaluation.EXCLUDE_AND_PRUNE;
 		}
-		visited.add(tn.getId());
-		TLongArrayList Ldbnodei = new TLongArrayList((long[]) tn.getProperty("mrca"));
+		TLongArrayList Ldbnodei = new TLongArrayList(TaxonSetUtil.getMrca(tn));
 		//Ldbnodei.sort();
 		//try the small one first if it exists
 		if(smInIdSet!= null){
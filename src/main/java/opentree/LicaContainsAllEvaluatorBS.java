@@ -37,7 +37,7 @@ public class LicaContainsAllEvaluatorBS implements Evaluator{
 			return Evaluation.EXCLUDE_AND_PRUNE;
 		}
 		visited.add(tn.getId());
-		TLongArrayList Ldbnodei = new TLongArrayList((long[]) tn.getProperty("mrca"));
+		TLongArrayList Ldbnodei = new TLongArrayList(TaxonSetUtil.getMrca(tn));
 		BitSet tBS = new BitSet((int) Ldbnodei.max());
 		for(int i=0;i<Ldbnodei.size();i++){
 			tBS.set((int)Ldbnodei.getQuick(i));
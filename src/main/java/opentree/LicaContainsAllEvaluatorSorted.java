@@ -0,0 +1,45 @@
+package opentree;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.hash.TLongHashSet;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.traversal.Evaluation;
+import org.neo4j.graphdb.traversal.Evaluator;
+
+/**
+ * Neo4j Traversal Evaluator which includes (and prunes at) the nodes whose mrca contains all of
+ * the ids set in `setinIDset`. Gives the same results as LicaContainsAllEvaluatorBS without
+ * building a BitSet for each visited node.
+ */
+public class LicaContainsAllEvaluatorSorted implements Evaluator{
+	long [] inIds = null;
+	TLongHashSet visited = null;
+	TaxonSetOverlay overlay = null; //if set, the mrcas are read from this instead of the graph
+	public LicaContainsAllEvaluatorSorted(){}
+	public void setinIDset(TLongArrayList fids){
+		inIds = SortedIdSetUtil.sortedUnique(fids);
+	}
+	public void setVisitedSet(TLongHashSet fids){
+		visited = fids;
+	}
+	public TLongHashSet getVisitedSet(){
+		return visited;
+	}
+	public void setOverlay(TaxonSetOverlay ov){
+		overlay = ov;
+	}
+	public Evaluation evaluate(Path arg0) {
+		Node tn = arg0.endNode();
+		if(visited.add(tn.getId()) == false){//already visited from this or an earlier start node
+			return Evaluation.EXCLUDE_AND_PRUNE;
+		}
+		long [] tm = overlay == null ? TaxonSetUtil.getMrca(tn) : overlay.getMrca(tn);
+		if (SortedIdSetUtil.containsAll(tm, inIds)) {//contains all
+			return Evaluation.INCLUDE_AND_PRUNE;
+		}else{
+			return Evaluation.EXCLUDE_AND_CONTINUE;
+		}
+	}
+}
@@ -21,7 +21,7 @@ public class LicaEvaluator implements Evaluator{
 		fullIdSet = fids;
 	}
 	public Evaluation evaluate(Path arg0) {
-		TLongArrayList Ldbnodei = new TLongArrayList((long[]) arg0.endNode().getProperty("mrca"));
+		TLongArrayList Ldbnodei = new TLongArrayList(TaxonSetUtil.getMrca(arg0.endNode()));
 //		System.out.println("testing "+arg0+" "+arg0.endNode());
 		Ldbnodei.sort();
 		if (containsAnyt4jSorted(Ldbnodei, fullIdSet) == false) {
@@ -26,7 +26,7 @@ public class LicaEvaluatorBS implements Evaluator{
 		}
 	}
 	public Evaluation evaluate(Path arg0) {
-		TLongArrayList Ldbnodei = new TLongArrayList((long[]) arg0.endNode().getProperty("mrca"));
+		TLongArrayList Ldbnodei = new TLongArrayList(TaxonSetUtil.getMrca(arg0.endNode()));
 		BitSet tBS = new BitSet((int) Ldbnodei.max());
 		for(int i=0;i<Ldbnodei.size();i++){
 			tBS.set((int)Ldbnodei.getQuick(i));
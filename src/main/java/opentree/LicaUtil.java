@@ -72,7 +72,7 @@ public class LicaUtil {
 		ca.setinIDset(inIdSet);
 		le.setfullIDset(outIdSet);
 		Node innode = firstNode;
-		TLongArrayList visited = new TLongArrayList();
+		TLongHashSet visited = new TLongHashSet();
 		ca.setVisitedSet(visited);
 		for (Node tnode : Traversal.description().depthFirst().evaluator(le).evaluator(ca).relationships(RelTypes.MRCACHILDOF, Direction.OUTGOING).traverse(innode).nodes()) {
 //			System.out.println("adding "+tnode);
@@ -97,12 +97,29 @@ public class LicaUtil {
 	 * @return
 	 */
 	public static HashSet<Node> getBipart4j(List<Node> nodeSetsm, List<Node> nodeSet, TLongArrayList nodeSetinIdSet, TLongArrayList inIdSet, TLongArrayList outIdSet, GraphDatabaseAgent graphdb){
+		return getBipart4j(nodeSetsm, nodeSet, nodeSetinIdSet, inIdSet, outIdSet, graphdb, null);
+	}
+
+	/**
+	 * As getBipart4j, but the mrcas are read from and widened into `overlay` instead of the graph if it is not null.
+	 */
+	public static HashSet<Node> getBipart4j(List<Node> nodeSetsm, List<Node> nodeSet, TLongArrayList nodeSetinIdSet, TLongArrayList inIdSet, TLongArrayList outIdSet, GraphDatabaseAgent graphdb, TaxonSetOverlay overlay){
+		return getBipart4j(nodeSetsm, nodeSet, nodeSetinIdSet, inIdSet, outIdSet, graphdb, overlay, new TLongHashSet(), null);
+	}
+
+	/**
+	 * As getBipart4j, and the ids of the nodes the search visits are added to `visited` and those of the nodes whose
+	 * mrca or outmrca it widens to `widened` (if it is not null), for LicaCache.
+	 */
+	public static HashSet<Node> getBipart4j(List<Node> nodeSetsm, List<Node> nodeSet, TLongArrayList nodeSetinIdSet, TLongArrayList inIdSet, TLongArrayList outIdSet, GraphDatabaseAgent graphdb, TaxonSetOverlay overlay, TLongHashSet visited, TLongHashSet widened){
 //		System.out.println("starting bipart lica search");
 //		System.out.println("smnodeset:"+nodeSetsm.size()+" nodeset:"+nodeSet.size());
 		HashSet<Node> retaln = new HashSet<Node>();
-		TLongArrayList testnodes = new TLongArrayList();
-		LicaBipartEvaluatorBS le = new LicaBipartEvaluatorBS();
+		TLongHashSet testnodes = visited;
+		LicaBipartEvaluatorSorted le = new LicaBipartEvaluatorSorted();
 		le.setgraphdb(graphdb);
+		le.setOverlay(overlay);
+		le.setWidenedSet(widened);
 //		if(nodeSetinIdSet.size()!= inIdSet.size()){
 //			System.out.println("set small set");
 //			le.setSmInSet(nodeSetinIdSet);
@@ -161,7 +178,7 @@ public class LicaUtil {
 		for (Path pa : Traversal.description().depthFirst().relationships(RelTypes.MRCACHILDOF, Direction.OUTGOING).traverse(innode)) {
 			boolean going = true;
 			for (Node tnode : pa.nodes()) {
-				long[] dbnodei = (long[]) tnode.getProperty("mrca");
+				long[] dbnodei = TaxonSetUtil.getMrca(tnode);
 				HashSet<Long> Ldbnodei = new HashSet<Long>();
 				for (long temp : dbnodei) {
 					Ldbnodei.add(temp);
@@ -187,6 +204,13 @@ public class LicaUtil {
 	}
 
 	public static HashSet<Node> getSuperLICAt4j(List<Node> nodeSetsm,List<Node> nodeSet, TLongArrayList nodeSetinIdSet, TLongArrayList inIdSet) {
+		return getSuperLICAt4j(nodeSetsm, nodeSet, nodeSetinIdSet, inIdSet, null);
+	}
+
+	/**
+	 * As getSuperLICAt4j, but the mrcas are read from `overlay` instead of the graph if it is not null.
+	 */
+	public static HashSet<Node> getSuperLICAt4j(List<Node> nodeSetsm,List<Node> nodeSet, TLongArrayList nodeSetinIdSet, TLongArrayList inIdSet, TaxonSetOverlay overlay) {
 		HashSet<Node> retaln = new HashSet<Node>();
 		//changing from looking at one route to each route from the tips
 		 /* Node firstNode = nodeSet.get(0);// should be the node with the fewest outgoing relationships
@@ -208,12 +232,13 @@ public class LicaUtil {
 			}
 		}
 		Node innode = firstNode;*/
-		LicaContainsAllEvaluatorBS ca = new LicaContainsAllEvaluatorBS();
+		LicaContainsAllEvaluatorSorted ca = new LicaContainsAllEvaluatorSorted();
 //		if(nodeSetinIdSet.size()!= inIdSet.size()){
 //			ca.setSmInSet(nodeSetinIdSet);
 //		}
 		ca.setinIDset(inIdSet);
-		TLongArrayList testnodes = new TLongArrayList();
+		ca.setOverlay(overlay);
+		TLongHashSet testnodes = new TLongHashSet();
 		for(Node innode: nodeSetsm){
 			ca.setVisitedSet(testnodes);
 //			System.out.println("superlica inidset: "+inIdSet.size());
@@ -249,8 +274,8 @@ public class LicaUtil {
 				e.printStackTrace();
 				break;
 			}
-			TLongArrayList dbnodei = new TLongArrayList ((long[]) innode.getProperty("mrca"));
-			dbnodei.addAll((long[]) innode.getProperty("nested_mrca"));
+			TLongArrayList dbnodei = new TLongArrayList (TaxonSetUtil.getMrca(innode));
+			dbnodei.addAll(TaxonSetUtil.getNestedMrca(innode));
 			if (dbnodei.containsAll(nodeSetLongs) == true) {
 				retaln = innode;
 				going = false;
@@ -330,12 +355,10 @@ public class LicaUtil {
 			// get parent
 			try {
 				boolean found = false;
-				for (Relationship rel : innode.getRelationships(RelTypes.SYNTHCHILDOF, Direction.OUTGOING)) {
-					if (String.valueOf(rel.getProperty("name")).compareTo(treeName) == 0) {
-						found = true;
-						innode = rel.getEndNode();
-						break;
-					}
+				Relationship rel = SynthTreeUtil.getParentRel(innode, treeName);
+				if (rel != null) {
+					found = true;
+					innode = rel.getEndNode();
 				}
 				
 				if (! found) {
@@ -350,7 +373,7 @@ public class LicaUtil {
 				break;
 			}
 
-			TLongArrayList curIds = new TLongArrayList ((long[]) innode.getProperty("mrca"));
+			TLongArrayList curIds = new TLongArrayList (TaxonSetUtil.getMrca(innode));
 			BitSet curIdBits = new BitSet((int) curIds.max());
 			for (int i = 0; i < curIds.size(); i++) {
 //				Node curNode = nodeIter.next();
@@ -368,7 +391,7 @@ public class LicaUtil {
 			
 			// this might not be necessary...
 //			if (innode.hasProperty("nested_mrca")) {
-//				dbnodei.addAll((long[]) innode.getProperty("nested_mrca"));
+//				dbnodei.addAll(TaxonSetUtil.getNestedMrca(innode));
 //			}
 			
 //			if (dbnodei.containsAll(nodeSetLongs) == true) {
@@ -404,8 +427,8 @@ public class LicaUtil {
 			}catch(Exception e){
 				break;
 			}
-			TLongArrayList dbnodei = new TLongArrayList ((long[]) innode.getProperty("mrca"));
-			dbnodei.addAll((long[]) innode.getProperty("nested_mrca"));
+			TLongArrayList dbnodei = new TLongArrayList (TaxonSetUtil.getMrca(innode));
+			dbnodei.addAll(TaxonSetUtil.getNestedMrca(innode));
 			if(dbnodei.containsAll(nodeSet) == true){
 				retaln = innode;
 				going = false;
@@ -418,6 +441,23 @@ public class LicaUtil {
 		return retaln;
 	}
 	
+	/**
+	 * Same as getTaxonomicLICA(nodeSet, graphDb), but the LICA is looked up in `index` rather than found by walking up
+	 * the taxonomy and testing the mrca of each ancestor. Like the walk, this starts above the first node, so the first
+	 * node itself is never returned.
+	 * 
+	 * @param nodeSet
+	 * @param index the taxonomy below "life"
+	 * @return the LICA, or null if any of the nodes isn't in the taxonomy
+	 */
+	public static Node getTaxonomicLICA(TLongArrayList nodeSet, TaxonomyIntervalIndex index, GraphDatabaseAgent graphDb) {
+		long lica = index.getLICA(nodeSet);
+		if (lica != -1 && lica == nodeSet.get(0)) {
+			lica = index.getParent(lica);
+		}
+		return lica == -1 ? null : graphDb.getNodeById(lica);
+	}
+	
 	/**
 	 * This will check for a contains any of ar1 contains any ar2. Does not assume that
 	 * arrays are sorted, so should be slightly slower than method for sorted arrays,
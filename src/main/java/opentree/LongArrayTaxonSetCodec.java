@@ -0,0 +1,26 @@
+package opentree;
+
+/**
+ * The original storage for taxon sets, a plain sorted long[]. This is what all graphs built
+ * before the codecs were introduced contain.
+ */
+public class LongArrayTaxonSetCodec implements TaxonSetCodec {
+
+	public static final String NAME = "longarray";
+
+	public String getName() {
+		return NAME;
+	}
+
+	public Object encode(long [] sortedIds) {
+		return sortedIds;
+	}
+
+	public long [] decode(Object stored) {
+		return (long []) stored;
+	}
+
+	public boolean canDecode(Object stored) {
+		return stored instanceof long [];
+	}
+}
@@ -6,6 +6,7 @@ import jade.tree.TreeReader;
 import jade.tree.JadeTree;
 import jade.tree.NexsonReader;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -14,14 +15,23 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 //import org.apache.log4j.Logger;
 import org.apache.commons.lang3.StringUtils;
 //import org.apache.log4j.PropertyConfigurator;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
@@ -33,6 +43,10 @@ import org.neo4j.kernel.EmbeddedGraphDatabase;
 import opentree.TaxonNotFoundException;
 import opentree.TreeNotFoundException;
 import opentree.StoredEntityNotFoundException;
+import opentree.testing.InducedSubtreeBenchmark;
+import opentree.testing.LicaBenchmark;
+import opentree.testing.RankerBenchmark;
+import opentree.testing.TaxonSetCodecComparison;
 import opentree.testing.TreeUtils;
 
 public class MainRunner {
@@ -40,17 +54,33 @@ public class MainRunner {
 
 	/// @returns 0 for success, 1 for poorly formed command
 	public int taxonomyLoadParser(String [] args) {
-		if (args.length < 3) {
-			System.out.println("arguments should be: filename synfilename graphdbfolder");
+		ArrayList<String> argList = new ArrayList<String>(Arrays.asList(args));
+		boolean bulk = argList.remove("--bulk");
+		if (argList.size() != 4) {
+			System.out.println("arguments should be: filename synfilename graphdbfolder [--bulk]");
 			return 1;
 		}
-		String filename = args[1];
-		String synfilename = args[2];
-		String graphname = args[3] ;
+		String filename = argList.get(1);
+		String synfilename = argList.get(2);
+		String graphname = argList.get(3);
 		if (args[0].compareTo("inittax") != 0) {
 			System.err.println("ERROR: not a known command");
 			return 1;
 		}
+		if (bulk) {
+			if (TaxonomyBulkLoader.isNewGraph(graphname) == false) {
+				System.err.println("ERROR: the bulk load needs a new graph, and there is one in " + graphname);
+				return 1;
+			}
+			System.out.println("bulk loading taxonomy from " + filename + " with synonyms in " + synfilename+" to " + graphname);
+			try {
+				new TaxonomyBulkLoader(graphname).load(filename, synfilename);
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				return -1;
+			}
+			return 0;
+		}
 		GraphInitializer tl = new GraphInitializer(graphname);
 		System.out.println("initializing taxonomy from " + filename + " with synonyms in " + synfilename+" to " + graphname);
 		try {
@@ -72,6 +102,7 @@ public class MainRunner {
 		gi = new GraphImporter(graphname);
 		try {
 			gi.deleteAllTreesAndReprocess();
+			System.out.println(gi.getLicaCache().getStatsString());
 		} finally {
 			gi.shutdownDB();
 		}
@@ -228,6 +259,7 @@ public class MainRunner {
 					gi.addSetTreeToGraph(focalgroup, sourcename + "_" + String.valueOf(i),false); //@QUERY treeID has been added, so I'm not sure we want to munge the sourcename
 				}
 			}
+			System.out.println(gi.getLicaCache().getStatsString());
 		} finally {
 			gi.shutdownDB();
 		}
@@ -966,18 +998,33 @@ public class MainRunner {
 	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
 	public int synthesizeDraftTreeWithList(String [] args) throws OttolIdNotFoundException {
 		boolean test = false; 
-		if (args.length != 4 && args.length != 5) {
-			System.out.println("arguments should be rootOTToLid listofsources(CSV) graphdbfolder (test)");
+		ArrayList<String> argList = new ArrayList<String>(Arrays.asList(args));
+		int nThreads;
+		int splitDepth;
+		int batchSize;
+		try {
+			nThreads = threadsOption(argList);
+			splitDepth = intOption(argList, "--splitdepth", 2);
+			batchSize = intOption(argList, "--batch", 10000);
+		} catch (IllegalArgumentException iae) {
+			System.out.println(iae.getMessage());
+			return 1;
+		}
+		boolean resume = argList.remove("--resume");
+		if (argList.size() != 4 && argList.size() != 5) {
+			System.out.println("arguments should be rootOTToLid listofsources(CSV) graphdbfolder (test) [--threads N] [--splitdepth D] [--batch N] [--resume]");
 			return 1;
-		}if(args.length == 5){
+		}if(argList.size() == 5){
 			System.out.println("test is set, so the synthesis will not be stored");
 			test = true;
 		}
-		String ottolId = args[1];
-		String slist = args[2];
-		String graphname = args[3];
+		String ottolId = argList.get(1);
+		String slist = argList.get(2);
+		String graphname = argList.get(3);
 		boolean success = false;
 		GraphExplorer ge = new GraphExplorer(graphname);
+		ge.setDraftTreeWriteBatchSize(batchSize);
+		ge.setResumeDraftTree(resume);
 		try {
 			// build the list of preferred sources, this should probably be done externally
 			LinkedList<String> preferredSources = new LinkedList<String>();
@@ -992,7 +1039,11 @@ public class MainRunner {
 				throw new opentree.OttolIdNotFoundException(ottolId);
 			}
 
-			success = ge.synthesizeAndStoreDraftTreeBranches(firstNode, preferredSources,test);
+			if (nThreads > 1) {
+				success = ge.synthesizeAndStoreDraftTreeBranches(firstNode, preferredSources, nThreads, splitDepth, test);
+			} else {
+				success = ge.synthesizeAndStoreDraftTreeBranches(firstNode, preferredSources,test);
+			}
 		} catch (OttolIdNotFoundException oex) {
 			oex.printStackTrace();
 		} finally {
@@ -1033,6 +1084,44 @@ public class MainRunner {
 		return (success ? 0 : -1);
 	}
 
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int updateDraftTree(String [] args) throws OttolIdNotFoundException {
+		boolean test = false;
+		if (args.length != 5 && args.length != 6) {
+			System.out.println("arguments should be rootOTToLid addedsources(CSV) listofsources(CSV) graphdbfolder (test)");
+			return 1;
+		}if(args.length == 6){
+			System.out.println("test is set, so the synthesis will not be stored");
+			test = true;
+		}
+		String ottolId = args[1];
+		String [] addedSources = args[2].split(",");
+		String [] tsl = args[3].split(",");
+		String graphname = args[4];
+		int nUpdated = -1;
+		GraphExplorer ge = new GraphExplorer(graphname);
+		try {
+			LinkedList<String> preferredSources = new LinkedList<String>();
+			for(int i=0;i<tsl.length;i++){preferredSources.add(tsl[i]);}
+			System.out.println(preferredSources);
+
+			// find the start node
+			Node firstNode = ge.findGraphTaxNodeByUID(ottolId);
+			if (firstNode == null) {
+				throw new opentree.OttolIdNotFoundException(ottolId);
+			}
+			long start = System.currentTimeMillis();
+			HashSet<Node> touched = ge.getNodesTouchedBySources(Arrays.asList(addedSources));
+			nUpdated = ge.updateDraftTreeBranches(firstNode, preferredSources, touched, test);
+			System.out.println("elapsed time: " + (System.currentTimeMillis() - start) / 1000F);
+		} catch (OttolIdNotFoundException oex) {
+			oex.printStackTrace();
+		} finally {
+			ge.shutdownDB();
+		}
+		return (nUpdated >= 0 ? 0 : -1);
+	}
+
 	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
 	public int extractDraftTree(String [] args) throws OttolIdNotFoundException {
 		if (args.length != 4) {
@@ -1050,27 +1139,171 @@ public class MainRunner {
             throw new opentree.OttolIdNotFoundException(ottolId);
         }
 		
-		JadeTree synthTree = null;
-		synthTree = ge.extractDraftTree(firstNode, GraphBase.DRAFTTREENAME);
-
-		if (synthTree == null) {
+		// written as it is read from the graph, so the whole tree is never held in memory
+		PrintWriter outFile = null;
+		try {
+			outFile = new PrintWriter(new BufferedWriter(new FileWriter(outFileName)));
+			ge.writeSynthTreeNewick(firstNode, GraphBase.DRAFTTREENAME, false, outFile);
+		} catch (IOException e) {
+			e.printStackTrace();
 			return -1;
+		} finally {
+			if (outFile != null) {
+				outFile.close();
+			}
+			ge.shutdownDB();
 		}
 		
+		return 0;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int exportDraftTree(String [] args) throws OttolIdNotFoundException {
+		if (args.length != 6 && args.length != 7) {
+			System.out.println("arguments should be rootOTToLid newick|json maxDepth outFileName graphdbfolder (snapshotfile)");
+			return 1;
+		}
+		String ottolId = args[1];
+		String format = args[2];
+		if (format.equals("newick") == false && format.equals("json") == false) {
+			System.out.println("the format should be newick or json, not " + format);
+			return 1;
+		}
+		int maxDepth;
+		try {
+			maxDepth = Integer.parseInt(args[3]);
+		} catch (NumberFormatException x) {
+			System.out.println("Expecting number for maxDepth got " + args[3]);
+			return 1;
+		}
+		String outFileName = args[4];
+		String graphname = args[5];
+		GraphExplorer ge = new GraphExplorer(graphname);
+		
 		PrintWriter outFile = null;
 		try {
-			outFile = new PrintWriter(new FileWriter(outFileName));
-			outFile.write(synthTree.getRoot().getNewick(false));
+			Node firstNode = ge.findGraphTaxNodeByUID(ottolId);
+			if (firstNode == null) {
+				throw new opentree.OttolIdNotFoundException(ottolId);
+			}
+			DraftTreeExporter exporter = new DraftTreeExporter(GraphBase.DRAFTTREENAME, maxDepth);
+			if (args.length == 7) {
+				exporter.setTopologySnapshot(TopologySnapshot.open(new File(args[6])));
+			}
+			outFile = new PrintWriter(new BufferedWriter(new FileWriter(outFileName)));
+			if (format.equals("newick")) {
+				exporter.writeNewick(firstNode, true, outFile);
+				outFile.write(";");
+			} else {
+				exporter.writeJSON(firstNode, outFile);
+			}
+			outFile.write("\n");
 		} catch (IOException e) {
 			e.printStackTrace();
+			return -1;
 		} finally {
-			outFile.close();
+			if (outFile != null) {
+				outFile.close();
+			}
 			ge.shutdownDB();
 		}
 		
 		return 0;
 	}
 
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int storeDraftTreeLicaIndex(String [] args) throws OttolIdNotFoundException {
+		if (args.length != 3) {
+			System.out.println("arguments should be OTToLidInTree graphdbfolder");
+			return 1;
+		}
+		String ottolId = args[1];
+		String graphname = args[2];
+		GraphExplorer ge = new GraphExplorer(graphname);
+		try {
+			Node nodeInTree = ge.findGraphTaxNodeByUID(ottolId);
+			if (nodeInTree == null) {
+				throw new opentree.OttolIdNotFoundException(ottolId);
+			}
+			long start = System.currentTimeMillis();
+			DraftTreeLicaIndex index = DraftTreeLicaIndex.store(ge.graphDb, nodeInTree, GraphBase.DRAFTTREENAME);
+			System.out.println("stored the lica index of the " + index.size() + " nodes of the draft tree below " + index.getRootId()
+					+ " in " + (System.currentTimeMillis() - start) / 1000F + " seconds");
+		} catch (IllegalArgumentException iae) {
+			System.out.println(iae.getMessage());
+			return -1;
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			return -1;
+		} finally {
+			ge.shutdownDB();
+		}
+		return 0;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int getDraftTreeMRCA(String [] args) {
+		if (args.length != 3) {
+			System.out.println("arguments should be OTTid1,OTTid2,... graphdbfolder");
+			return 1;
+		}
+		String [] ottolIds = args[1].trim().split("\\,");
+		String graphname = args[2];
+		GraphExplorer ge = new GraphExplorer(graphname);
+		try {
+			HashMap<String, Object> results = ge.getDraftTreeMRCAForOttolIds(Arrays.asList(ottolIds));
+			for (String key : new TreeSet<String>(results.keySet())) {
+				System.out.println(key + "\t" + results.get(key));
+			}
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			return -1;
+		} finally {
+			ge.shutdownDB();
+		}
+		return 0;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int extractInducedSubtree(String [] args) {
+		if (args.length != 4) {
+			System.out.println("arguments should be OTTid1,OTTid2,... outFileName graphdbfolder");
+			return 1;
+		}
+		String [] ottolIds = args[1].trim().split("\\,");
+		String outFileName = args[2];
+		String graphname = args[3];
+		GraphExplorer ge = new GraphExplorer(graphname);
+		PrintWriter outFile = null;
+		try {
+			ArrayList<String> notFound = new ArrayList<String>();
+			ArrayList<String> notInTree = new ArrayList<String>();
+			outFile = new PrintWriter(new BufferedWriter(new FileWriter(outFileName)));
+			InducedSubtree subtree = ge.writeDraftTreeInducedSubtree(Arrays.asList(ottolIds), outFile, notFound, notInTree);
+			outFile.write("\n");
+			if (notFound.isEmpty() == false) {
+				System.out.println("not in the graph: " + notFound);
+			}
+			if (notInTree.isEmpty() == false) {
+				System.out.println("not in the draft tree: " + notInTree);
+			}
+			if (subtree == null) {
+				System.out.println("none of the taxa are in the draft tree");
+				return -1;
+			}
+			System.out.println("wrote the " + subtree.size() + " nodes of the induced subtree to " + outFileName);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			return -1;
+		} finally {
+			if (outFile != null) {
+				outFile.close();
+			}
+			ge.shutdownDB();
+		}
+		return 0;
+	}
+
 	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
 	public int extractDraftSubTreeForOttIDs(String [] args) throws OttolIdNotFoundException {
 		if (args.length != 4) {
@@ -1207,106 +1440,66 @@ public class MainRunner {
 		return 0;
 	}
 	
+	/**
+	 * Removes a `--threads N` option from the arguments.
+	 * @return N, or 1 if the option isn't there
+	 */
+	private static int threadsOption(ArrayList<String> argList) {
+		int nThreads = intOption(argList, "--threads", 1);
+		if (nThreads < 1) {
+			throw new IllegalArgumentException("--threads needs at least one thread");
+		}
+		return nThreads;
+	}
+
+	/**
+	 * Take an integer option `name` N out of the argument list.
+	 * @return N, or `defaultValue` if the option isn't there
+	 */
+	private static int intOption(ArrayList<String> argList, String name, int defaultValue) {
+		int i = argList.indexOf(name);
+		if (i < 0) {
+			return defaultValue;
+		}
+		if (i + 1 >= argList.size()) {
+			throw new IllegalArgumentException(name + " needs a number");
+		}
+		int value;
+		try {
+			value = Integer.valueOf(argList.get(i + 1));
+		} catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException(name + " needs a number");
+		}
+		argList.remove(i + 1);
+		argList.remove(i);
+		return value;
+	}
+
 	/*
 	 * Use this to load trees from nexson into the graph from a directory
 	 * not from the server
 	 */
 	public int pg_loading(String [] args){
-		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(args[1]);
-		if (args.length != 3) {
-			graphDb.shutdownDb();
+		ArrayList<String> argList = new ArrayList<String>(Arrays.asList(args));
+		int nThreads;
+		try {
+			nThreads = threadsOption(argList);
+		} catch (IllegalArgumentException iae) {
+			System.out.println(iae.getMessage());
 			return 1;
 		}
-		String directory = args[2];
-		System.out.println("loading files from "+directory+" into "+args[1]);
+		if (argList.size() != 3) {
+			return 1;
+		}
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(argList.get(1));
+		String directory = argList.get(2);
+		System.out.println("loading files from "+directory+" into "+argList.get(1)+" with "+nThreads+" threads");
 		File file = new File(directory);
 		File [] files = file.listFiles();
-		for(int i =0;i<files.length;i++){
-			System.out.println("files "+ files[i]);
-			BufferedReader br= null;
-			List<JadeTree> jt = null;
-				try{
-					br = new BufferedReader(new FileReader(files[i]));
-					jt = NexsonReader.readNexson(br, true);
-					for (JadeTree j : jt) {
-						System.out.println(files[i] + ": " + j.getExternalNodeCount());
-					}
-				} catch (FileNotFoundException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (IOException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}catch (java.lang.NullPointerException e){
-					e.printStackTrace();
-				}
-				try{
-					PhylografterConnector.fixNamesFromTrees(jt,graphDb,false);
-				}catch(IOException ioe){
-					ioe.printStackTrace();
-					System.out.println("failed to get the names from server fixNamesFromTrees");
-					continue;
-				}
-				try{
-					for(JadeTree j: jt){
-						GraphImporter gi = new GraphImporter(graphDb);
-						boolean doubname = false;
-						HashSet<Long> ottols = new HashSet<Long>();
-						for(int m=0;m<j.getExternalNodeCount();m++){
-							System.out.println(j.getExternalNode(m).getName()+" "+j.getExternalNode(m).getObject("ot:ottolid"));
-							if(j.getExternalNode(m).getObject("ot:ottolid") == null){//use doubname as also 
-								doubname = true;
-								break;
-							}
-							if (ottols.contains((Long)j.getExternalNode(m).getObject("ot:ottolid")) == true){
-								doubname = true;
-								break;
-							} else {
-								ottols.add((Long)j.getExternalNode(m).getObject("ot:ottolid"));
-							}
-						}
-						//check for any duplicate ottol:id
-						if (doubname == true){
-							System.out.println("there are duplicate names");
-						} else {
-							System.out.println("this is being added");
-							gi.setTree(j);
-							String sourcename = "";
-							if (j.getObject("ot:studyId") != null) { // use studyid (if present) as sourcename
-								sourcename = (String)j.getObject("ot:studyId");
-							}if (j.getObject("id") != null) { // use treeid (if present) as sourcename
-								sourcename += "_"+(String)j.getObject("id");
-							}							
-							//test to see if the tree is already in there
-							Index<Node> sourceMetaIndex = graphDb.getNodeIndex("sourceMetaNodes");
-							IndexHits<Node > hits = sourceMetaIndex.get("source", sourcename);
-							if (hits.size() > 0){
-								System.out.println("source "+sourcename+" already added");
-							}else{
-								gi.addSetTreeToGraphWIdsSet(sourcename,false,false);
-							}
-						}
-					}
-				} catch(java.lang.NullPointerException e){
-					System.out.println("failed to get study "+files[i].getName());
-					continue;
-				} catch (TaxonNotFoundException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (TreeIngestException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-				try {
-					br.close();
-				} catch (IOException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			
-		}
+		TreeIngestPipeline pipeline = new TreeIngestPipeline(graphDb, nThreads, false, false);
+		boolean good = pipeline.run(Arrays.asList(files));
 		graphDb.shutdownDb();
-		return 0;
+		return good ? 0 : -1;
 	}
 	
 	/*
@@ -1315,130 +1508,103 @@ public class MainRunner {
 	 */
 	public int pg_loading_ind_studies(String [] args){
 		boolean test = false;
-		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(args[1]);
-		if (args.length != 3 && args.length != 4) {
-			graphDb.shutdownDb();
-			System.out.println("the argument has to be graphdb filen (test)");
+		ArrayList<String> argList = new ArrayList<String>(Arrays.asList(args));
+		int nThreads;
+		try {
+			nThreads = threadsOption(argList);
+		} catch (IllegalArgumentException iae) {
+			System.out.println(iae.getMessage());
+			return 1;
+		}
+		if (argList.size() != 3 && argList.size() != 4) {
+			System.out.println("the argument has to be graphdb filen (test) (--threads N)");
 			System.out.println("\tif you have test at the end, it will not be entered into the database, but everything will be performed");
 			return 1;
-		}if(args.length == 4){
+		}if(argList.size() == 4){
 			System.out.println("not entering into the database, just testing");
 			test = true;
 		}
-		String filen = args[2];
-		File file = new File(filen);
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(argList.get(1));
+		File file = new File(argList.get(2));
 		System.out.println("file "+ file);
-		BufferedReader br= null;
-		List<JadeTree> jt = null;
-		try{
-			br = new BufferedReader(new FileReader(file));
-			jt = NexsonReader.readNexson(br, true);
-			System.out.println("number of tips for trees in file "+file);
-			int count = 0;
-			for (JadeTree j : jt) {
-				System.out.println("\ttree "+count+": " + j.getExternalNodeCount());
-				count += 1;
-			}
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			graphDb.shutdownDb();
-			return -1;
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			graphDb.shutdownDb();
-			return -1;
-		}catch (java.lang.NullPointerException e){
-			e.printStackTrace();
-			graphDb.shutdownDb();
-			return -1;
+		TreeIngestPipeline pipeline = new TreeIngestPipeline(graphDb, nThreads, true, test);
+		ArrayList<File> files = new ArrayList<File>();
+		files.add(file);
+		boolean good = pipeline.run(files);
+		graphDb.shutdownDb();
+		return good ? 0 : -1;
+	}
+	
+	/**
+	 * Map the trees of a newick file (one per line) to the graph as addnewick would ingest them, without writing
+	 * anything, on N threads, and print the mapping of each in the order of the file.
+	 */
+	public int mapTrees(String [] args) {
+		ArrayList<String> argList = new ArrayList<String>(Arrays.asList(args));
+		int nThreads;
+		try {
+			nThreads = threadsOption(argList);
+		} catch (IllegalArgumentException iae) {
+			System.out.println(iae.getMessage());
+			return 1;
 		}
-		try{
-			boolean good = PhylografterConnector.fixNamesFromTrees(jt,graphDb,true);
-			if (good == false){
-				System.out.println("failed to get the names from server fixNamesFromTrees");
-				graphDb.shutdownDb();
-				return -1;
+		if (argList.size() != 4 && argList.size() != 5) {
+			System.out.println("arguments should be: filename focalgroup graphdbfolder [complete] [--threads N]");
+			return 1;
+		}
+		final String focalGroup = argList.get(2);
+		final boolean assumeComplete = argList.size() == 5 && argList.get(4).equals("complete");
+		ArrayList<JadeTree> trees = new ArrayList<JadeTree>();
+		try {
+			TreeReader tr = new TreeReader();
+			BufferedReader br = new BufferedReader(new FileReader(argList.get(1)));
+			String ts;
+			while ((ts = br.readLine()) != null) {
+				if (ts.length() > 1) {
+					trees.add(tr.readTree(ts));
+				}
 			}
-		}catch(IOException ioe){
+			br.close();
+		} catch (IOException ioe) {
 			ioe.printStackTrace();
-			System.out.println("failed to get the names from server fixNamesFromTrees");
-			graphDb.shutdownDb();
 			return -1;
 		}
-		try{
-			for(JadeTree j: jt){
-				GraphImporter gi = new GraphImporter(graphDb);
-				boolean doubname = false;
-				HashSet<Long> ottols = new HashSet<Long>();
-				for(int m=0;m<j.getExternalNodeCount();m++){
-					//System.out.println(j.getExternalNode(m).getName()+" "+j.getExternalNode(m).getObject("ot:ottolid"));
-					if(j.getExternalNode(m).getObject("ot:ottolid") == null){//use doubname as also 
-						System.out.println("null: " + j.getExternalNode(m).getName()+" "+j.getExternalNode(m).getObject("ot:ottolid"));
-						doubname = true;
-						break;
-					}
-					if (ottols.contains((Long)j.getExternalNode(m).getObject("ot:ottolid")) == true){
-						System.out.println("dupl: " + j.getExternalNode(m).getName()+" "+j.getExternalNode(m).getObject("ot:ottolid"));
-						doubname = true;
-						break;
-					} else {
-						ottols.add((Long)j.getExternalNode(m).getObject("ot:ottolid"));
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(argList.get(3));
+		final TreeMapper mapper = new TreeMapper(graphDb);
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		boolean allMapped = true;
+		try {
+			ArrayList<Future<TreeMapper.Mapping>> mappings = new ArrayList<Future<TreeMapper.Mapping>>();
+			for (final JadeTree tree : trees) {
+				mappings.add(pool.submit(new Callable<TreeMapper.Mapping>() {
+					public TreeMapper.Mapping call() throws TaxonNotFoundException {
+						return mapper.map(tree, focalGroup, assumeComplete);
 					}
+				}));
+			}
+			for (int i = 0; i < mappings.size(); i++) {
+				TreeMapper.Mapping mapping;
+				try {
+					mapping = mappings.get(i).get();
+				} catch (ExecutionException ee) {
+					System.out.println("tree " + i + "\tnot mapped: " + ee.getCause().getMessage());
+					allMapped = false;
+					continue;
+				} catch (InterruptedException ie) {
+					throw new RuntimeException(ie);
 				}
-				//check for any duplicate ottol:id
-				if (doubname == true){
-					System.out.println("there are null or duplicate names");
-				} else {
-					gi.setTree(j);
-					String sourcename = "";
-					if (j.getObject("ot:studyId") != null) { // use studyid (if present) as sourcename
-						sourcename = (String)j.getObject("ot:studyId");
-					}if (j.getObject("id") != null) { // use treeid (if present) as sourcename
-						sourcename += "_"+(String)j.getObject("id");
-					}							
-					//test to see if the tree is already in there
-					Index<Node> sourceMetaIndex = graphDb.getNodeIndex("sourceMetaNodes");
-					IndexHits<Node > hits = sourceMetaIndex.get("source", sourcename);
-					if (hits.size() > 0){
-						System.out.println("source "+sourcename+" already added");
-					}else{
-						if(test == false){
-							gi.addSetTreeToGraphWIdsSet(sourcename,false,false);
-						}else{
-							gi.addSetTreeToGraphWIdsSet(sourcename,false,true);
-						}
-					}
+				System.out.println("tree " + i + "\t" + mapping.getSummary());
+				for (TreeMapper.NodeMapping nm : mapping.getNodes()) {
+					System.out.println(i + "\t" + nm);
 				}
 			}
-		} catch(java.lang.NullPointerException e){
-			System.out.println("failed to get study "+file.getName());
-			graphDb.shutdownDb();
-			return -1;
-		} catch (TaxonNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			graphDb.shutdownDb();
-			return -1;
-		} catch (TreeIngestException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			graphDb.shutdownDb();
-			return -1;
-		}
-		try {
-			br.close();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		} finally {
+			pool.shutdownNow();
 			graphDb.shutdownDb();
-			return -1;
 		}
-		graphDb.shutdownDb();
-		return 0;
+		return allMapped ? 0 : -1;
 	}
-	
+
 	public int pgtesting(String [] args){
 		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(args[1]);
 		if (args.length != 2) {
@@ -1524,6 +1690,221 @@ public class MainRunner {
 		return rc;
 	}
 	
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int migrateTaxonSets(String [] args) {
+		if (args.length != 3) {
+			System.out.println("arguments should be codec graphdbfolder");
+			return 1;
+		}
+		TaxonSetCodec codec;
+		try {
+			codec = TaxonSetUtil.getCodec(args[1]);
+		} catch (IllegalArgumentException iae) {
+			System.out.println(iae.getMessage());
+			return 1;
+		}
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(args[2]);
+		System.out.println("rewriting the taxon sets with the " + codec.getName() + " codec");
+		int transaction_iter = 100000;
+		long nNodes = 0;
+		long nRewritten = 0;
+		Transaction tx = graphDb.beginTx();
+		try {
+			for (Node nd : graphDb.getAllNodes()) {
+				nRewritten += TaxonSetUtil.reencode(nd, codec);
+				nNodes += 1;
+				if (nNodes % transaction_iter == 0) {
+					System.out.println(nNodes + " nodes, " + nRewritten + " properties rewritten");
+					tx.success();
+					tx.finish();
+					tx = graphDb.beginTx();
+				}
+			}
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		// the new codec is recorded last, so an interrupted migration leaves the old codec for writes
+		graphDb.setGraphProperty(TaxonSetUtil.CODEC_PROPERTY, codec.getName());
+		graphDb.setTaxonSetCodec(codec);
+		System.out.println(nNodes + " nodes, " + nRewritten + " properties rewritten");
+		graphDb.shutdownDb();
+		return 0;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int indexSupportingSources(String [] args) {
+		if (args.length != 2) {
+			System.out.println("arguments should be graphdbfolder");
+			return 1;
+		}
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(args[1]);
+		long nNodes = SourceIdUtil.rebuildSourceIds(graphDb);
+		System.out.println("stored the source ids of " + nNodes + " nodes, " + SourceIdUtil.getSourceNames(graphDb).length + " sources");
+		graphDb.shutdownDb();
+		return 0;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int writeTopologySnapshot(String [] args) {
+		if (args.length != 3) {
+			System.out.println("arguments should be outfile graphdbfolder");
+			return 1;
+		}
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(args[2]);
+		try {
+			long start = System.currentTimeMillis();
+			TopologySnapshot snapshot = TopologySnapshot.write(graphDb, new File(args[1]));
+			System.out.println("wrote the snapshot of " + snapshot.getNodeCount() + " node ids in " + (System.currentTimeMillis() - start) / 1000F + " seconds");
+			for (RelTypes type : TopologySnapshot.TYPES) {
+				System.out.println("\t" + type.name() + ": " + snapshot.getAdjacency(type, Direction.OUTGOING).size() + " relationships");
+			}
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			return -1;
+		} finally {
+			graphDb.shutdownDb();
+		}
+		return 0;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int labelTaxonomyIntervals(String [] args) {
+		if (args.length != 2) {
+			System.out.println("arguments should be graphdbfolder");
+			return 1;
+		}
+		GraphInitializer gi = new GraphInitializer(args[1]);
+		try {
+			Node life = gi.findGraphNodeByName("life");
+			if (life == null) {
+				System.err.println("ERROR: could not find the taxonomy root, life");
+				return -1;
+			}
+			System.out.println("labelled " + TaxonomyIntervalIndex.label(gi.graphDb, life) + " taxa");
+		} finally {
+			gi.shutdownDB();
+		}
+		return 0;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int migrateSynthTrees(String [] args) {
+		if (args.length != 2) {
+			System.out.println("arguments should be graphdbfolder");
+			return 1;
+		}
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(args[1]);
+		try {
+			System.out.println("migrated " + SynthTreeUtil.migrate(graphDb) + " synthetic tree relationships");
+		} finally {
+			graphDb.shutdownDb();
+		}
+		return 0;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int rebuildTaxonomyMrca(String [] args) {
+		if (args.length != 3) {
+			System.out.println("arguments should be taxUID graphdbfolder");
+			return 1;
+		}
+		GraphInitializer gi = new GraphInitializer(args[2]);
+		try {
+			Node taxnode = gi.findGraphTaxNodeByUID(args[1]);
+			if (taxnode == null) {
+				System.err.println("ERROR: could not find a taxon with the uid " + args[1]);
+				return -1;
+			}
+			int nSet = gi.rebuildMrcaForSubtree(taxnode);
+			System.out.println("rebuilt the mrca of " + nSet + " nodes below " + taxnode.getProperty("name"));
+		} finally {
+			gi.shutdownDB();
+		}
+		return 0;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int compareTaxonSetCodecs(String [] args) {
+		if (args.length != 2) {
+			System.out.println("arguments should be graphdbfolder");
+			return 1;
+		}
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(args[1]);
+		TaxonSetCodecComparison comparison = new TaxonSetCodecComparison();
+		comparison.compare(graphDb);
+		comparison.report();
+		graphDb.shutdownDb();
+		return 0;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int rankerBenchmark(String [] args) {
+		if (args.length != 3) {
+			System.out.println("arguments should be nsources scratchgraphdbfolder");
+			return 1;
+		}
+		int nSources = Integer.valueOf(args[1]);
+		String graphname = args[2];
+		if (new File(graphname).exists()) {
+			System.out.println("the scratch graph " + graphname + " already exists");
+			return 1;
+		}
+		int [] sizes = {10, 100, 10000};
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(graphname);
+		RankerBenchmark benchmark = new RankerBenchmark(graphDb, 17);
+		System.out.println("building a synthetic graph with " + nSources + " sources");
+		benchmark.buildGraph(nSources, sizes[sizes.length - 1]);
+		boolean identical = benchmark.run(sizes, 1000000);
+		graphDb.shutdownDb();
+		return identical ? 0 : -1;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int licaBenchmark(String [] args) {
+		if (args.length != 5) {
+			System.out.println("arguments should be ntips ntreetips ntrees scratchgraphdbfolder");
+			return 1;
+		}
+		int nTips = Integer.valueOf(args[1]);
+		int nTreeTips = Integer.valueOf(args[2]);
+		int nTrees = Integer.valueOf(args[3]);
+		String graphname = args[4];
+		if (new File(graphname).exists()) {
+			System.out.println("the scratch graph " + graphname + " already exists");
+			return 1;
+		}
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(graphname);
+		LicaBenchmark benchmark = new LicaBenchmark(graphDb, 17);
+		System.out.println("building a synthetic graph with " + nTips + " tips");
+		benchmark.buildGraph(nTips);
+		boolean identical = benchmark.run(nTreeTips, nTrees);
+		graphDb.shutdownDb();
+		return identical ? 0 : -1;
+	}
+
+	/// @returns 0 for success, 1 for poorly formed command, -1 for failure
+	public int inducedSubtreeBenchmark(String [] args) {
+		if (args.length != 3) {
+			System.out.println("arguments should be ntips scratchgraphdbfolder");
+			return 1;
+		}
+		int nTips = Integer.valueOf(args[1]);
+		String graphname = args[2];
+		if (new File(graphname).exists()) {
+			System.out.println("the scratch graph " + graphname + " already exists");
+			return 1;
+		}
+		int [] sizes = {10, 1000, 100000};
+		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(graphname);
+		InducedSubtreeBenchmark benchmark = new InducedSubtreeBenchmark(graphDb, 17);
+		System.out.println("building a synthetic tree with " + nTips + " tips");
+		benchmark.buildGraph(nTips);
+		boolean identical = benchmark.run(sizes, 5);
+		graphDb.shutdownDb();
+		return identical ? 0 : -1;
+	}
+
 	public int nodeInfo(String [] args){
 		GraphDatabaseAgent graphDb = new GraphDatabaseAgent(args[2]);
 		if (args.length != 3) {
@@ -1536,9 +1917,9 @@ public class MainRunner {
 		Node tn=graphDb.getNodeById(nodel);
 		System.out.println("properties\n================\n");
 		for(String ts:tn.getPropertyKeys()){
-			if(ts.equals("mrca") || ts.equals("outmrca") || ts.equals("nested_mrca")){
+			if(ts.equals(TaxonSetUtil.MRCA) || ts.equals(TaxonSetUtil.OUTMRCA) || ts.equals(TaxonSetUtil.NESTED_MRCA)){
 				System.out.print(ts+"\t");
-				long [] m = (long[])tn.getProperty(ts);
+				long [] m = TaxonSetUtil.getTaxonSet(tn, ts);
 				if(m.length < 100000){
 				for (int i=0;i<m.length;i++){
 					System.out.print(m[i]+" ");
@@ -1620,11 +2001,14 @@ public class MainRunner {
 		System.out.println("");
 		System.out.println("commands");
 		System.out.println("---initialize---");
-		System.out.println("\tinittax <filename> <synonymfilename> <graphdbfolder> (initializes the tax graph with a tax list)\n");
+		System.out.println("\tinittax <filename> <synonymfilename> <graphdbfolder> [--bulk] (initializes the tax graph with a tax list;\n\t\t--bulk loads it into a new graph with the batch inserter)\n");
 
 		System.out.println("---graph input---");
 		System.out.println("\taddnewick <filename> <filewithtreeids> <focalgroup> <sourcename> <graphdbfolder> (add tree to graph of life)");
 		System.out.println("\taddnexson <filename> <focalgroup> <sourcename> <graphdbfolder> (add tree to graph of life)");
+		System.out.println("\tpgload <graphdbfolder> <nexsondirectory> [--threads N] (add the trees in all the nexson files, parsing and name fixing on N threads)");
+		System.out.println("\tpgloadind <graphdbfolder> <nexsonfile> [test] [--threads N] (add the trees in a nexson file, pruning unmapped tips)");
+		System.out.println("\tmaptrees <filename> <focalgroup> <graphdbfolder> [complete] [--threads N] (map the newick trees to the graph as addnewick would, without changing it,\n\t\tand print the LICAs or the would-be new node of each internal node; complete assumes complete taxon sampling)");
 		System.out.println("\treprocess <graphdbfolder> (delete the sources and reprocess)");
 		System.out.println("\tdeletetrees <graphdbfolder> (delete all the sources)\n");
 
@@ -1658,15 +2042,30 @@ public class MainRunner {
 		
 		System.out.println("---synthesis functions---");
 		System.out.println("\tsynthesizedrafttree <rootNodeId> <graphdbfolder> (perform default synthesis from the root node using source-preference tie breaking and store the synthesized rels)");
-		System.out.println("\tsynthesizedrafttreelist <rootNodeId> <list> <graphdbfolder> (perform default synthesis from the root node using source-preferenc tie breaking and store the synthesized rels with a list (csv))");
+		System.out.println("\tsynthesizedrafttreelist <rootNodeId> <list> <graphdbfolder> [--threads N] [--splitdepth D] [--batch N] [--resume] (perform default synthesis from the root node using source-preferenc tie breaking and store the synthesized rels with a list (csv); with more than one thread the subtrees below splitdepth (default 2) levels are resolved in parallel; the rels are committed every --batch rels (default 10000) with a checkpoint that --resume picks up after a crash)");
+		System.out.println("\tupdatedrafttree <rootNodeId> <addedsources> <list> <graphdbfolder> (resynthesize only the parts of the stored draft tree that the added sources (csv) could change, using the source list (csv) as for synthesizedrafttreelist)");
 		System.out.println("\textractdrafttree <rootNodeId> <outfilename> <graphdbfolder> extracts the default synthesized tree (if any) stored below the root node\n");
+		System.out.println("\texportdrafttree <rootOTTid> <newick|json> <maxDepth> <outfilename> <graphdbfolder> [snapshotfile] (write the default synthesized tree below the taxon while it is read from the graph, down to maxDepth edges, or all of it if maxDepth is negative. With a topology snapshot written after the tree, the children of each node are read from it)");
+		System.out.println("\tdraftlicaindex <OTTidInTree> <graphdbfolder> (store the index for finding MRCAs in the draft tree that the taxon is in with the graph; the synthesis stores it too)");
+		System.out.println("\tdraftmrca <OTTid1>,<OTTid2>,... <graphdbfolder> (print the MRCA of the taxa in the draft tree)");
+		System.out.println("\textractinducedsubtree <OTTid1>,<OTTid2>,... <outfilename> <graphdbfolder> (write the subtree of the draft tree induced by the taxa, i.e. the taxa and their MRCAs, as newick)");
 		System.out.println("\textractdraftsubtreefornodes <tipOTTid1>,<tipOTTid2>,... <outfilename> <graphdbfolder> extracts the default synthesized tree (if any) stored below the root node\n");
 				
 		System.out.println("---temporary functions---");
-		System.out.println("\taddtaxonomymetadatanodetoindex <metadatanodeid> <graphdbfolder> add the metadata node attched to 'life' to the sourceMetaNodes index for the 'taxonomy' source\n");
+		System.out.println("\taddtaxonomymetadatanodetoindex <metadatanodeid> <graphdbfolder> add the metadata node attched to 'life' to the sourceMetaNodes index for the 'taxonomy' source");
+		System.out.println("\tmigratetaxonsets <longarray|bitmap> <graphdbfolder> (rewrite the mrca, outmrca and nested_mrca properties with a codec and use it for new writes)");
+		System.out.println("\tindexsupportingsources <graphdbfolder> (store the source ids of the STREECHILDOF rels on each node, for graphs made before they were kept at ingest)");
+		System.out.println("\trebuildtaxmrca <taxUID> <graphdbfolder> (recompute the mrca and nested_mrca of the taxonomy nodes below the taxon from its tips)");
+		System.out.println("\tlabeltaxonomyintervals <graphdbfolder> (store the preorder interval of each taxon, for graphs made before they were stored at load)");
+		System.out.println("\tmigratesynthtrees <graphdbfolder> (store the relationships of each synthetic tree with a type of their own instead of as SYNTHCHILDOF with a name, for graphs made before they were)");
+		System.out.println("\ttopologysnapshot <outfile> <graphdbfolder> (write the MRCACHILDOF, TAXCHILDOF, STREECHILDOF and SYNTHCHILDOF relationships to a memory-mapped file for TopologySnapshot, which exportdrafttree can read the tree from)\n");
 
 		System.out.println("---testing---");
-		System.out.println("\tmakeprunedbipartstestfiles <randomseed> <ntaxa> <path> (export newick files containing (1) a randomized tree and (2) topologies for each of its bipartitions, pruned to a minimal subset of taxa)\n");
+		System.out.println("\tmakeprunedbipartstestfiles <randomseed> <ntaxa> <path> (export newick files containing (1) a randomized tree and (2) topologies for each of its bipartitions, pruned to a minimal subset of taxa)");
+		System.out.println("\tcomparetaxonsetcodecs <graphdbfolder> (report the stored size and encode/decode time of the mrca, outmrca and nested_mrca properties under each codec)");
+		System.out.println("\tlicabenchmark <ntips> <ntreetips> <ntrees> <scratchgraphdbfolder> (time the lica searches for random trees against a new synthetic graph with the old and current evaluators, e.g. 10000 5000 1 for a 5,000 tip tree)");
+		System.out.println("\trankerbenchmark <nsources> <scratchgraphdbfolder> (time the ranking of 10, 100 and 10,000 candidate rels from nsources synthetic sources by comparator sorts and by rank keys)");
+		System.out.println("\tinducedsubtreebenchmark <ntips> <scratchgraphdbfolder> (time the extraction of the subtrees induced by 10, 1,000 and 100,000 tips of a synthetic tree of ntips tips by path walks and by InducedSubtree)\n");
 		
 		System.out.println("---server functions---");
 		System.out.println("\tgetupdatedlist\n");
@@ -1700,6 +2099,8 @@ public class MainRunner {
 			} else if (command.compareTo("addnewick") == 0
 					|| command.compareTo("addnexson") == 0) {
 				cmdReturnCode = mr.graphImporterParser(args);
+			} else if (command.compareTo("maptrees") == 0) {
+				cmdReturnCode = mr.mapTrees(args);
 			} else if (command.compareTo("argusjson") == 0) {
 				cmdReturnCode = mr.graphArgusJSON(args);
 			} else if (command.compareTo("jsgol") == 0
@@ -1743,14 +2144,36 @@ public class MainRunner {
 				cmdReturnCode = mr.synthesizeDraftTree(args);
 			}else if (command.compareTo("synthesizedrafttreelist") == 0) {
 				cmdReturnCode = mr.synthesizeDraftTreeWithList(args);
+			} else if (command.compareTo("updatedrafttree") == 0) {
+				cmdReturnCode = mr.updateDraftTree(args);
 			} else if (command.compareTo("extractdrafttree") == 0) {
 				cmdReturnCode = mr.extractDraftTree(args);
+			} else if (command.compareTo("exportdrafttree") == 0) {
+				cmdReturnCode = mr.exportDraftTree(args);
+			} else if (command.compareTo("draftlicaindex") == 0) {
+				cmdReturnCode = mr.storeDraftTreeLicaIndex(args);
+			} else if (command.compareTo("draftmrca") == 0) {
+				cmdReturnCode = mr.getDraftTreeMRCA(args);
+			} else if (command.compareTo("extractinducedsubtree") == 0) {
+				cmdReturnCode = mr.extractInducedSubtree(args);
 			} else if (command.compareTo("extractdraftsubtreefornodes") == 0) {
 				cmdReturnCode = mr.extractDraftSubTreeForOttIDs(args);
 			
 			// temporary
 			} else if (command.compareTo("addtaxonomymetadatanodetoindex") == 0) {
 				cmdReturnCode = mr.addTaxonomyMetadataNodeToIndex(args);
+			} else if (command.compareTo("migratetaxonsets") == 0) {
+				cmdReturnCode = mr.migrateTaxonSets(args);
+			} else if (command.compareTo("indexsupportingsources") == 0) {
+				cmdReturnCode = mr.indexSupportingSources(args);
+			} else if (command.compareTo("rebuildtaxmrca") == 0) {
+				cmdReturnCode = mr.rebuildTaxonomyMrca(args);
+			} else if (command.compareTo("labeltaxonomyintervals") == 0) {
+				cmdReturnCode = mr.labelTaxonomyIntervals(args);
+			} else if (command.compareTo("migratesynthtrees") == 0) {
+				cmdReturnCode = mr.migrateSynthTrees(args);
+			} else if (command.compareTo("topologysnapshot") == 0) {
+				cmdReturnCode = mr.writeTopologySnapshot(args);
 			
 			// not sure where this should live
 			} else if (command.compareTo("nexson2newick") == 0) {
@@ -1761,6 +2184,14 @@ public class MainRunner {
 			// testing functions
 			} else if (command.compareTo("makeprunedbipartstestfiles") == 0) {
 				cmdReturnCode = mr.makePrunedBipartsTestFiles(args);
+			} else if (command.compareTo("comparetaxonsetcodecs") == 0) {
+				cmdReturnCode = mr.compareTaxonSetCodecs(args);
+			} else if (command.compareTo("licabenchmark") == 0) {
+				cmdReturnCode = mr.licaBenchmark(args);
+			} else if (command.compareTo("rankerbenchmark") == 0) {
+				cmdReturnCode = mr.rankerBenchmark(args);
+			} else if (command.compareTo("inducedsubtreebenchmark") == 0) {
+				cmdReturnCode = mr.inducedSubtreeBenchmark(args);
 			
 			} else if (command.compareTo("pgload") == 0) {
 				cmdReturnCode = mr.pg_loading(args);
@@ -344,7 +344,7 @@ public class PhylografterConnector {
 	        		IndexHits<Node> hits = graphDb.getNodeIndex("graphTaxUIDNodes").get("tax_uid", String.valueOf(tid));
 	        		Node firstNode = hits.getSingle();
 	        		hits.close();
-	        		TLongArrayList t1 = new TLongArrayList((long [])firstNode.getProperty("mrca"));
+	        		TLongArrayList t1 = new TLongArrayList(TaxonSetUtil.getMrca(firstNode));
 	        		for(int k=0;k<trees.get(i).getExternalNodeCount();k++){
 	        			if(pru.contains(trees.get(i).getExternalNode(k)) 
 	        				|| k==j)
@@ -353,7 +353,7 @@ public class PhylografterConnector {
 		        		IndexHits<Node> hits2 = graphDb.getNodeIndex("graphTaxUIDNodes").get("tax_uid", String.valueOf(tid2));
 		        		Node secondNode = hits2.getSingle();
 		        		hits2.close();
-		        		TLongArrayList t2 = new TLongArrayList((long [])secondNode.getProperty("mrca"));
+		        		TLongArrayList t2 = new TLongArrayList(TaxonSetUtil.getMrca(secondNode));
 		        		if (LicaUtil.containsAnyt4jUnsorted(t1, t2)){
 		        			System.out.println("\toverlapping tips: "+trees.get(i).getExternalNode(k).getName());
 		        			pru.add(trees.get(i).getExternalNode(k));
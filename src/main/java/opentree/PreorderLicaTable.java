@@ -0,0 +1,245 @@
+package opentree;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * A rooted tree in preorder, with the depth of each node, to find the LICA of any set of its nodes in constant time: it
+ * is the LICA of the nodes with the smallest and largest preorder positions, which is either the first of them or the
+ * parent of the shallowest node between them in preorder. The shallowest node of a range is found with a table of the
+ * minima of blocks of BLOCK_SIZE positions (a sparse table over the block minima and a scan within the blocks at the
+ * ends), so building the table is O(n) and a query takes constant time.
+ *
+ * The tree is given by the node ids and the parent positions in preorder; the depths and the last position below each
+ * node are worked out from them.
+ */
+final class PreorderLicaTable {
+
+	private static final int BLOCK_SIZE = 32;
+
+	// by preorder position
+	private final long [] nodeIds;
+	private final int [] parents;
+	private final int [] depths;
+	private final int [] rights;
+	private final TLongIntHashMap positions;
+
+	// sparse[k][b] is the position of the shallowest node in blocks b .. b + 2^k - 1
+	private final int [][] sparse;
+
+	/**
+	 * @param nodeIds the node ids in preorder
+	 * @param parents the position of the parent of each node, -1 for the root at position 0
+	 */
+	PreorderLicaTable(long [] nodeIds, int [] parents) {
+		int n = nodeIds.length;
+		if (parents.length != n) {
+			throw new IllegalArgumentException("there are " + n + " nodes and " + parents.length + " parents");
+		}
+		this.nodeIds = nodeIds;
+		this.parents = parents;
+		depths = new int[n];
+		rights = new int[n];
+		positions = new TLongIntHashMap(n * 2, 0.5f, -1, -1);
+		for (int i = 0; i < n; i++) {
+			if (i > 0 && (parents[i] < 0 || parents[i] >= i)) {
+				throw new IllegalArgumentException("the nodes are not in preorder at position " + i);
+			}
+			depths[i] = i == 0 ? 0 : depths[parents[i]] + 1;
+			rights[i] = i;
+			positions.put(nodeIds[i], i);
+		}
+		for (int i = n - 1; i > 0; i--) {
+			rights[parents[i]] = Math.max(rights[parents[i]], rights[i]);
+		}
+
+		// the block minima, and the sparse table over them
+		int nBlocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int nLevels = 1;
+		while ((1 << nLevels) <= nBlocks) {
+			nLevels += 1;
+		}
+		sparse = new int[nLevels][];
+		sparse[0] = new int[nBlocks];
+		for (int b = 0; b < nBlocks; b++) {
+			sparse[0][b] = scanMin(b * BLOCK_SIZE, Math.min(n, (b + 1) * BLOCK_SIZE) - 1);
+		}
+		for (int k = 1; k < nLevels; k++) {
+			int half = 1 << (k - 1);
+			sparse[k] = new int[Math.max(0, nBlocks - (1 << k) + 1)];
+			for (int b = 0; b < sparse[k].length; b++) {
+				sparse[k][b] = shallower(sparse[k - 1][b], sparse[k - 1][b + half]);
+			}
+		}
+	}
+
+	/**
+	 * The relationships from the children of a node to it, for build().
+	 */
+	interface ChildRelationships {
+		Iterable<Relationship> get(Node nd);
+	}
+
+	/**
+	 * Walk the tree below `root` in preorder, with the children of each node given by the start nodes of its
+	 * `childRelationships`, and build the table of it. The walk keeps its own stack, so deep trees are fine.
+	 */
+	static PreorderLicaTable build(Node root, ChildRelationships childRelationships) {
+		TLongArrayList ids = new TLongArrayList();
+		TIntArrayList parents = new TIntArrayList();
+		LinkedList<Iterator<Relationship>> stack = new LinkedList<Iterator<Relationship>>();
+		LinkedList<Integer> stackPositions = new LinkedList<Integer>();
+		ids.add(root.getId());
+		parents.add(-1);
+		stack.push(childRelationships.get(root).iterator());
+		stackPositions.push(0);
+		while (stack.isEmpty() == false) {
+			if (stack.peek().hasNext()) {
+				Node child = stack.peek().next().getStartNode();
+				int position = ids.size();
+				ids.add(child.getId());
+				parents.add(stackPositions.peek());
+				stack.push(childRelationships.get(child).iterator());
+				stackPositions.push(position);
+			} else {
+				stack.pop();
+				stackPositions.pop();
+			}
+		}
+		return new PreorderLicaTable(ids.toArray(), parents.toArray());
+	}
+
+	/**
+	 * Write the node ids and parents, to be read back with read().
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(nodeIds.length);
+		for (int i = 0; i < nodeIds.length; i++) {
+			out.writeLong(nodeIds[i]);
+			out.writeInt(parents[i]);
+		}
+	}
+
+	static PreorderLicaTable read(DataInput in) throws IOException {
+		int n = in.readInt();
+		long [] nodeIds = new long[n];
+		int [] parents = new int[n];
+		for (int i = 0; i < n; i++) {
+			nodeIds[i] = in.readLong();
+			parents[i] = in.readInt();
+		}
+		return new PreorderLicaTable(nodeIds, parents);
+	}
+
+	int size() {
+		return nodeIds.length;
+	}
+
+	long getNodeId(int position) {
+		return nodeIds[position];
+	}
+
+	/**
+	 * @return the preorder position of the node, or -1 if it isn't in the tree
+	 */
+	int getPosition(long nodeId) {
+		return positions.get(nodeId);
+	}
+
+	/**
+	 * @return the position of the last node below the node at `position`
+	 */
+	int getRight(int position) {
+		return rights[position];
+	}
+
+	/**
+	 * @return true if `ancestorId` is `descendantId` or one of its ancestors, false if either isn't in the tree
+	 */
+	boolean isAncestor(long ancestorId, long descendantId) {
+		int a = positions.get(ancestorId);
+		int d = positions.get(descendantId);
+		return a != -1 && d != -1 && a <= d && d <= rights[a];
+	}
+
+	/**
+	 * @return the parent of the node, or -1 if it is the root or isn't in the tree
+	 */
+	long getParent(long nodeId) {
+		int position = positions.get(nodeId);
+		return position > 0 ? nodeIds[parents[position]] : -1;
+	}
+
+	/**
+	 * @return the id of the lowest node that is or is an ancestor of all the nodes, or -1 if there are none or any of
+	 * 		them isn't in the tree
+	 */
+	long getLICA(long [] ids) {
+		if (ids.length == 0) {
+			return -1;
+		}
+		int first = Integer.MAX_VALUE;
+		int last = -1;
+		for (long id : ids) {
+			int position = positions.get(id);
+			if (position == -1) {
+				return -1;
+			}
+			first = Math.min(first, position);
+			last = Math.max(last, position);
+		}
+		return nodeIds[licaPosition(first, last)];
+	}
+
+	/**
+	 * @return the position of the LICA of the nodes at positions `first` <= `last`
+	 */
+	int licaPosition(int first, int last) {
+		if (last <= rights[first]) {
+			return first;
+		}
+		// the shallowest node after `first` up to `last` is a child of the lica
+		return parents[rangeMin(first + 1, last)];
+	}
+
+	/**
+	 * @return the position of the shallowest node from `from` to `to` (inclusive)
+	 */
+	private int rangeMin(int from, int to) {
+		int fromBlock = from / BLOCK_SIZE;
+		int toBlock = to / BLOCK_SIZE;
+		if (toBlock - fromBlock <= 1) {
+			return scanMin(from, to);
+		}
+		int min = shallower(scanMin(from, (fromBlock + 1) * BLOCK_SIZE - 1), scanMin(toBlock * BLOCK_SIZE, to));
+		// the full blocks in between, as two overlapping runs of 2^k blocks
+		int nFull = toBlock - fromBlock - 1;
+		int k = 31 - Integer.numberOfLeadingZeros(nFull);
+		min = shallower(min, sparse[k][fromBlock + 1]);
+		return shallower(min, sparse[k][toBlock - (1 << k)]);
+	}
+
+	private int scanMin(int from, int to) {
+		int min = from;
+		for (int i = from + 1; i <= to; i++) {
+			if (depths[i] < depths[min]) {
+				min = i;
+			}
+		}
+		return min;
+	}
+
+	private int shallower(int a, int b) {
+		return depths[b] < depths[a] ? b : a;
+	}
+}
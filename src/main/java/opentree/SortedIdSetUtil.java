@@ -0,0 +1,158 @@
+package opentree;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * Set operations on sorted long[] node id sets (the decoded mrca, outmrca and nested_mrca
+ * properties). None of these allocate unless a new set has to be returned.
+ *
+ * The sets that hold the ids of a source tree are usually much smaller than the mrca sets of
+ * the graph nodes they are tested against, so the lookups gallop (exponential then binary
+ * search) through the larger array instead of stepping through it.
+ */
+public final class SortedIdSetUtil {
+
+	/**
+	 * @return a sorted copy of `ids` without duplicates
+	 */
+	public static long [] sortedUnique(TLongArrayList ids) {
+		long [] ret = ids.toArray();
+		Arrays.sort(ret);
+		return unique(ret);
+	}
+
+	/**
+	 * @param sortedIds sorted ids
+	 * @return `sortedIds` itself if it has no duplicates, otherwise a copy without them
+	 */
+	public static long [] unique(long [] sortedIds) {
+		int n = 0;
+		for (int i = 0; i < sortedIds.length; i++) {
+			if (i == 0 || sortedIds[i] != sortedIds[i - 1]) {
+				n++;
+			}
+		}
+		if (n == sortedIds.length) {
+			return sortedIds;
+		}
+		long [] ret = new long[n];
+		n = 0;
+		for (int i = 0; i < sortedIds.length; i++) {
+			if (i == 0 || sortedIds[i] != sortedIds[i - 1]) {
+				ret[n++] = sortedIds[i];
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the first index i >= from with a[i] >= key, or a.length
+	 */
+	public static int gallop(long [] a, int from, long key) {
+		if (from >= a.length || a[from] >= key) {
+			return from;
+		}
+		// a[lo] < key, find hi with a[hi] >= key by doubling the step
+		int lo = from;
+		int step = 1;
+		int hi = from + step;
+		while (hi < a.length && a[hi] < key) {
+			lo = hi;
+			step <<= 1;
+			hi = from + step;
+		}
+		if (hi > a.length) {
+			hi = a.length;
+		}
+		// a[lo] < key <= a[hi]
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] < key) {
+				lo = mid;
+			} else {
+				hi = mid;
+			}
+		}
+		return hi;
+	}
+
+	/**
+	 * @return true if the sorted sets share any id
+	 */
+	public static boolean intersects(long [] a, long [] b) {
+		if (a.length == 0 || b.length == 0 || a[a.length - 1] < b[0] || b[b.length - 1] < a[0]) {
+			return false;
+		}
+		long [] small = a.length <= b.length ? a : b;
+		long [] large = small == a ? b : a;
+		int j = 0;
+		for (int i = 0; i < small.length; i++) {
+			j = gallop(large, j, small[i]);
+			if (j == large.length) {
+				return false;
+			}
+			if (large[j] == small[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if every id in `sub` is in `sup`
+	 */
+	public static boolean containsAll(long [] sup, long [] sub) {
+		if (sub.length == 0) {
+			return true;
+		}
+		if (sup.length == 0 || sub[0] < sup[0] || sub[sub.length - 1] > sup[sup.length - 1]) {
+			return false;
+		}
+		int j = 0;
+		for (int i = 0; i < sub.length; i++) {
+			j = gallop(sup, j, sub[i]);
+			if (j == sup.length || sup[j] != sub[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Merge the ids of `add` that are missing from `base` into `base`. Ids (and repeats) already
+	 * in `base` are kept as they are.
+	 * @param base sorted ids
+	 * @param add sorted ids without duplicates
+	 * @return `base` itself if nothing was missing, otherwise the sorted union
+	 */
+	public static long [] addMissing(long [] base, long [] add) {
+		int nMissing = 0;
+		int j = 0;
+		for (int i = 0; i < add.length; i++) {
+			j = gallop(base, j, add[i]);
+			if (j == base.length || base[j] != add[i]) {
+				nMissing++;
+			}
+		}
+		if (nMissing == 0) {
+			return base;
+		}
+		long [] ret = new long[base.length + nMissing];
+		int i = 0;
+		j = 0;
+		int n = 0;
+		while (i < base.length || j < add.length) {
+			if (j == add.length || (i < base.length && base[i] < add[j])) {
+				ret[n++] = base[i++];
+			} else if (i == base.length || add[j] < base[i]) {
+				ret[n++] = add[j++];
+			} else {
+				// present in both, keep the base copy
+				j++;
+			}
+		}
+		return ret;
+	}
+}
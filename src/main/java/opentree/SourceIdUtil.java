@@ -0,0 +1,213 @@
+package opentree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Keeps the set of sources of the STREECHILDOF relationships (in either direction) of each node as a node property,
+ * so that the synthesis can get the sources supporting a relationship without going through all the STREECHILDOF
+ * relationships of its child node.
+ *
+ * The sources are stored as small integer ids. The id of a source is its position in the SOURCE_NAMES graph property,
+ * which is appended to the first time a source is seen and never reordered, so the ids stay valid when sources are
+ * deleted. The SOURCE_IDS node properties are only kept for graphs that have the SOURCE_NAMES property: it is set up
+ * when the taxonomy is loaded, and for older graphs by rebuildSourceIds (the indexsupportingsources command).
+ */
+public final class SourceIdUtil {
+
+	/** graph property: the source names, indexed by source id */
+	public static final String SOURCE_NAMES = "source_names";
+	/** node property: the sorted ids of the sources of the STREECHILDOF relationships of the node */
+	public static final String SOURCE_IDS = "source_ids";
+
+	/**
+	 * @return true if the graph keeps the source ids of its nodes
+	 */
+	public static boolean isTracking(GraphDatabaseAgent graphDb) {
+		return graphDb.getGraphProperty(SOURCE_NAMES) != null;
+	}
+
+	/**
+	 * @return the source names indexed by source id, or null if the graph doesn't keep source ids
+	 */
+	public static String [] getSourceNames(GraphDatabaseAgent graphDb) {
+		return (String []) graphDb.getGraphProperty(SOURCE_NAMES);
+	}
+
+	/**
+	 * Start keeping source ids in a graph that has no STREECHILDOF relationships yet. Does nothing if it already does.
+	 */
+	public static void startTracking(GraphDatabaseAgent graphDb) {
+		if (isTracking(graphDb) == false) {
+			graphDb.setGraphProperty(SOURCE_NAMES, new String[0]);
+		}
+	}
+
+	/**
+	 * Get the id of `sourcename`, giving it the next id if it doesn't have one. Should be called within a
+	 * transaction, so the id is only kept if the relationships of the source are.
+	 * @return the id, or -1 if the graph doesn't keep source ids
+	 */
+	public static int getOrCreateSourceId(GraphDatabaseAgent graphDb, String sourcename) {
+		String [] names = getSourceNames(graphDb);
+		if (names == null) {
+			return -1;
+		}
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(sourcename)) {
+				return i;
+			}
+		}
+		String [] newNames = Arrays.copyOf(names, names.length + 1);
+		newNames[names.length] = sourcename;
+		graphDb.setGraphProperty(SOURCE_NAMES, newNames);
+		return names.length;
+	}
+
+	/**
+	 * @return the sorted source ids of `nd`, or null if they aren't stored
+	 */
+	public static int [] getSourceIds(Node nd) {
+		if (nd.hasProperty(SOURCE_IDS)) {
+			return (int []) nd.getProperty(SOURCE_IDS);
+		}
+		return null;
+	}
+
+	/**
+	 * Add `sourceId` to the source ids of `nd`, if it's not there yet. Must be called within a transaction.
+	 */
+	public static void addSourceId(Node nd, int sourceId) {
+		int [] ids = getSourceIds(nd);
+		if (ids == null) {
+			int [] newIds = {sourceId};
+			nd.setProperty(SOURCE_IDS, newIds);
+			return;
+		}
+		int pos = Arrays.binarySearch(ids, sourceId);
+		if (pos >= 0) {
+			return;
+		}
+		pos = -pos - 1;
+		int [] newIds = new int[ids.length + 1];
+		System.arraycopy(ids, 0, newIds, 0, pos);
+		newIds[pos] = sourceId;
+		System.arraycopy(ids, pos, newIds, pos + 1, ids.length - pos);
+		nd.setProperty(SOURCE_IDS, newIds);
+	}
+
+	/**
+	 * Set the source ids of `nd` from its STREECHILDOF relationships, e.g. after some of them have been deleted. Must be
+	 * called within a transaction. Does nothing if the graph doesn't keep source ids.
+	 */
+	public static void updateSourceIds(GraphDatabaseAgent graphDb, Node nd) {
+		String [] names = getSourceNames(graphDb);
+		if (names == null) {
+			return;
+		}
+		ArrayList<String> nameList = new ArrayList<String>(Arrays.asList(names));
+		setSourceIds(nd, nameList, getIdsByName(nameList));
+		if (nameList.size() > names.length) {
+			graphDb.setGraphProperty(SOURCE_NAMES, nameList.toArray(new String[nameList.size()]));
+		}
+	}
+
+	/**
+	 * Set the source ids of every node in the graph from its STREECHILDOF relationships, and start keeping them if the
+	 * graph didn't. Sources that already have an id keep it.
+	 * @return the number of nodes with sources
+	 */
+	public static long rebuildSourceIds(GraphDatabaseAgent graphDb) {
+		String [] names = getSourceNames(graphDb);
+		ArrayList<String> nameList = names == null ? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(names));
+		HashMap<String, Integer> idsByName = getIdsByName(nameList);
+		long nNodes = 0;
+		long nWithSources = 0;
+		Transaction tx = graphDb.beginTx();
+		try {
+			for (Node nd : graphDb.getAllNodes()) {
+				if (setSourceIds(nd, nameList, idsByName)) {
+					nWithSources += 1;
+				}
+				if (++nNodes % 50000 == 0) {
+					tx.success();
+					tx.finish();
+					tx = graphDb.beginTx();
+				}
+			}
+			graphDb.setGraphProperty(SOURCE_NAMES, nameList.toArray(new String[nameList.size()]));
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		return nWithSources;
+	}
+
+	private static HashMap<String, Integer> getIdsByName(ArrayList<String> names) {
+		HashMap<String, Integer> idsByName = new HashMap<String, Integer>();
+		for (int i = 0; i < names.size(); i++) {
+			idsByName.put(names.get(i), i);
+		}
+		return idsByName;
+	}
+
+	/**
+	 * Set the source ids of `nd` from its relationships, giving new ids (appended to `names`) to sources without one.
+	 * @return true if `nd` has any sources
+	 */
+	private static boolean setSourceIds(Node nd, ArrayList<String> names, HashMap<String, Integer> idsByName) {
+		TIntHashSet ids = new TIntHashSet();
+		for (Relationship rel : nd.getRelationships(RelTypes.STREECHILDOF)) {
+			if (rel.hasProperty("source")) {
+				String source = String.valueOf(rel.getProperty("source"));
+				Integer id = idsByName.get(source);
+				if (id == null) {
+					id = names.size();
+					names.add(source);
+					idsByName.put(source, id);
+				}
+				ids.add(id);
+			}
+		}
+		if (ids.isEmpty()) {
+			if (nd.hasProperty(SOURCE_IDS)) {
+				nd.removeProperty(SOURCE_IDS);
+			}
+			return false;
+		}
+		int [] sorted = ids.toArray();
+		Arrays.sort(sorted);
+		nd.setProperty(SOURCE_IDS, sorted);
+		return true;
+	}
+
+	/**
+	 * @return the names of the sources of the STREECHILDOF relationships of `nd`, from its source ids if they are
+	 * 		stored and `names` (the source names by id) isn't null, otherwise from the relationships themselves
+	 */
+	public static String [] getSourceNames(Node nd, String [] names) {
+		int [] ids = names == null ? null : getSourceIds(nd);
+		if (ids != null) {
+			String [] sources = new String[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				sources[i] = names[ids[i]];
+			}
+			return sources;
+		}
+		HashSet<String> sources = new HashSet<String>();
+		for (Relationship rel : nd.getRelationships(RelTypes.STREECHILDOF)) {
+			if (rel.hasProperty("source")) {
+				sources.add(String.valueOf(rel.getProperty("source")));
+			}
+		}
+		return sources.toArray(new String[sources.size()]);
+	}
+}
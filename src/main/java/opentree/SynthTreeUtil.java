@@ -0,0 +1,141 @@
+package opentree;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.Predicate;
+import org.neo4j.helpers.collection.FilteringIterable;
+
+/**
+ * Each synthetic tree is stored with a relationship type of its own, SYNTHCHILDOF_<tree name>, so the relationships of
+ * one tree at a node are fetched by their type, instead of by reading the name property of the SYNTHCHILDOF
+ * relationships of every tree stored in the graph. The relationships still carry the name property.
+ *
+ * Graphs made before this keep their synthetic trees as SYNTHCHILDOF relationships told apart by their name until
+ * migrate() is run. The methods here read both kinds, so they work on those graphs as well.
+ */
+public class SynthTreeUtil {
+
+	public static final String TYPE_PREFIX = RelTypes.SYNTHCHILDOF.name() + "_";
+
+	private static final int COMMIT_INTERVAL = 10000;
+
+	private static final ConcurrentHashMap<String, RelationshipType> relTypes = new ConcurrentHashMap<String, RelationshipType>();
+
+	/**
+	 * @return the relationship type of the synthetic tree `treeName`
+	 */
+	public static RelationshipType getRelType(String treeName) {
+		RelationshipType type = relTypes.get(treeName);
+		if (type == null) {
+			type = DynamicRelationshipType.withName(TYPE_PREFIX + treeName);
+			relTypes.putIfAbsent(treeName, type);
+		}
+		return type;
+	}
+
+	/**
+	 * @return true if `rel` is a relationship of a synthetic tree, of either kind
+	 */
+	public static boolean isSynthTreeRel(Relationship rel) {
+		return rel.getType().name().startsWith(TYPE_PREFIX) || rel.isType(RelTypes.SYNTHCHILDOF);
+	}
+
+	/**
+	 * @return the name of the synthetic tree of `rel`, or null if it isn't a named synthetic tree relationship
+	 */
+	public static String getTreeName(Relationship rel) {
+		String typeName = rel.getType().name();
+		if (typeName.startsWith(TYPE_PREFIX)) {
+			return typeName.substring(TYPE_PREFIX.length());
+		} else if (rel.isType(RelTypes.SYNTHCHILDOF) && rel.hasProperty("name")) {
+			return String.valueOf(rel.getProperty("name"));
+		}
+		return null;
+	}
+
+	/**
+	 * @return the relationships of the synthetic tree `treeName` at `nd` in the direction `dir`: INCOMING for those
+	 * 		to its children, OUTGOING for the one to its parent
+	 */
+	public static Iterable<Relationship> getRelationships(Node nd, Direction dir, final String treeName) {
+		return new FilteringIterable<Relationship>(nd.getRelationships(dir, getRelType(treeName), RelTypes.SYNTHCHILDOF),
+				new Predicate<Relationship>() {
+					public boolean accept(Relationship rel) {
+						return rel.isType(RelTypes.SYNTHCHILDOF) == false || treeName.equals(String.valueOf(rel.getProperty("name", null)));
+					}
+				});
+	}
+
+	/**
+	 * @return the relationship from `nd` to its parent in the synthetic tree `treeName`, or null if it has none
+	 */
+	public static Relationship getParentRel(Node nd, String treeName) {
+		for (Relationship rel : getRelationships(nd, Direction.OUTGOING, treeName)) {
+			return rel;
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if `nd` has children in the synthetic tree `treeName`
+	 */
+	public static boolean hasChildren(Node nd, String treeName) {
+		return getRelationships(nd, Direction.INCOMING, treeName).iterator().hasNext();
+	}
+
+	/**
+	 * Store the branch from `child` to `parent` in the synthetic tree `treeName`. Must be called within a transaction.
+	 * @return the new relationship
+	 */
+	public static Relationship createRelationship(Node child, Node parent, String treeName) {
+		Relationship rel = child.createRelationshipTo(parent, getRelType(treeName));
+		rel.setProperty("name", treeName);
+		return rel;
+	}
+
+	/**
+	 * Replace every named SYNTHCHILDOF relationship with one of the type of its tree, with the same properties. The
+	 * children of each node are read back in the same order as before.
+	 * @return the number of relationships replaced
+	 */
+	public static long migrate(GraphDatabaseAgent graphDb) {
+		long count = 0;
+		Transaction tx = graphDb.beginTx();
+		try {
+			for (Node parent : graphDb.getAllNodes()) {
+				ArrayList<Relationship> rels = new ArrayList<Relationship>();
+				for (Relationship rel : parent.getRelationships(Direction.INCOMING, RelTypes.SYNTHCHILDOF)) {
+					if (rel.hasProperty("name")) {
+						rels.add(rel);
+					}
+				}
+				// a node lists its newest relationships first, so they are made from the last to the first
+				for (int i = rels.size() - 1; i >= 0; i--) {
+					Relationship rel = rels.get(i);
+					Relationship newRel = rel.getStartNode().createRelationshipTo(parent, getRelType(String.valueOf(rel.getProperty("name"))));
+					for (String key : rel.getPropertyKeys()) {
+						newRel.setProperty(key, rel.getProperty(key));
+					}
+					rel.delete();
+					if (++count % COMMIT_INTERVAL == 0) {
+						tx.success();
+						tx.finish();
+						tx = graphDb.beginTx();
+						System.out.println(count + " synthetic tree relationships migrated");
+					}
+				}
+			}
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		return count;
+	}
+}
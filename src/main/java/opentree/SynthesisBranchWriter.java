@@ -0,0 +1,186 @@
+package opentree;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Stores the relationships chosen by a synthesis as synthetic tree relationships, committing every `batchSize`
+ * relationships instead of holding the whole tree in one transaction.
+ *
+ * Each commit also stores a checkpoint (the synthesis run and the number of relationships stored so far) as graph
+ * properties, in the same transaction as the relationships, so the checkpoint always matches what is in the graph.
+ * The synthesis visits the chosen relationships in the same order every time it is run on the same graph with the
+ * same sources, so a run that died can be resumed by running it again with resume(): the relationships up to the
+ * checkpoint are then skipped instead of stored a second time. The checkpoint is removed when the run finishes.
+ *
+ * Must not be used within another transaction, or nothing would be committed until that one is.
+ */
+public class SynthesisBranchWriter {
+
+	public static final String CHECKPOINT_RUN_PROPERTY = "synthesis_checkpoint_run";
+	public static final String CHECKPOINT_COUNT_PROPERTY = "synthesis_checkpoint_count";
+
+	private final GraphDatabaseAgent graphDb;
+	private final String treeName;
+	private final String runId;
+	private final int batchSize;
+	private final boolean test;
+	private final String [] sourceNames; // by source id, or null if the graph doesn't keep source ids
+
+	private Transaction tx = null;
+	private long nVisited = 0;
+	private long nSkipped = 0;
+	private long nStored = 0;
+	private int nInBatch = 0;
+	private long start;
+	private long lastReport;
+	private long storedAtLastReport = 0;
+
+	/**
+	 * @param treeName the name property of the stored relationships
+	 * @param runId identifies the synthesis run (e.g. the tree name, start node and sources), so that a checkpoint
+	 * 		is only resumed by the same synthesis
+	 * @param batchSize the most relationships stored in a transaction
+	 * @param test just count the relationships, don't store them or any checkpoint
+	 */
+	public SynthesisBranchWriter(GraphDatabaseAgent graphDb, String treeName, String runId, int batchSize, boolean test) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("the batch size must be at least 1");
+		}
+		this.graphDb = graphDb;
+		this.treeName = treeName;
+		this.runId = runId;
+		this.batchSize = batchSize;
+		this.test = test;
+		this.sourceNames = SourceIdUtil.getSourceNames(graphDb);
+		start = System.currentTimeMillis();
+		lastReport = start;
+	}
+
+	/**
+	 * @return the run id of the checkpoint in the graph, or null if there isn't one
+	 */
+	public static String getCheckpointRun(GraphDatabaseAgent graphDb) {
+		return (String) graphDb.getGraphProperty(CHECKPOINT_RUN_PROPERTY);
+	}
+
+	/**
+	 * Check that no unfinished synthesis run is left in the graph. A run started without resume() would otherwise
+	 * store its tree on top of the part that was stored by the unfinished one.
+	 * @throws IllegalStateException if there is a checkpoint
+	 */
+	public void begin() {
+		String stored = getCheckpointRun(graphDb);
+		if (stored != null) {
+			throw new IllegalStateException("the graph holds an unfinished synthesis run (" + stored + "), resume it first");
+		}
+	}
+
+	/**
+	 * Skip the relationships stored by the previous, unfinished attempt at this run. Starts from scratch if there is no
+	 * checkpoint.
+	 * @return the number of relationships that will be skipped
+	 * @throws IllegalStateException if the checkpoint is for a different run
+	 */
+	public long resume() {
+		String stored = getCheckpointRun(graphDb);
+		if (stored == null) {
+			return 0;
+		}
+		if (stored.equals(runId) == false) {
+			throw new IllegalStateException("the checkpoint is for the synthesis run (" + stored + "), not (" + runId + ")");
+		}
+		nSkipped = (Long) graphDb.getGraphProperty(CHECKPOINT_COUNT_PROPERTY);
+		System.out.println("resuming after the " + nSkipped + " relationships stored before the checkpoint");
+		return nSkipped;
+	}
+
+	/**
+	 * Store the relationship chosen by the synthesis, or skip it if it was stored before the checkpoint.
+	 * @return true if it was stored (or would have been, in test mode)
+	 */
+	public boolean write(Relationship chosen) {
+		nVisited += 1;
+		if (nVisited <= nSkipped) {
+			return false;
+		}
+		if (test == false) {
+			if (tx == null) {
+				tx = graphDb.beginTx();
+			}
+			storeBranch(chosen, treeName, sourceNames);
+		}
+		nStored += 1;
+		if (++nInBatch == batchSize) {
+			commit(false);
+		}
+		return true;
+	}
+
+	/**
+	 * Commit the last batch and remove the checkpoint.
+	 */
+	public void finish() {
+		commit(true);
+		float sec = (System.currentTimeMillis() - start) / 1000F;
+		System.out.println("stored " + nStored + " relationships (skipped " + Math.min(nSkipped, nVisited) + ") in " + sec + " seconds, "
+				+ (sec > 0 ? nStored / sec : 0) + " rels/sec");
+	}
+
+	/**
+	 * Drop the current batch. The checkpoint of the last commit stays in the graph, so the run can be resumed.
+	 */
+	public void abort() {
+		if (tx != null) {
+			tx.failure();
+			tx.finish();
+			tx = null;
+		}
+		nInBatch = 0;
+	}
+
+	private void commit(boolean last) {
+		if (test == false) {
+			if (tx == null) {
+				tx = graphDb.beginTx();
+			}
+			try {
+				Node graphPropertyNode = graphDb.getNodeById(0L);
+				if (last) {
+					graphPropertyNode.removeProperty(CHECKPOINT_RUN_PROPERTY);
+					graphPropertyNode.removeProperty(CHECKPOINT_COUNT_PROPERTY);
+				} else {
+					graphPropertyNode.setProperty(CHECKPOINT_RUN_PROPERTY, runId);
+					graphPropertyNode.setProperty(CHECKPOINT_COUNT_PROPERTY, nSkipped + nStored);
+				}
+				tx.success();
+			} finally {
+				tx.finish();
+				tx = null;
+			}
+		}
+		nInBatch = 0;
+		long now = System.currentTimeMillis();
+		if (last == false && now - lastReport >= 10000) {
+			System.out.println("stored " + nStored + " relationships, " + (storedAtLastReport == nStored ? 0 : (nStored - storedAtLastReport) * 1000F / (now - lastReport)) + " rels/sec");
+			lastReport = now;
+			storedAtLastReport = nStored;
+		}
+	}
+
+	/**
+	 * Store the STREECHILDOF relationship `chosen` as a relationship of the synthetic tree `treeName`, carrying the sources
+	 * that support it (those of the STREECHILDOF relationships of its child node). Must be called within a transaction.
+	 * @param sourceNames the source names by source id (SourceIdUtil.getSourceNames), to use the source ids stored on
+	 * 		the child node, or null to collect the sources from its relationships
+	 * @return the new relationship
+	 */
+	public static Relationship storeBranch(Relationship chosen, String treeName, String [] sourceNames) {
+		Node parentNode = chosen.getEndNode();
+		Node curNode = chosen.getStartNode();
+		Relationship newRel = SynthTreeUtil.createRelationship(curNode, parentNode, treeName);
+		newRel.setProperty("supporting_sources", SourceIdUtil.getSourceNames(curNode, sourceNames));
+		return newRel;
+	}
+}
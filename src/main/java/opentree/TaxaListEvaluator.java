@@ -25,7 +25,7 @@ public class TaxaListEvaluator implements Evaluator{
 	public Evaluation evaluate(Path arg0) {
 		boolean match = false;
 		Node tnode = arg0.endNode();
-		long [] mrcas = (long []) tnode.getProperty("mrca");
+		long [] mrcas = TaxonSetUtil.getMrca(tnode);
 		HashSet<Long> tm = new HashSet<Long>();
 		for(int i =0;i<mrcas.length;i++){tm.add(mrcas[i]);}
 		int tl1 = tm.size();
@@ -35,7 +35,7 @@ public class TaxaListEvaluator implements Evaluator{
 		}
 		if(match != true){
 			tm = new HashSet<Long>();
-			long [] nmrcas = (long []) tnode.getProperty("nested_mrca");
+			long [] nmrcas = TaxonSetUtil.getNestedMrca(tnode);
 			for(int i =0;i<nmrcas.length;i++){tm.add(nmrcas[i]);}
 			tl1 = tm.size();
 			tm.removeAll(taxalist);
@@ -0,0 +1,37 @@
+package opentree;
+
+/**
+ * Encodes the sorted node id sets that are stored in the `mrca`, `outmrca` and `nested_mrca`
+ * node properties. Implementations must accept sorted (possibly repeated) ids and return a
+ * value that Neo4j can store as a property, and must decode that value back into the sorted
+ * id array.
+ *
+ * Use TaxonSetUtil to read and write the properties; it picks the codec that was used to
+ * write a stored value so that graphs with mixed encodings can still be read.
+ */
+public interface TaxonSetCodec {
+
+	/**
+	 * @return the name used to record this codec in the graph properties
+	 */
+	public String getName();
+
+	/**
+	 * @param sortedIds sorted node ids
+	 * @return a property value holding the ids
+	 */
+	public Object encode(long [] sortedIds);
+
+	/**
+	 * @param stored a property value written by `encode`
+	 * @return the sorted node ids
+	 */
+	public long [] decode(Object stored);
+
+	/**
+	 * @param stored a property value
+	 * @return true if this codec wrote the value
+	 */
+	public boolean canDecode(Object stored);
+
+}
@@ -0,0 +1,74 @@
+package opentree;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.Arrays;
+
+import org.neo4j.graphdb.Node;
+
+/**
+ * The mrca and outmrca of graph nodes as a mapping would leave them, without writing them. The LICA evaluators read
+ * through it and widen into it instead of the graph when it is set, so the graph is only read (see TreeMapper), or is
+ * written once with write() when the tree is done (see GraphImporter).
+ * Not thread safe: each mapping has its own.
+ */
+public class TaxonSetOverlay {
+
+	private final TLongObjectHashMap<long []> mrcas = new TLongObjectHashMap<long []>();
+	private final TLongObjectHashMap<long []> outMrcas = new TLongObjectHashMap<long []>();
+
+	public long [] getMrca(Node nd) {
+		long [] ids = mrcas.get(nd.getId());
+		return ids != null ? ids : TaxonSetUtil.getMrca(nd);
+	}
+
+	public void setMrca(Node nd, long [] sortedIds) {
+		mrcas.put(nd.getId(), sortedIds);
+	}
+
+	public long [] getOutMrca(Node nd) {
+		long [] ids = outMrcas.get(nd.getId());
+		return ids != null ? ids : TaxonSetUtil.getOutMrca(nd);
+	}
+
+	public void setOutMrca(Node nd, long [] sortedIds) {
+		outMrcas.put(nd.getId(), sortedIds);
+	}
+
+	/**
+	 * Write the widened sets to the graph, in the order of the node ids.
+	 * @return the number of nodes written
+	 */
+	public int write(GraphDatabaseAgent graphDb) {
+		TLongHashSet ids = new TLongHashSet(mrcas.keys());
+		ids.addAll(outMrcas.keys());
+		long [] sortedIds = ids.toArray();
+		Arrays.sort(sortedIds);
+		for (long id : sortedIds) {
+			Node nd = graphDb.getNodeById(id);
+			long [] mrca = mrcas.get(id);
+			if (mrca != null) {
+				TaxonSetUtil.setMrca(nd, mrca, graphDb.getTaxonSetCodec());
+			}
+			long [] outMrca = outMrcas.get(id);
+			if (outMrca != null) {
+				TaxonSetUtil.setOutMrca(nd, outMrca, graphDb.getTaxonSetCodec());
+			}
+		}
+		return sortedIds.length;
+	}
+
+	/**
+	 * @return the number of nodes whose mrca or outmrca would have been widened
+	 */
+	public int getWidenedCount() {
+		int n = mrcas.size();
+		for (long id : outMrcas.keys()) {
+			if (mrcas.containsKey(id) == false) {
+				n++;
+			}
+		}
+		return n;
+	}
+}
@@ -0,0 +1,174 @@
+package opentree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+
+/**
+ * Read and write helpers for the taxon set node properties
+ * 		mrca - all the subtending children ids
+ * 		outmrca - the ids that are known to be outside the node (not set on taxonomy nodes)
+ * 		nested_mrca - all the subtending children ids that would be nested (higher taxa)
+ *
+ * Reads are transparent: the codec that wrote a value is found from the stored type, so a graph
+ * that is halfway through a migration can still be read. Writes use the codec they are given,
+ * which is that of the graph (GraphDatabaseAgent.getTaxonSetCodec, recorded in the
+ * `taxon_set_codec` graph property and defaulting to the original long[] storage).
+ *
+ * All the sets handed out and taken in are sorted long[].
+ */
+public class TaxonSetUtil {
+
+	public static final String MRCA = "mrca";
+	public static final String OUTMRCA = "outmrca";
+	public static final String NESTED_MRCA = "nested_mrca";
+	public static final String [] TAXON_SET_PROPERTIES = {MRCA, OUTMRCA, NESTED_MRCA};
+
+	// graph property recording the codec used for writing
+	public static final String CODEC_PROPERTY = "taxon_set_codec";
+
+	private static final TaxonSetCodec [] CODECS = {new LongArrayTaxonSetCodec(), new BitmapTaxonSetCodec()};
+
+	/**
+	 * @param name the name of a codec
+	 * @return the codec registered under `name`
+	 */
+	public static TaxonSetCodec getCodec(String name) {
+		for (TaxonSetCodec codec : CODECS) {
+			if (codec.getName().equals(name)) {
+				return codec;
+			}
+		}
+		throw new java.lang.IllegalArgumentException("unrecognized taxon set codec " + name);
+	}
+
+	/**
+	 * @return the codec of graphs that have no codec recorded
+	 */
+	public static TaxonSetCodec getDefaultCodec() {
+		return CODECS[0];
+	}
+
+	/**
+	 * @param stored a taxon set property value written by any of the registered codecs
+	 * @return the sorted ids
+	 */
+	public static long [] decode(Object stored) {
+		for (TaxonSetCodec codec : CODECS) {
+			if (codec.canDecode(stored)) {
+				return codec.decode(stored);
+			}
+		}
+		throw new java.lang.IllegalArgumentException("unrecognized taxon set value " + stored);
+	}
+
+	/**
+	 * @return the sorted ids stored under `key`
+	 */
+	public static long [] getTaxonSet(PropertyContainer pc, String key) {
+		return decode(pc.getProperty(key));
+	}
+
+	/**
+	 * Store the sorted ids under `key` with `codec`, which should be the codec of the graph.
+	 */
+	public static void setTaxonSet(PropertyContainer pc, String key, long [] sortedIds, TaxonSetCodec codec) {
+		pc.setProperty(key, codec.encode(sortedIds));
+	}
+
+	public static long [] getMrca(Node nd) {
+		return getTaxonSet(nd, MRCA);
+	}
+
+	public static void setMrca(Node nd, long [] sortedIds, TaxonSetCodec codec) {
+		setTaxonSet(nd, MRCA, sortedIds, codec);
+	}
+
+	/**
+	 * NOTE: taxonomy nodes do not have an outmrca, they are assumed to be "the rest"
+	 */
+	public static boolean hasOutMrca(Node nd) {
+		return nd.hasProperty(OUTMRCA);
+	}
+
+	public static long [] getOutMrca(Node nd) {
+		return getTaxonSet(nd, OUTMRCA);
+	}
+
+	public static void setOutMrca(Node nd, long [] sortedIds, TaxonSetCodec codec) {
+		setTaxonSet(nd, OUTMRCA, sortedIds, codec);
+	}
+
+	public static long [] getNestedMrca(Node nd) {
+		return getTaxonSet(nd, NESTED_MRCA);
+	}
+
+	public static void setNestedMrca(Node nd, long [] sortedIds, TaxonSetCodec codec) {
+		setTaxonSet(nd, NESTED_MRCA, sortedIds, codec);
+	}
+
+	/**
+	 * Rewrite any taxon set properties of `nd` that were not written by `codec`.
+	 * @return the number of properties rewritten
+	 */
+	public static int reencode(Node nd, TaxonSetCodec codec) {
+		int count = 0;
+		for (String key : TAXON_SET_PROPERTIES) {
+			if (nd.hasProperty(key)) {
+				Object stored = nd.getProperty(key);
+				if (codec.canDecode(stored) == false) {
+					nd.setProperty(key, codec.encode(decode(stored)));
+					count += 1;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return an estimate of the bytes used in the store by a taxon set property value
+	 */
+	public static long storedBytes(Object stored) {
+		if (stored instanceof long []) {
+			return 8L * ((long []) stored).length;
+		} else if (stored instanceof byte []) {
+			return ((byte []) stored).length;
+		}
+		throw new java.lang.IllegalArgumentException("unrecognized taxon set value " + stored);
+	}
+
+	/**
+	 * Merge sorted sets pairwise, so the cost is the total size times the log of the number of sets.
+	 * @param unique should be true to keep each id once, false to keep it as many times as it is in the sets
+	 * @return the sorted ids of all the sets
+	 */
+	public static long [] merge(List<long []> sortedSets, boolean unique) {
+		if (sortedSets.isEmpty()) {
+			return new long[0];
+		}
+		List<long []> round = sortedSets;
+		do {
+			ArrayList<long []> next = new ArrayList<long []>((round.size() + 1) / 2);
+			for (int i = 0; i < round.size(); i += 2) {
+				next.add(merge(round.get(i), i + 1 < round.size() ? round.get(i + 1) : new long[0], unique));
+			}
+			round = next;
+		} while (round.size() > 1);
+		return round.get(0);
+	}
+
+	private static long [] merge(long [] a, long [] b, boolean unique) {
+		long [] ret = new long[a.length + b.length];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length || j < b.length) {
+			long next = (j == b.length || (i < a.length && a[i] <= b[j])) ? a[i++] : b[j++];
+			if (unique == false || n == 0 || ret[n - 1] != next) {
+				ret[n++] = next;
+			}
+		}
+		return n == ret.length ? ret : Arrays.copyOf(ret, n);
+	}
+}
@@ -0,0 +1,324 @@
+package opentree;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndex;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+import org.neo4j.unsafe.batchinsert.LuceneBatchInserterIndexProvider;
+
+/**
+ * Loads a taxonomy into a new graph with the batch inserter, making the same nodes, relationships, index entries and
+ * properties as GraphInitializer.addInitialTaxonomyTableIntoGraph (the inittax --bulk command). The taxonomy
+ * intervals (see TaxonomyIntervalIndex) follow the order of the file rather than the order of the relationships.
+ *
+ * The taxonomy file is read once. Taxon i (in file order) becomes node i + 1, so the tree is kept as an int array of
+ * parent positions instead of a map of nodes, and the mrca of every node below "life" is written from one pass over
+ * the nodes in postorder: the leaves of a subtree are a contiguous run of the leaves in preorder. Synonym nodes and the
+ * taxonomy metadata node come after the taxa.
+ *
+ * Nothing is written in transactions, so the graph is unusable if the load fails. It has to be made from scratch.
+ */
+public class TaxonomyBulkLoader {
+
+	private static final int REPORT_INTERVAL = 100000;
+	private static final long FIRST_TAXON_NODE = 1; // node 0 is the reference node
+
+	private final String graphname;
+	private final TaxonSetCodec codec = TaxonSetUtil.getDefaultCodec(); // a new graph has no codec recorded
+
+	// by taxon position
+	private final ArrayList<String> uids = new ArrayList<String>();
+	private final ArrayList<String> parentUids = new ArrayList<String>();
+	private final TObjectIntHashMap<String> positionsByUid = new TObjectIntHashMap<String>(16, 0.5f, -1);
+	private int [] parents;
+	private int rootPosition = -1;
+
+	private BatchInserter inserter;
+	private BatchInserterIndex graphNodeIndex;
+	private BatchInserterIndex graphTaxUIDNodeIndex;
+	private BatchInserterIndex synTaxUIDNodeIndex;
+	private BatchInserterIndex synNodeIndex;
+	private BatchInserterIndex sourceRelIndex;
+	private BatchInserterIndex sourceMetaIndex;
+
+	/**
+	 * @param graphname the folder of the new graph, which must not hold a graph already
+	 */
+	public TaxonomyBulkLoader(String graphname) {
+		this.graphname = graphname;
+	}
+
+	/**
+	 * @return true if there is no graph in `graphname` yet
+	 */
+	public static boolean isNewGraph(String graphname) {
+		return new File(graphname, "neostore").exists() == false;
+	}
+
+	/**
+	 * Load the taxonomy, formatted as for addInitialTaxonomyTableIntoGraph.
+	 * @param synonymfile the synonym file, or "" for none
+	 * @return the number of taxa
+	 */
+	public int load(String filename, String synonymfile) throws IOException {
+		if (isNewGraph(graphname) == false) {
+			throw new IllegalStateException("there is a graph in " + graphname + " already, the bulk load needs a new one");
+		}
+		long start = System.currentTimeMillis();
+		inserter = BatchInserters.inserter(graphname);
+		BatchInserterIndexProvider indexProvider = new LuceneBatchInserterIndexProvider(inserter);
+		try {
+			Map<String, String> indexPars = MapUtil.stringMap("type", "exact", "to_lower_case", "true");
+			graphNodeIndex = indexProvider.nodeIndex("graphNamedNodes", indexPars);
+			graphTaxUIDNodeIndex = indexProvider.nodeIndex("graphTaxUIDNodes", indexPars);
+			synTaxUIDNodeIndex = indexProvider.nodeIndex("synTaxUIDNodes", indexPars);
+			synNodeIndex = indexProvider.nodeIndex("graphNamedNodesSyns", indexPars);
+			sourceRelIndex = indexProvider.relationshipIndex("sourceRels", indexPars);
+			sourceMetaIndex = indexProvider.nodeIndex("sourceMetaNodes", indexPars);
+			// the other indices used by the graph, so they have the same configuration as when made by GraphInitializer
+			indexProvider.nodeIndex("sourceRootNodes", indexPars);
+
+			addTaxa(filename);
+			resolveParents();
+			if (synonymfile.length() > 0) {
+				addSynonyms(synonymfile);
+			}
+			addMetadataNodes();
+			addTaxChildOfRels();
+			if (rootPosition == -1) {
+				throw new IllegalStateException("there is no taxon named life");
+			}
+			addMrcaAndStreeRels();
+		} finally {
+			indexProvider.shutdown();
+			inserter.shutdown();
+		}
+		System.out.println("loaded " + uids.size() + " taxa in " + (System.currentTimeMillis() - start) / 1000F + " seconds");
+		return uids.size();
+	}
+
+	private static long nodeId(int position) {
+		return FIRST_TAXON_NODE + position;
+	}
+
+	/**
+	 * Make a node for each row of the taxonomy file.
+	 */
+	private void addTaxa(String filename) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(filename));
+		try {
+			String str;
+			while ((str = br.readLine()) != null) {
+				StringTokenizer st = new StringTokenizer(str, "|");
+				String tid = st.nextToken().trim();
+				String pid = st.nextToken().trim();
+				String name = st.nextToken().trim();
+				String rank = st.nextToken().trim();
+				String srce = st.nextToken().trim();
+				String uniqname = st.nextToken().trim();
+
+				int position = uids.size();
+				Map<String, Object> properties = new HashMap<String, Object>();
+				properties.put("name", name);
+				properties.put("tax_uid", tid);
+				properties.put("tax_parent_uid", pid);
+				properties.put("tax_rank", rank);
+				properties.put("tax_source", srce);
+				properties.put("uniqname", uniqname);
+				inserter.createNode(nodeId(position), properties);
+				graphNodeIndex.add(nodeId(position), MapUtil.map("name", name));
+				graphTaxUIDNodeIndex.add(nodeId(position), MapUtil.map("tax_uid", tid));
+
+				uids.add(tid);
+				parentUids.add(pid);
+				positionsByUid.put(tid, position);
+				if (rootPosition == -1 && "life".equalsIgnoreCase(name)) {
+					rootPosition = position;
+				}
+				if (uids.size() % REPORT_INTERVAL == 0) {
+					System.out.println(uids.size());
+				}
+			}
+		} finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * Fill in `parents`, with -1 for the taxa without a parent in the file.
+	 */
+	private void resolveParents() {
+		parents = new int[uids.size()];
+		for (int i = 0; i < parents.length; i++) {
+			parents[i] = parentUids.get(i).length() > 0 ? positionsByUid.get(parentUids.get(i)) : -1;
+		}
+	}
+
+	/**
+	 * Make a synonym node for each row of the synonym file that names a taxon. The synonym indices point to the taxon
+	 * node, as they do when the taxonomy is loaded by GraphInitializer.
+	 */
+	private void addSynonyms(String synonymfile) throws IOException {
+		BufferedReader sbr = new BufferedReader(new FileReader(synonymfile));
+		int nSynonyms = 0;
+		try {
+			String str;
+			while ((str = sbr.readLine()) != null) {
+				StringTokenizer st = new StringTokenizer(str, "\t|\t");
+				String synName = st.nextToken();
+				String tid = st.nextToken();
+				int position = positionsByUid.get(tid);
+				if (position == -1) {
+					continue;
+				}
+				Map<String, Object> properties = new HashMap<String, Object>();
+				properties.put("name", synName);
+				properties.put("tax_uid", tid);
+				properties.put("nametype", "OTT synonym");
+				properties.put("source", "OTT");
+				long synode = inserter.createNode(properties);
+				inserter.createRelationship(synode, nodeId(position), RelTypes.SYNONYMOF, null);
+				if (tid.length() > 0) {
+					synTaxUIDNodeIndex.add(nodeId(position), MapUtil.map("tax_uid", tid));
+				}
+				synNodeIndex.add(nodeId(position), MapUtil.map("name", synName));
+				nSynonyms += 1;
+			}
+		} finally {
+			sbr.close();
+		}
+		System.out.println("synonyms: " + nSynonyms);
+	}
+
+	/**
+	 * Make the taxonomy metadata node for each taxon without a parent.
+	 */
+	private void addMetadataNodes() {
+		for (int i = 0; i < parents.length; i++) {
+			if (parentUids.get(i).length() == 0) {
+				long mdnode = inserter.createNode(MapUtil.map("source", "taxonomy"));
+				inserter.createRelationship(mdnode, nodeId(i), RelTypes.METADATAFOR, null);
+				sourceMetaIndex.add(mdnode, MapUtil.map("source", "taxonomy"));
+				System.err.println("Node " + mdnode + " holds METADATAFOR Node" + nodeId(i));
+			}
+		}
+	}
+
+	/**
+	 * @return true if the taxon at `position` is a tip below life (life itself has an empty mrca if it has no children)
+	 */
+	private boolean isLeaf(int position, int [] childStart) {
+		return position != rootPosition && childStart[position] == childStart[position + 1];
+	}
+
+	private void addTaxChildOfRels() {
+		for (int i = 0; i < parents.length; i++) {
+			if (parents[i] != -1) {
+				inserter.createRelationship(nodeId(i), nodeId(parents[i]), RelTypes.TAXCHILDOF,
+						MapUtil.map("childid", uids.get(i), "parentid", uids.get(parents[i]), "source", "ottol"));
+			}
+		}
+	}
+
+	/**
+	 * Make the MRCACHILDOF and STREECHILDOF rels of the taxa below life (in preorder, as GraphInitializer does), and
+	 * write their mrca, nested_mrca and source ids.
+	 */
+	private void addMrcaAndStreeRels() {
+		int n = parents.length;
+
+		// the children of each taxon, in file order
+		int [] childStart = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			if (parents[i] != -1) {
+				childStart[parents[i] + 1] += 1;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			childStart[i + 1] += childStart[i];
+		}
+		int [] children = new int[childStart[n]];
+		int [] nextChild = Arrays.copyOf(childStart, n);
+		for (int i = 0; i < n; i++) {
+			if (parents[i] != -1) {
+				children[nextChild[parents[i]]++] = i;
+			}
+		}
+
+		// the taxa below life in preorder
+		int [] preorder = new int[n];
+		int nInTree = 0;
+		int [] stack = new int[n];
+		int stackSize = 0;
+		stack[stackSize++] = rootPosition;
+		while (stackSize > 0) {
+			int cur = stack[--stackSize];
+			preorder[nInTree++] = cur;
+			for (int c = childStart[cur + 1] - 1; c >= childStart[cur]; c--) {
+				stack[stackSize++] = children[c];
+			}
+		}
+		stack = null;
+
+		// the rels, and the leaves in preorder
+		String [] sourceNames = {"taxonomy"};
+		// the reference node has no properties yet, and setNodeProperty does nothing on such nodes
+		inserter.setNodeProperties(0, MapUtil.map(SourceIdUtil.SOURCE_NAMES, (Object) sourceNames));
+		int [] taxonomySourceIds = {0};
+		long [] leaves = new long[nInTree];
+		int nLeaves = 0;
+		int [] leavesBefore = new int[n];
+		for (int p = 0; p < nInTree; p++) {
+			int cur = preorder[p];
+			leavesBefore[cur] = nLeaves;
+			if (isLeaf(cur, childStart)) {
+				leaves[nLeaves++] = nodeId(cur);
+			}
+			if (cur != rootPosition) {
+				inserter.createRelationship(nodeId(cur), nodeId(parents[cur]), RelTypes.MRCACHILDOF, null);
+				long streeRel = inserter.createRelationship(nodeId(cur), nodeId(parents[cur]), RelTypes.STREECHILDOF,
+						MapUtil.map("source", "taxonomy"));
+				sourceRelIndex.add(streeRel, MapUtil.map("source", "taxonomy"));
+			}
+			inserter.setNodeProperty(nodeId(cur), SourceIdUtil.SOURCE_IDS, taxonomySourceIds);
+		}
+
+		// the number of leaves and taxa below each taxon, children before parents
+		System.out.println("calculating mrcas");
+		int [] leafCount = new int[n];
+		int [] subtreeSize = new int[n];
+		for (int p = nInTree - 1; p >= 0; p--) {
+			int cur = preorder[p];
+			if (isLeaf(cur, childStart)) {
+				leafCount[cur] = 1;
+			}
+			subtreeSize[cur] += 1;
+			if (cur != rootPosition) {
+				leafCount[parents[cur]] += leafCount[cur];
+				subtreeSize[parents[cur]] += subtreeSize[cur];
+			}
+			inserter.setNodeProperty(nodeId(cur), TaxonomyIntervalIndex.LEFT, p);
+			inserter.setNodeProperty(nodeId(cur), TaxonomyIntervalIndex.RIGHT, p + subtreeSize[cur] - 1);
+			long [] mrca = Arrays.copyOfRange(leaves, leavesBefore[cur], leavesBefore[cur] + leafCount[cur]);
+			Arrays.sort(mrca);
+			inserter.setNodeProperty(nodeId(cur), TaxonSetUtil.MRCA, codec.encode(mrca));
+			inserter.setNodeProperty(nodeId(cur), TaxonSetUtil.NESTED_MRCA, codec.encode(new long[0]));
+			if ((nInTree - p) % REPORT_INTERVAL == 0) {
+				System.out.println("mrcas: " + (nInTree - p));
+			}
+		}
+	}
+}
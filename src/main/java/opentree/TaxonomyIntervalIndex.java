@@ -0,0 +1,128 @@
+package opentree;
+
+import gnu.trove.list.array.TLongArrayList;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Nested set labels for the taxonomy: each taxon below the root gets the preorder position of itself (tax_left) and
+ * of the last taxon below it (tax_right) in a walk over TAXCHILDOF, so a taxon is an ancestor of another exactly when
+ * its interval contains the other's. The labels are stored on the nodes when the taxonomy is loaded, or by
+ * label() for older graphs.
+ *
+ * An instance holds the taxonomy in preorder to find the LICA of any set of taxa in constant time (see
+ * PreorderLicaTable).
+ */
+public class TaxonomyIntervalIndex {
+
+	/** node property: the preorder position of the taxon */
+	public static final String LEFT = "tax_left";
+	/** node property: the preorder position of the last taxon below it */
+	public static final String RIGHT = "tax_right";
+
+	private static final int COMMIT_INTERVAL = 100000;
+
+	private final PreorderLicaTable table;
+
+	/**
+	 * Index the taxonomy below `root`, in the same preorder as label().
+	 */
+	public TaxonomyIntervalIndex(Node root) {
+		table = PreorderLicaTable.build(root, new PreorderLicaTable.ChildRelationships() {
+			public Iterable<Relationship> get(Node nd) {
+				return nd.getRelationships(Direction.INCOMING, RelTypes.TAXCHILDOF);
+			}
+		});
+	}
+
+	/**
+	 * Store the preorder interval of each taxon below `root` (inclusive) as its LEFT and RIGHT properties.
+	 * @return the number of taxa labelled
+	 */
+	public static int label(GraphDatabaseAgent graphDb, Node root) {
+		TaxonomyIntervalIndex index = new TaxonomyIntervalIndex(root);
+		Transaction tx = graphDb.beginTx();
+		try {
+			for (int i = 0; i < index.table.size(); i++) {
+				Node nd = graphDb.getNodeById(index.table.getNodeId(i));
+				nd.setProperty(LEFT, i);
+				nd.setProperty(RIGHT, index.table.getRight(i));
+				if ((i + 1) % COMMIT_INTERVAL == 0) {
+					tx.success();
+					tx.finish();
+					tx = graphDb.beginTx();
+				}
+			}
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		return index.table.size();
+	}
+
+	/**
+	 * @return true if `nd` has the LEFT and RIGHT properties
+	 */
+	public static boolean isLabelled(Node nd) {
+		return nd.hasProperty(LEFT) && nd.hasProperty(RIGHT);
+	}
+
+	/**
+	 * From the stored labels, without an index.
+	 * @return true if `ancestor` is `descendant` or one of its taxonomic ancestors
+	 */
+	public static boolean isAncestor(Node ancestor, Node descendant) {
+		if (isLabelled(ancestor) == false || isLabelled(descendant) == false) {
+			throw new java.lang.IllegalArgumentException("the taxonomy intervals have not been stored for " + ancestor + " and " + descendant);
+		}
+		int left = (Integer) descendant.getProperty(LEFT);
+		return (Integer) ancestor.getProperty(LEFT) <= left && left <= (Integer) ancestor.getProperty(RIGHT);
+	}
+
+	/**
+	 * @return the number of taxa in the index
+	 */
+	public int size() {
+		return table.size();
+	}
+
+	/**
+	 * @return true if the taxon is in the index
+	 */
+	public boolean contains(long nodeId) {
+		return table.getPosition(nodeId) != -1;
+	}
+
+	/**
+	 * @return true if `ancestorId` is `descendantId` or one of its taxonomic ancestors, false if either isn't indexed
+	 */
+	public boolean isAncestor(long ancestorId, long descendantId) {
+		return table.isAncestor(ancestorId, descendantId);
+	}
+
+	/**
+	 * @return the taxonomic parent of the taxon, or -1 if it is the root of the index or isn't indexed
+	 */
+	public long getParent(long nodeId) {
+		return table.getParent(nodeId);
+	}
+
+	/**
+	 * @return the id of the lowest taxon that is or is an ancestor of all the taxa, or -1 if there are none or any of
+	 * 		them isn't indexed
+	 */
+	public long getLICA(TLongArrayList nodeIds) {
+		return table.getLICA(nodeIds.toArray());
+	}
+
+	/**
+	 * @return the id of the lowest taxon that is or is an ancestor of all the taxa, or -1 if there are none or any of
+	 * 		them isn't indexed
+	 */
+	public long getLICA(long [] ids) {
+		return table.getLICA(ids);
+	}
+}
@@ -0,0 +1,350 @@
+package opentree;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.helpers.Predicate;
+import org.neo4j.helpers.collection.FilteringIterable;
+
+/**
+ * A read-only copy of the MRCACHILDOF, TAXCHILDOF, STREECHILDOF and SYNTHCHILDOF relationships of a graph, kept as
+ * compressed sparse rows in a memory-mapped file, so that traversals can run on primitive arrays instead of Node and
+ * Relationship objects, and the snapshot can be reopened without reading it in.
+ *
+ * For each type and direction there is an Adjacency: the relationships of node i (by node id) are the positions from
+ * start(i) to end(i), each with the neighbouring node id, a label and the relationship id. The label of a
+ * STREECHILDOF relationship is the id of its source and that of a SYNTHCHILDOF relationship the id of its tree name,
+ * both in the name table of the snapshot, which begins with the source ids of the graph (SourceIdUtil) if it keeps
+ * them. The other types have the label NO_LABEL. The relationships of all the synthetic trees, whether stored with a
+ * type of their own or as SYNTHCHILDOF (see SynthTreeUtil), are in the SYNTHCHILDOF adjacencies.
+ *
+ * The snapshot is not updated with the graph: write a new one after the graph changes.
+ */
+public class TopologySnapshot {
+
+	public static final RelTypes [] TYPES = {RelTypes.MRCACHILDOF, RelTypes.TAXCHILDOF, RelTypes.STREECHILDOF, RelTypes.SYNTHCHILDOF};
+	public static final Direction [] DIRECTIONS = {Direction.OUTGOING, Direction.INCOMING};
+	public static final int NO_LABEL = -1;
+
+	private static final int MAGIC = 0x4f545453; // OTTS
+	private static final int VERSION = 1;
+
+	private final int nodeCount;
+	private final String [] names;
+	private final HashMap<String, Integer> namesById = new HashMap<String, Integer>();
+	private final Adjacency [] adjacencies = new Adjacency[TYPES.length * DIRECTIONS.length];
+
+	/**
+	 * The relationships of one type in one direction.
+	 */
+	public static final class Adjacency {
+		private final IntBuffer offsets;
+		private final IntBuffer neighbours;
+		private final IntBuffer labels;
+		private final LongBuffer relIds;
+
+		private Adjacency(IntBuffer offsets, IntBuffer neighbours, IntBuffer labels, LongBuffer relIds) {
+			this.offsets = offsets;
+			this.neighbours = neighbours;
+			this.labels = labels;
+			this.relIds = relIds;
+		}
+
+		/** @return the position of the first relationship of the node */
+		public int start(int nodeId) {
+			return offsets.get(nodeId);
+		}
+
+		/** @return the position after the last relationship of the node */
+		public int end(int nodeId) {
+			return offsets.get(nodeId + 1);
+		}
+
+		public int degree(int nodeId) {
+			return end(nodeId) - start(nodeId);
+		}
+
+		/** @return the id of the node at the other end of the relationship */
+		public int neighbour(int position) {
+			return neighbours.get(position);
+		}
+
+		public int label(int position) {
+			return labels.get(position);
+		}
+
+		public long relId(int position) {
+			return relIds.get(position);
+		}
+
+		/** @return the number of relationships */
+		public int size() {
+			return neighbours.limit();
+		}
+	}
+
+	private TopologySnapshot(int nodeCount, String [] names) {
+		this.nodeCount = nodeCount;
+		this.names = names;
+		for (int i = 0; i < names.length; i++) {
+			namesById.put(names[i], i);
+		}
+	}
+
+	/**
+	 * Map a snapshot written by write().
+	 */
+	public static TopologySnapshot open(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		int nodeCount;
+		String [] names;
+		int [] edgeCounts = new int[TYPES.length * DIRECTIONS.length];
+		long dataStart;
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(file + " is not a topology snapshot of this version");
+			}
+			nodeCount = in.readInt();
+			for (int i = 0; i < edgeCounts.length; i++) {
+				edgeCounts[i] = in.readInt();
+			}
+			names = new String[in.readInt()];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = in.readUTF();
+			}
+			dataStart = in.readLong();
+		} finally {
+			in.close();
+		}
+
+		TopologySnapshot snapshot = new TopologySnapshot(nodeCount, names);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long position = dataStart;
+			for (int i = 0; i < edgeCounts.length; i++) {
+				IntBuffer offsets = map(channel, FileChannel.MapMode.READ_ONLY, position, 4L * (nodeCount + 1)).asIntBuffer();
+				position += 4L * (nodeCount + 1);
+				IntBuffer neighbours = map(channel, FileChannel.MapMode.READ_ONLY, position, 4L * edgeCounts[i]).asIntBuffer();
+				position += 4L * edgeCounts[i];
+				IntBuffer labels = map(channel, FileChannel.MapMode.READ_ONLY, position, 4L * edgeCounts[i]).asIntBuffer();
+				position += 4L * edgeCounts[i];
+				LongBuffer relIds = map(channel, FileChannel.MapMode.READ_ONLY, position, 8L * edgeCounts[i]).asLongBuffer();
+				position += 8L * edgeCounts[i];
+				snapshot.adjacencies[i] = new Adjacency(offsets, neighbours, labels, relIds);
+			}
+		} finally {
+			// the mappings stay valid after the file is closed
+			raf.close();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Write a snapshot of the graph to `file`, in two passes over the nodes and without holding the relationships.
+	 * @return the snapshot, mapped from the file
+	 */
+	public static TopologySnapshot write(GraphDatabaseAgent graphDb, File file) throws IOException {
+
+		// the names: the source ids of the graph keep their ids
+		ArrayList<String> names = new ArrayList<String>();
+		HashMap<String, Integer> idsByName = new HashMap<String, Integer>();
+		String [] sourceNames = SourceIdUtil.getSourceNames(graphDb);
+		if (sourceNames != null) {
+			for (String name : sourceNames) {
+				idsByName.put(name, names.size());
+				names.add(name);
+			}
+		}
+
+		// first pass: the size of everything, and the names
+		long maxNodeId = -1;
+		int [] edgeCounts = new int[TYPES.length * DIRECTIONS.length];
+		for (Node nd : graphDb.getAllNodes()) {
+			LicaUtil.checkNodeId(nd);
+			maxNodeId = Math.max(maxNodeId, nd.getId());
+			for (Relationship rel : nd.getRelationships(Direction.OUTGOING)) {
+				int t = typeIndex(rel);
+				if (t == -1) {
+					continue;
+				}
+				edgeCounts[t * DIRECTIONS.length] += 1;
+				edgeCounts[t * DIRECTIONS.length + 1] += 1;
+				String name = labelName(rel);
+				if (name != null && idsByName.containsKey(name) == false) {
+					idsByName.put(name, names.size());
+					names.add(name);
+				}
+			}
+		}
+		if (maxNodeId + 1 >= Integer.MAX_VALUE) {
+			throw new java.lang.ArrayIndexOutOfBoundsException("the node ids exceed the maximum integer value");
+		}
+		int nodeCount = (int) maxNodeId + 1;
+
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		long headerSize;
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(nodeCount);
+			for (int count : edgeCounts) {
+				out.writeInt(count);
+			}
+			out.writeInt(names.size());
+			for (String name : names) {
+				out.writeUTF(name);
+			}
+			headerSize = out.size() + 8;
+			out.writeLong(headerSize);
+		} finally {
+			out.close();
+		}
+
+		// second pass: the rows, in node id order
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			long position = headerSize;
+			for (int i = 0; i < edgeCounts.length; i++) {
+				RelTypes type = TYPES[i / DIRECTIONS.length];
+				Direction dir = DIRECTIONS[i % DIRECTIONS.length];
+				IntBuffer offsets = map(channel, FileChannel.MapMode.READ_WRITE, position, 4L * (nodeCount + 1)).asIntBuffer();
+				position += 4L * (nodeCount + 1);
+				IntBuffer neighbours = map(channel, FileChannel.MapMode.READ_WRITE, position, 4L * edgeCounts[i]).asIntBuffer();
+				position += 4L * edgeCounts[i];
+				IntBuffer labels = map(channel, FileChannel.MapMode.READ_WRITE, position, 4L * edgeCounts[i]).asIntBuffer();
+				position += 4L * edgeCounts[i];
+				LongBuffer relIds = map(channel, FileChannel.MapMode.READ_WRITE, position, 8L * edgeCounts[i]).asLongBuffer();
+				position += 8L * edgeCounts[i];
+
+				int cursor = 0;
+				for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+					offsets.put(nodeId, cursor);
+					Node nd;
+					try {
+						nd = graphDb.getNodeById((long) nodeId);
+					} catch (NotFoundException nfe) {
+						continue;
+					}
+					for (Relationship rel : getRelationships(nd, dir, type)) {
+						if (cursor == edgeCounts[i]) {
+							throw new IllegalStateException("the graph changed while the snapshot was written");
+						}
+						neighbours.put(cursor, (int) rel.getOtherNode(nd).getId());
+						String name = labelName(rel);
+						labels.put(cursor, name == null ? NO_LABEL : idsByName.get(name));
+						relIds.put(cursor, rel.getId());
+						cursor += 1;
+					}
+				}
+				offsets.put(nodeCount, cursor);
+				if (cursor != edgeCounts[i]) {
+					throw new IllegalStateException("the graph changed while the snapshot was written");
+				}
+			}
+			channel.force(true);
+		} finally {
+			raf.close();
+		}
+		return open(file);
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("a section of the snapshot is larger than 2GB");
+		}
+		return channel.map(mode, position, size);
+	}
+
+	/**
+	 * @return the index in TYPES of the relationship, or -1 if it isn't in the snapshot
+	 */
+	private static int typeIndex(Relationship rel) {
+		for (int t = 0; t < TYPES.length; t++) {
+			if (rel.isType(TYPES[t])) {
+				return t;
+			}
+		}
+		if (SynthTreeUtil.isSynthTreeRel(rel)) {
+			return typeIndex(RelTypes.SYNTHCHILDOF);
+		}
+		return -1;
+	}
+
+	private static int typeIndex(RelTypes type) {
+		for (int t = 0; t < TYPES.length; t++) {
+			if (TYPES[t] == type) {
+				return t;
+			}
+		}
+		throw new java.lang.IllegalArgumentException("no snapshot of the relationship type " + type.name());
+	}
+
+	/**
+	 * @return the relationships of `nd` in the adjacency of `type` and `dir`
+	 */
+	private static Iterable<Relationship> getRelationships(Node nd, Direction dir, RelTypes type) {
+		if (type != RelTypes.SYNTHCHILDOF) {
+			return nd.getRelationships(dir, type);
+		}
+		return new FilteringIterable<Relationship>(nd.getRelationships(dir), new Predicate<Relationship>() {
+			public boolean accept(Relationship rel) {
+				return SynthTreeUtil.isSynthTreeRel(rel);
+			}
+		});
+	}
+
+	/**
+	 * @return the source of a STREECHILDOF relationship or the tree name of a SYNTHCHILDOF relationship
+	 */
+	private static String labelName(Relationship rel) {
+		if (rel.isType(RelTypes.STREECHILDOF) && rel.hasProperty("source")) {
+			return String.valueOf(rel.getProperty("source"));
+		} else if (SynthTreeUtil.isSynthTreeRel(rel)) {
+			return SynthTreeUtil.getTreeName(rel);
+		}
+		return null;
+	}
+
+	/**
+	 * @return one more than the highest node id in the snapshot
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public Adjacency getAdjacency(RelTypes type, Direction dir) {
+		return adjacencies[typeIndex(type) * DIRECTIONS.length + (dir == Direction.OUTGOING ? 0 : 1)];
+	}
+
+	/**
+	 * @return the source or tree name with the label id `label`
+	 */
+	public String getName(int label) {
+		return names[label];
+	}
+
+	/**
+	 * @return the label id of the source or tree name, or NO_LABEL if no relationship has it
+	 */
+	public int getLabel(String name) {
+		Integer label = namesById.get(name);
+		return label == null ? NO_LABEL : label;
+	}
+}
@@ -0,0 +1,302 @@
+package opentree;
+
+import jade.tree.JadeTree;
+import jade.tree.NexsonReader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.IndexHits;
+
+/**
+ * Loads the trees in a set of NexSON files into the graph in stages:
+ * 		parse - read the NexSON
+ * 		names - resolve the missing ottol ids (PhylografterConnector.fixNamesFromTrees)
+ * 		map - check the ottol ids and map the tips to the taxonomy (GraphImporter.mapTreeTipsToGraph)
+ * 		ingest - the LICA searches and the graph writes (GraphImporter.addSetTreeToGraphWIdsSet)
+ *
+ * The first three stages only read the graph and run for many files at once on a pool of worker
+ * threads. The ingest stage runs on the calling thread one file at a time and in the order the
+ * files were given, because each LICA search depends on the nodes written (and the mrcas widened)
+ * for the trees before it. At most 2 * nThreads files are prepared ahead of the ingest stage, so a
+ * slow ingest holds back the workers instead of filling the memory with parsed trees.
+ */
+public class TreeIngestPipeline {
+
+	private final GraphDatabaseAgent graphDb;
+	private final int nThreads;
+	private final boolean prune;
+	private final boolean test;
+
+	private final Stage parseStage = new Stage("parse");
+	private final Stage namesStage = new Stage("names");
+	private final Stage mapStage = new Stage("map");
+	private final Stage ingestStage = new Stage("ingest");
+	private final LicaCache licaCache = new LicaCache(); // shared by the importers, which add their trees in turn
+
+	private int nAdded = 0;
+	private int nSkipped = 0;
+	private int nFailed = 0;
+
+	/**
+	 * @param nThreads the number of worker threads for the parse, names and map stages
+	 * @param prune prune the tips whose names can't be resolved (and duplicate or overlapping tips)
+	 * 		instead of leaving them without an ottol id
+	 * @param test do everything but add the trees to the graph
+	 */
+	public TreeIngestPipeline(GraphDatabaseAgent graphDb, int nThreads, boolean prune, boolean test) {
+		this.graphDb = graphDb;
+		this.nThreads = nThreads;
+		this.prune = prune;
+		this.test = test;
+	}
+
+	/**
+	 * Busy time and item (tree) count for a stage, summed over the threads running it.
+	 */
+	private static final class Stage {
+		final String name;
+		final AtomicLong items = new AtomicLong();
+		final AtomicLong nanos = new AtomicLong();
+		Stage(String name) {
+			this.name = name;
+		}
+		void add(long nItems, long startNanos) {
+			items.addAndGet(nItems);
+			nanos.addAndGet(System.nanoTime() - startNanos);
+		}
+		void report() {
+			double sec = nanos.get() / 1000000000.0;
+			System.out.println(name + "\t" + items.get() + "\t" + sec + "\t" + (sec > 0 ? items.get() / sec : 0));
+		}
+	}
+
+	/**
+	 * A tree that has been through the worker stages. `importer` is null if it can't be added.
+	 */
+	private static final class PreparedTree {
+		String sourcename = "";
+		GraphImporter importer = null;
+		String problem = null;
+		boolean failed = false; // the problem is an error, not just a reason to skip the tree
+	}
+
+	private static final class PreparedFile {
+		final File file;
+		final ArrayList<PreparedTree> trees = new ArrayList<PreparedTree>();
+		String failure = null;
+		PreparedFile(File file) {
+			this.file = file;
+		}
+	}
+
+	/**
+	 * Load all the trees in `files`.
+	 * @return true if every file and tree could be read and ingested (trees that were already in the
+	 * 		graph or had null or duplicate ottol ids are skipped, not failed)
+	 */
+	public boolean run(List<File> files) {
+		long start = System.currentTimeMillis();
+		final ExecutorService workers = Executors.newFixedThreadPool(nThreads);
+		final ArrayBlockingQueue<Future<PreparedFile>> prepared = new ArrayBlockingQueue<Future<PreparedFile>>(2 * nThreads);
+		final List<File> toPrepare = files;
+		Thread feeder = new Thread(new Runnable() {
+			public void run() {
+				try {
+					for (final File file : toPrepare) {
+						// blocks while the ingest stage is behind
+						prepared.put(workers.submit(new Callable<PreparedFile>() {
+							public PreparedFile call() {
+								return prepare(file);
+							}
+						}));
+					}
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "ingest-feeder");
+		feeder.setDaemon(true);
+		feeder.start();
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				PreparedFile pf;
+				try {
+					pf = prepared.take().get();
+				} catch (ExecutionException ee) {
+					ee.getCause().printStackTrace();
+					nFailed += 1;
+					continue;
+				}
+				ingest(pf);
+				if ((i + 1) % 100 == 0) {
+					System.out.println((i + 1) + " of " + files.size() + " files done");
+					report(start);
+				}
+			}
+		} catch (InterruptedException ie) {
+			System.out.println("interrupted while loading");
+			feeder.interrupt();
+			nFailed += 1;
+		} finally {
+			workers.shutdownNow();
+		}
+		report(start);
+		return nFailed == 0;
+	}
+
+	/**
+	 * The worker stages for one file.
+	 */
+	private PreparedFile prepare(File file) {
+		PreparedFile pf = new PreparedFile(file);
+		long t = System.nanoTime();
+		List<JadeTree> jt = null;
+		BufferedReader br = null;
+		try {
+			br = new BufferedReader(new FileReader(file));
+			jt = NexsonReader.readNexson(br, true);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (java.lang.NullPointerException e) {
+			e.printStackTrace();
+		} finally {
+			if (br != null) {
+				try {
+					br.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		if (jt == null) {
+			pf.failure = "failed to read " + file;
+			return pf;
+		}
+		parseStage.add(jt.size(), t);
+
+		t = System.nanoTime();
+		try {
+			boolean good = PhylografterConnector.fixNamesFromTrees(jt, graphDb, prune);
+			if (good == false && prune) {
+				pf.failure = "failed to get the names from server fixNamesFromTrees for " + file;
+				return pf;
+			}
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			pf.failure = "failed to get the names from server fixNamesFromTrees for " + file;
+			return pf;
+		}
+		namesStage.add(jt.size(), t);
+
+		t = System.nanoTime();
+		for (JadeTree j : jt) {
+			PreparedTree pt = new PreparedTree();
+			pf.trees.add(pt);
+			if (j.getObject("ot:studyId") != null) { // use studyid (if present) as sourcename
+				pt.sourcename = (String) j.getObject("ot:studyId");
+			}
+			if (j.getObject("id") != null) { // use treeid (if present) as sourcename
+				pt.sourcename += "_" + (String) j.getObject("id");
+			}
+			//check for any null or duplicate ottol:id
+			HashSet<Long> ottols = new HashSet<Long>();
+			for (int m = 0; m < j.getExternalNodeCount(); m++) {
+				Long ottolid = (Long) j.getExternalNode(m).getObject("ot:ottolid");
+				if (ottolid == null || ottols.add(ottolid) == false) {
+					pt.problem = "there are null or duplicate names: " + j.getExternalNode(m).getName() + " " + ottolid;
+					break;
+				}
+			}
+			if (pt.problem != null) {
+				continue;
+			}
+			GraphImporter gi = new GraphImporter(graphDb);
+			gi.setLicaCache(licaCache);
+			gi.setTree(j);
+			try {
+				gi.mapTreeTipsToGraph();
+				pt.importer = gi;
+			} catch (TaxonNotFoundException tnfe) {
+				pt.problem = "taxon not found: " + tnfe.getMessage();
+				pt.failed = true;
+			}
+		}
+		mapStage.add(jt.size(), t);
+		return pf;
+	}
+
+	/**
+	 * The ingest stage for one file.
+	 */
+	private void ingest(PreparedFile pf) {
+		if (pf.failure != null) {
+			System.out.println(pf.failure);
+			nFailed += 1;
+			return;
+		}
+		long t = System.nanoTime();
+		int nTrees = 0;
+		for (PreparedTree pt : pf.trees) {
+			if (pt.importer == null) {
+				System.out.println(pf.file.getName() + " " + pt.sourcename + ": " + pt.problem);
+				if (pt.failed) {
+					nFailed += 1;
+				} else {
+					nSkipped += 1;
+				}
+				continue;
+			}
+			//test to see if the tree is already in there
+			IndexHits<Node> hits = graphDb.getNodeIndex("sourceMetaNodes").get("source", pt.sourcename);
+			boolean present = hits.size() > 0;
+			hits.close();
+			if (present) {
+				System.out.println("source " + pt.sourcename + " already added");
+				nSkipped += 1;
+				continue;
+			}
+			try {
+				pt.importer.addSetTreeToGraphWIdsSet(pt.sourcename, false, test);
+				nAdded += 1;
+				nTrees += 1;
+			} catch (TaxonNotFoundException e) {
+				e.printStackTrace();
+				nFailed += 1;
+			} catch (TreeIngestException e) {
+				e.printStackTrace();
+				nFailed += 1;
+			} catch (java.lang.NullPointerException e) {
+				System.out.println("failed to get study " + pf.file.getName());
+				nFailed += 1;
+			}
+			// let the parsed tree go
+			pt.importer = null;
+		}
+		ingestStage.add(nTrees, t);
+	}
+
+	private void report(long start) {
+		float elapsedTimeSec = (System.currentTimeMillis() - start) / 1000F;
+		System.out.println("trees added: " + nAdded + " skipped: " + nSkipped + " failed: " + nFailed + " elapsed time: " + elapsedTimeSec);
+		System.out.println("stage\titems\tbusy sec\titems/busy sec");
+		parseStage.report();
+		namesStage.report();
+		mapStage.report();
+		ingestStage.report();
+		System.out.println(licaCache.getStatsString());
+	}
+}
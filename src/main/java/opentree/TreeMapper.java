@@ -0,0 +1,341 @@
+package opentree;
+
+import gnu.trove.list.array.TLongArrayList;
+import jade.tree.JadeNode;
+import jade.tree.JadeTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.neo4j.graphalgo.GraphAlgoFactory;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.kernel.Traversal;
+
+/**
+ * Maps the internal nodes of a source tree to the graph as GraphImporter would ingest it, without writing anything:
+ * the LICAs of each node, its exclusive mrca and the nodes that would be created for it. The LICA searches of the
+ * bipartition mapping widen the mrcas and outmrcas of the nodes they match, which later nodes of the same tree see,
+ * so the widened sets are kept in a TaxonSetOverlay for the mapping instead, and the nodes that would be created are
+ * given negative ids. As only the graph is shared and only read, any number of trees can be mapped at once, from any
+ * threads.
+ *
+ * Tips are mapped by their ot:ottolid if they have one, and by name otherwise (with ambiguous names resolved to the
+ * taxon closest to the focal group, as addSetTreeToGraph does).
+ */
+public class TreeMapper extends GraphBase {
+
+	public TreeMapper(GraphDatabaseAgent graphDb) {
+		this.graphDb = graphDb;
+		graphNodeIndex = graphDb.getNodeIndex("graphNamedNodes");
+		graphTaxUIDNodeIndex = graphDb.getNodeIndex("graphTaxUIDNodes");
+	}
+
+	/**
+	 * @param tree the source tree, which is not changed
+	 * @param focalGroup the name of the taxon that ambiguous tip names are resolved within, or null
+	 * @param assumeComplete map as if the taxon sampling of the tree were complete (getAllLICAt4j), as for ingest
+	 * @throws TaxonNotFoundException if a tip can't be mapped to a single taxon
+	 */
+	public Mapping map(JadeTree tree, String focalGroup, boolean assumeComplete) throws TaxonNotFoundException {
+		return new TreeMapping(tree, focalGroup != null ? findTaxNodeByName(focalGroup) : null, assumeComplete).map();
+	}
+
+	/**
+	 * The mapping of one internal node of a source tree.
+	 */
+	public static final class NodeMapping {
+		private final String name;
+		private final long [] licaIds;
+		private final long [] superLicaIds;
+		private final long [] exclusiveMrca;
+		private final long newNodeId;
+
+		NodeMapping(String name, long [] licaIds, long [] superLicaIds, long [] exclusiveMrca, long newNodeId) {
+			this.name = name;
+			this.licaIds = licaIds;
+			this.superLicaIds = superLicaIds;
+			this.exclusiveMrca = exclusiveMrca;
+			this.newNodeId = newNodeId;
+		}
+
+		/**
+		 * @return the name of the node in the source tree, or null
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return true if no node of the graph matched, so a node would be created
+		 */
+		public boolean isNew() {
+			return newNodeId != 0;
+		}
+
+		/**
+		 * @return the negative id given to the node that would be created, or 0 if the node matched
+		 */
+		public long getNewNodeId() {
+			return newNodeId;
+		}
+
+		/**
+		 * @return the sorted ids of the LICAs of the node, empty if it is new
+		 */
+		public long [] getLicaIds() {
+			return licaIds;
+		}
+
+		/**
+		 * @return the sorted ids of the nodes that the new node would be attached to with MRCACHILDOF, empty if it
+		 * matched
+		 */
+		public long [] getSuperLicaIds() {
+			return superLicaIds;
+		}
+
+		/**
+		 * @return the sorted ids of the graph nodes of the tips below the node
+		 */
+		public long [] getExclusiveMrca() {
+			return exclusiveMrca;
+		}
+
+		/**
+		 * @return one line: the name (or "-"), the number of tips below the node, and its LICAs or, for a new node,
+		 * its id and its super LICAs
+		 */
+		public String toString() {
+			StringBuffer sb = new StringBuffer();
+			sb.append(name != null && name.length() > 0 ? name : "-").append("\t").append(exclusiveMrca.length).append("\t");
+			if (isNew()) {
+				sb.append("new ").append(newNodeId).append(" under ");
+				appendIds(sb, superLicaIds);
+			} else {
+				sb.append("lica ");
+				appendIds(sb, licaIds);
+			}
+			return sb.toString();
+		}
+
+		private static void appendIds(StringBuffer sb, long [] ids) {
+			for (int i = 0; i < ids.length; i++) {
+				if (i > 0) {
+					sb.append(",");
+				}
+				sb.append(ids[i]);
+			}
+		}
+	}
+
+	/**
+	 * The mapping of a source tree: its internal nodes in postorder, and the number of graph nodes whose taxon sets
+	 * ingest would widen.
+	 */
+	public static final class Mapping {
+		private final int tipCount;
+		private final List<NodeMapping> nodes;
+		private final int widenedCount;
+
+		Mapping(int tipCount, List<NodeMapping> nodes, int widenedCount) {
+			this.tipCount = tipCount;
+			this.nodes = nodes;
+			this.widenedCount = widenedCount;
+		}
+
+		public int getTipCount() {
+			return tipCount;
+		}
+
+		public List<NodeMapping> getNodes() {
+			return nodes;
+		}
+
+		public int getNewNodeCount() {
+			int n = 0;
+			for (NodeMapping nm : nodes) {
+				if (nm.isNew()) {
+					n++;
+				}
+			}
+			return n;
+		}
+
+		public int getWidenedCount() {
+			return widenedCount;
+		}
+
+		/**
+		 * @return one line with the numbers of tips, internal nodes, matched nodes, new nodes and widened nodes
+		 */
+		public String getSummary() {
+			int newNodes = getNewNodeCount();
+			return "tips " + tipCount + "\tinternal " + nodes.size() + "\tmatched " + (nodes.size() - newNodes) + "\tnew "
+					+ newNodes + "\twidened " + widenedCount;
+		}
+	}
+
+	/**
+	 * The state of the mapping of one tree.
+	 */
+	private final class TreeMapping {
+		private final JadeTree tree;
+		private final Node focalNode;
+		private final boolean assumeComplete;
+		private final TaxonSetOverlay overlay = new TaxonSetOverlay();
+		// as in GraphImporter, the tips below any node are a range of tipNodes, and their mrca nodes a range of tipSearchNodes
+		private final HashMap<JadeNode, Integer> tipIndexes = new HashMap<JadeNode, Integer>();
+		private final ArrayList<Node> tipNodes = new ArrayList<Node>();
+		private final ArrayList<Node> tipSearchNodes = new ArrayList<Node>();
+		private int [] tipSearchStarts;
+		private long [][] tipSearchIds;
+		private TreeTaxonSet treeTaxonSet;
+		private final ArrayList<long []> newNodeMrcas = new ArrayList<long []>(); // by -id - 1
+		private final ArrayList<NodeMapping> nodes = new ArrayList<NodeMapping>();
+
+		TreeMapping(JadeTree tree, Node focalNode, boolean assumeComplete) {
+			this.tree = tree;
+			this.focalNode = focalNode;
+			this.assumeComplete = assumeComplete;
+		}
+
+		Mapping map() throws TaxonNotFoundException {
+			ArrayList<JadeNode> tips = tree.getRoot().getTips();
+			tipSearchStarts = new int[tips.size() + 1];
+			tipSearchIds = new long[tips.size()][];
+			ArrayList<long []> allSearchIds = new ArrayList<long []>(tips.size());
+			PathFinder<Path> pf = GraphAlgoFactory.shortestPath(Traversal.pathExpanderForTypes(RelTypes.TAXCHILDOF, Direction.OUTGOING), 1000);
+			for (int i = 0; i < tips.size(); i++) {
+				Node tipNode = findTipNode(tips.get(i), pf);
+				tipIndexes.put(tips.get(i), i);
+				tipNodes.add(tipNode);
+				tipSearchStarts[i] = tipSearchNodes.size();
+				tipSearchIds[i] = TaxonSetUtil.getMrca(tipNode);
+				for (long id : tipSearchIds[i]) {
+					tipSearchNodes.add(graphDb.getNodeById(id));
+				}
+				allSearchIds.add(tipSearchIds[i]);
+			}
+			tipSearchStarts[tips.size()] = tipSearchNodes.size();
+			treeTaxonSet = new TreeTaxonSet(TaxonSetUtil.merge(allSearchIds, false));
+			mapNode(tree.getRoot());
+			return new Mapping(tips.size(), nodes, overlay.getWidenedCount());
+		}
+
+		private Node findTipNode(JadeNode tip, PathFinder<Path> pf) throws TaxonNotFoundException {
+			Long ottolId = (Long) tip.getObject("ot:ottolid");
+			IndexHits<Node> hits = ottolId != null ? graphTaxUIDNodeIndex.get("tax_uid", ottolId) : graphNodeIndex.get("name", tip.getName());
+			try {
+				if (hits.size() == 1) {
+					return hits.getSingle();
+				}
+				Node closest = null;
+				if (hits.size() > 1 && focalNode != null) {
+					int shortest = Integer.MAX_VALUE;
+					for (Node hit : hits) {
+						Path path = pf.findSinglePath(hit, focalNode);
+						if (path != null && path.length() < shortest) {
+							shortest = path.length();
+							closest = hit;
+						}
+					}
+				}
+				if (closest == null) {
+					throw new TaxonNotFoundException(ottolId != null ? String.valueOf(ottolId) : tip.getName());
+				}
+				return closest;
+			} finally {
+				hits.close();
+			}
+		}
+
+		/**
+		 * Map the nodes below `inode` and then `inode`, as postOrderAddProcessedTreeToGraph does.
+		 * @return the range of the tips below `inode`, the mrca ids of those tips, and the ids of the nodes `inode`
+		 * maps to
+		 */
+		private MappedNode mapNode(JadeNode inode) {
+			if (inode.getChildCount() == 0) {
+				int i = tipIndexes.get(inode);
+				return new MappedNode(i, i + 1, tipSearchIds[i], new long [] {tipNodes.get(i).getId()});
+			}
+			int first = Integer.MAX_VALUE;
+			int last = -1;
+			ArrayList<long []> childSearchIds = new ArrayList<long []>(inode.getChildCount());
+			ArrayList<long []> childMrcas = new ArrayList<long []>();
+			for (int i = 0; i < inode.getChildCount(); i++) {
+				MappedNode child = mapNode(inode.getChild(i));
+				first = Math.min(first, child.first);
+				last = Math.max(last, child.last);
+				childSearchIds.add(child.searchIds);
+				for (long id : child.nodeIds) {
+					childMrcas.add(id < 0 ? newNodeMrcas.get((int) -id - 1) : overlay.getMrca(graphDb.getNodeById(id)));
+				}
+			}
+			long [] searchIds = TaxonSetUtil.merge(childSearchIds, false);
+			List<Node> hitNodes = tipNodes.subList(first, last);
+			List<Node> hitNodesSearch = tipSearchNodes.subList(tipSearchStarts[first], tipSearchStarts[last]);
+			TLongArrayList hitNodesSmallSearch = new TLongArrayList(searchIds);
+			long [] childIds = TaxonSetUtil.merge(childMrcas, true);
+			TLongArrayList childndids = new TLongArrayList(childIds);
+			TLongArrayList outndids = new TLongArrayList(treeTaxonSet.getOutgroupIds(childIds));
+
+			HashSet<Node> ancestors;
+			if (assumeComplete) {
+				// getAllLICAt4j doesn't widen, so it reads the graph directly
+				ancestors = LicaUtil.getAllLICAt4j(hitNodesSearch, childndids, outndids);
+			} else {
+				ancestors = LicaUtil.getBipart4j(hitNodes, hitNodesSearch, hitNodesSmallSearch, childndids, outndids, graphDb, overlay);
+			}
+			long [] exclusiveMrca = new long[hitNodes.size()];
+			for (int i = 0; i < hitNodes.size(); i++) {
+				exclusiveMrca[i] = hitNodes.get(i).getId();
+			}
+			Arrays.sort(exclusiveMrca);
+
+			long [] nodeIds;
+			if (ancestors.size() > 0) {
+				nodeIds = toSortedIds(ancestors);
+				nodes.add(new NodeMapping(inode.getName(), nodeIds, new long[0], exclusiveMrca, 0));
+			} else {
+				HashSet<Node> superLicas = LicaUtil.getSuperLICAt4j(hitNodes, hitNodesSearch, hitNodesSmallSearch, childndids, overlay);
+				newNodeMrcas.add(childIds);
+				long newNodeId = -newNodeMrcas.size();
+				nodeIds = new long [] {newNodeId};
+				nodes.add(new NodeMapping(inode.getName(), new long[0], toSortedIds(superLicas), exclusiveMrca, newNodeId));
+			}
+			return new MappedNode(first, last, searchIds, nodeIds);
+		}
+	}
+
+	private static long [] toSortedIds(HashSet<Node> nds) {
+		long [] ids = new long[nds.size()];
+		int i = 0;
+		for (Node nd : nds) {
+			ids[i++] = nd.getId();
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	private static final class MappedNode {
+		final int first; // the range of the tips below the node, from the first to one past the last
+		final int last;
+		final long [] searchIds;
+		final long [] nodeIds;
+
+		MappedNode(int first, int last, long [] searchIds, long [] nodeIds) {
+			this.first = first;
+			this.last = last;
+			this.searchIds = searchIds;
+			this.nodeIds = nodeIds;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package opentree;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.BitSet;
+
+/**
+ * The mrca ids of all the tips of a tree that is being ingested or mapped (ndidssearch), with the distinct ids numbered
+ * densely in order, so that the outgroup of any node of the tree is the bitmap of all of them andNot that of its
+ * ingroup.
+ */
+final class TreeTaxonSet {
+
+	private final long [] ids;
+	private final int [] counts; // the number of times each id is in the tree's ids
+	private final TLongIntHashMap indexes;
+	private final BitSet all;
+
+	/**
+	 * @param sortedIds the sorted mrca ids of all the tips of the tree, with an id as many times as it is below tips
+	 */
+	TreeTaxonSet(long [] sortedIds) {
+		TLongArrayList distinct = new TLongArrayList(sortedIds.length);
+		TIntArrayList distinctCounts = new TIntArrayList(sortedIds.length);
+		for (int i = 0; i < sortedIds.length; i++) {
+			if (distinct.isEmpty() || distinct.get(distinct.size() - 1) != sortedIds[i]) {
+				distinct.add(sortedIds[i]);
+				distinctCounts.add(1);
+			} else {
+				distinctCounts.set(distinctCounts.size() - 1, distinctCounts.get(distinctCounts.size() - 1) + 1);
+			}
+		}
+		ids = distinct.toArray();
+		counts = distinctCounts.toArray();
+		indexes = new TLongIntHashMap(ids.length * 2, 0.5f, -1, -1);
+		for (int i = 0; i < ids.length; i++) {
+			indexes.put(ids[i], i);
+		}
+		all = new BitSet(ids.length);
+		all.set(0, ids.length);
+	}
+
+	/**
+	 * @return the sorted ids of the tree that are not in `ingroupIds`, each as many times as it is in the tree's ids
+	 */
+	long [] getOutgroupIds(long [] ingroupIds) {
+		BitSet ingroup = new BitSet(ids.length);
+		for (int i = 0; i < ingroupIds.length; i++) {
+			int index = indexes.get(ingroupIds[i]);
+			if (index != -1) {
+				ingroup.set(index);
+			}
+		}
+		BitSet outgroup = (BitSet) all.clone();
+		outgroup.andNot(ingroup);
+		TLongArrayList outIds = new TLongArrayList(outgroup.cardinality());
+		for (int i = outgroup.nextSetBit(0); i >= 0; i = outgroup.nextSetBit(i + 1)) {
+			for (int k = 0; k < counts[i]; k++) {
+				outIds.add(ids[i]);
+			}
+		}
+		return outIds.toArray();
+	}
+}
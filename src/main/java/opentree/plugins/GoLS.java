@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -17,7 +18,7 @@ import opentree.GraphBase;
 import opentree.GraphExplorer;
 import opentree.GraphExporter;
 import opentree.OttolIdNotFoundException;
-import opentree.RelTypes;
+import opentree.SynthTreeUtil;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
@@ -252,10 +253,16 @@ public class GoLS extends ServerPlugin {
 		GraphExplorer ge = new GraphExplorer(graphDb);
 		Node startNode = ge.findGraphTaxNodeByUID(ottolID);
 		
-		JadeTree tree = ge.extractDraftTree(startNode, GraphBase.DRAFTTREENAME);
+		// the representation needs the whole string, but it is built without making a JadeTree first
+		StringBuilder newick = new StringBuilder();
+		try {
+			ge.writeSynthTreeNewick(startNode, GraphBase.DRAFTTREENAME, true, newick);
+		} catch (IOException e) {
+			throw new RuntimeException(e); // not thrown by a StringBuilder
+		}
 
 		HashMap<String, String> response = new HashMap<String, String>();
-		response.put("tree", tree.getRoot().getNewick(true));
+		response.put("tree", newick.toString());
 
 		return OpenTreeMachineRepresentationConverter.convert(response);
 	}
@@ -270,11 +277,71 @@ public class GoLS extends ServerPlugin {
 		GraphExplorer ge = new GraphExplorer(graphDb);
 		Node startNode = graphDb.getNodeById(nodeID);
 		
-		JadeTree tree = ge.extractDraftTree(startNode, GraphBase.DRAFTTREENAME);
+		// the representation needs the whole string, but it is built without making a JadeTree first
+		StringBuilder newick = new StringBuilder();
+		try {
+			ge.writeSynthTreeNewick(startNode, GraphBase.DRAFTTREENAME, true, newick);
+		} catch (IOException e) {
+			throw new RuntimeException(e); // not thrown by a StringBuilder
+		}
 
 		HashMap<String, String> response = new HashMap<String, String>();
-		response.put("tree", tree.getRoot().getNewick(true));
+		response.put("tree", newick.toString());
+
+		return OpenTreeMachineRepresentationConverter.convert(response);
+	}
+
+	@Description("Returns the MRCA in the current draft tree of the taxa identified by `ottolIDs` (its node id, name and "
+			+ "ottol id), and the ids that are not in the graph or not in the draft tree. Uses the lica index stored with "
+			+ "the draft tree, and fails if there is none.")
+	@PluginTarget(GraphDatabaseService.class)
+	public Representation getDraftTreeMRCAForOttolIDs(
+			@Source GraphDatabaseService graphDb,
+			@Description( "The ottol ids of the taxa.")
+			@Parameter(name = "ottolIDs", optional = false) String [] ottolIDs) throws IOException {
+
+		GraphExplorer ge = new GraphExplorer(graphDb);
+		return OpenTreeMachineRepresentationConverter.convert(ge.getDraftTreeMRCAForOttolIds(Arrays.asList(ottolIDs)));
+	}
 
+	@Description("As getDraftTreeMRCAForOttolIDs, for many sets of taxa at once. Returns the result of each query by the "
+			+ "query.")
+	@PluginTarget(GraphDatabaseService.class)
+	public Representation getDraftTreeMRCAsForOttolIDs(
+			@Source GraphDatabaseService graphDb,
+			@Description( "The queries, each a comma separated list of ottol ids.")
+			@Parameter(name = "queries", optional = false) String [] queries) throws IOException {
+
+		GraphExplorer ge = new GraphExplorer(graphDb);
+		HashMap<String, Object> results = new HashMap<String, Object>();
+		for (String query : queries) {
+			results.put(query, ge.getDraftTreeMRCAForOttolIds(Arrays.asList(query.trim().split("\\s*,\\s*"))));
+		}
+		return OpenTreeMachineRepresentationConverter.convert(results);
+	}
+
+	@Description("Returns the subtree of the current draft tree induced by the taxa identified by `ottolIDs` (the taxa and "
+			+ "their MRCAs in the draft tree) as newick, and the ids that are not in the graph or not in the draft tree. "
+			+ "Uses the lica index stored with the draft tree (and fails if there is none), so the time taken depends on "
+			+ "the number of taxa and not on the size of the draft tree.")
+	@PluginTarget(GraphDatabaseService.class)
+	public Representation getDraftTreeSubtreeForOttolIDs(
+			@Source GraphDatabaseService graphDb,
+			@Description( "The ottol ids of the taxa.")
+			@Parameter(name = "ottolIDs", optional = false) String [] ottolIDs) throws IOException {
+
+		GraphExplorer ge = new GraphExplorer(graphDb);
+		StringBuilder newick = new StringBuilder();
+		ArrayList<String> notFound = new ArrayList<String>();
+		ArrayList<String> notInTree = new ArrayList<String>();
+		ge.writeDraftTreeInducedSubtree(Arrays.asList(ottolIDs), newick, notFound, notInTree);
+
+		HashMap<String, Object> response = new HashMap<String, Object>();
+		if (newick.length() > 0) {
+			response.put("tree", newick.toString());
+		}
+		response.put("ottol_ids_not_found", notFound);
+		response.put("ottol_ids_not_in_tree", notInTree);
 		return OpenTreeMachineRepresentationConverter.convert(response);
 	}
 
@@ -291,10 +358,8 @@ public class GoLS extends ServerPlugin {
 		
 		HashSet<Long> childIds = new HashSet<Long>();
 		
-        for (Relationship synthChildRel : startNode.getRelationships(Direction.INCOMING, RelTypes.SYNTHCHILDOF)) {
-        	if (GraphBase.DRAFTTREENAME.equals(String.valueOf(synthChildRel.getProperty("name"))))	{
-        		childIds.add(synthChildRel.getStartNode().getId());
-        	}
+        for (Relationship synthChildRel : SynthTreeUtil.getRelationships(startNode, Direction.INCOMING, GraphBase.DRAFTTREENAME)) {
+        	childIds.add(synthChildRel.getStartNode().getId());
         }
 
 		return OpenTreeMachineRepresentationConverter.convert(childIds);
@@ -3,7 +3,7 @@ package opentree.synthesis;
 import java.util.ArrayList;
 
 import opentree.Constants;
-import opentree.RelTypes;
+import opentree.SynthTreeUtil;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Path;
@@ -22,12 +22,8 @@ public class DraftTreePathExpander implements PathExpander {
 	@Override
 	public Iterable<Relationship> expand(Path arg0, BranchState arg1) {
 		ArrayList<Relationship> rels = new ArrayList<Relationship>();
-		for (Relationship rel : arg0.endNode().getRelationships(direction, RelTypes.SYNTHCHILDOF)) {
-			if (rel.hasProperty("name")) {
-				if (String.valueOf(rel.getProperty("name")).equals(Constants.DRAFTTREENAME.value)) {
-					rels.add(rel);
-				}
-			}
+		for (Relationship rel : SynthTreeUtil.getRelationships(arg0.endNode(), direction, (String) Constants.DRAFTTREENAME.value)) {
+			rels.add(rel);
 		}
 		return rels;
 	}
@@ -0,0 +1,177 @@
+package opentree.synthesis;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import opentree.GraphDatabaseAgent;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.PathExpander;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.traversal.BranchState;
+
+/**
+ * Resolves the synthesis below a start node on a pool of threads, so that the tree can then be stored by a single
+ * traversal that doesn't have to wait on the resolution.
+ *
+ * The choice of relationships at a node only depends on the incoming relationships of that node, so the nodes can be
+ * resolved in any order and on any thread. The nodes are resolved on the calling thread down to `splitDepth` levels
+ * below the start node, and each subtree below that is then resolved as one task on the pool. A node that is reached
+ * from more than one subtree is resolved once, by whichever task gets to it first.
+ *
+ * The expander returned by getResolvedExpander() gives back the chosen relationships for each node, so a traversal
+ * with it (breadth first, like the single threaded synthesis) visits the nodes and relationships in the same order
+ * as a traversal with the synthesis method itself.
+ */
+public class ParallelSubtreeResolver {
+
+	/**
+	 * Makes the synthesis method used by each thread. The methods keep the state of the node being resolved, so
+	 * each thread needs its own.
+	 */
+	public interface SynthesisMethodFactory {
+		ResolvingExpander newSynthesisMethod();
+	}
+
+	private final GraphDatabaseAgent graphDb;
+	private final int nThreads;
+	private final int splitDepth;
+	private final ThreadLocal<ResolvingExpander> synthesisMethods;
+
+	// node id -> ids of the relationships chosen for it
+	private final ConcurrentHashMap<Long, long []> chosenRelIds = new ConcurrentHashMap<Long, long []>();
+	// the nodes a thread has taken on, so each is resolved once
+	private final ConcurrentHashMap<Long, Boolean> claimed = new ConcurrentHashMap<Long, Boolean>();
+
+	public ParallelSubtreeResolver(GraphDatabaseAgent graphDb, final SynthesisMethodFactory factory, int nThreads, int splitDepth) {
+		this.graphDb = graphDb;
+		this.nThreads = nThreads;
+		this.splitDepth = splitDepth;
+		this.synthesisMethods = new ThreadLocal<ResolvingExpander>() {
+			@Override
+			protected ResolvingExpander initialValue() {
+				return factory.newSynthesisMethod();
+			}
+		};
+	}
+
+	/**
+	 * Resolve every node that the synthesis reaches from `startNode`.
+	 * @return the number of subtrees that were resolved on the pool
+	 */
+	public int resolve(Node startNode) throws InterruptedException {
+
+		// the top levels, on this thread
+		ArrayList<Node> frontier = new ArrayList<Node>();
+		claim(startNode);
+		frontier.add(startNode);
+		for (int depth = 0; depth < splitDepth && frontier.isEmpty() == false; depth++) {
+			ArrayList<Node> nextLevel = new ArrayList<Node>();
+			for (Node nd : frontier) {
+				for (Relationship rel : resolveNode(nd)) {
+					if (claim(rel.getStartNode())) {
+						nextLevel.add(rel.getStartNode());
+					}
+				}
+			}
+			frontier = nextLevel;
+		}
+
+		// the subtrees below them, on the pool
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		try {
+			ArrayList<Future<?>> subtrees = new ArrayList<Future<?>>();
+			for (final Node root : frontier) {
+				subtrees.add(pool.submit(new Runnable() {
+					public void run() {
+						resolveSubtree(root);
+					}
+				}));
+			}
+			for (Future<?> subtree : subtrees) {
+				try {
+					subtree.get();
+				} catch (ExecutionException ee) {
+					throw new RuntimeException("failed to resolve a subtree", ee.getCause());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return frontier.size();
+	}
+
+	/**
+	 * @return the number of nodes that have been resolved
+	 */
+	public int getResolvedCount() {
+		return chosenRelIds.size();
+	}
+
+	/**
+	 * @return an expander that returns the relationships chosen for each node by resolve()
+	 */
+	public PathExpander getResolvedExpander() {
+		return new PathExpander() {
+			@Override
+			public Iterable<Relationship> expand(Path path, BranchState state) {
+				long [] relIds = chosenRelIds.get(path.endNode().getId());
+				if (relIds == null) {
+					// not reached by resolve(), which happens only if the traversal didn't start at its start node
+					return resolveNode(path.endNode());
+				}
+				ArrayList<Relationship> rels = new ArrayList<Relationship>(relIds.length);
+				for (long relId : relIds) {
+					rels.add(graphDb.getRelationshipById(relId));
+				}
+				return rels;
+			}
+
+			@Override
+			public PathExpander reverse() {
+				throw new java.lang.UnsupportedOperationException("reverse method not supported for synthesis expander");
+			}
+		};
+	}
+
+	/**
+	 * @return true if this thread is the first to take on `nd`
+	 */
+	private boolean claim(Node nd) {
+		return claimed.putIfAbsent(nd.getId(), Boolean.TRUE) == null;
+	}
+
+	/**
+	 * Resolve the claimed node `root` and all the nodes below it that no other thread has claimed.
+	 */
+	private void resolveSubtree(Node root) {
+		LinkedList<Node> stack = new LinkedList<Node>();
+		stack.push(root);
+		while (stack.isEmpty() == false) {
+			for (Relationship rel : resolveNode(stack.pop())) {
+				if (claim(rel.getStartNode())) {
+					stack.push(rel.getStartNode());
+				}
+			}
+		}
+	}
+
+	private ArrayList<Relationship> resolveNode(Node nd) {
+		ArrayList<Relationship> chosen = new ArrayList<Relationship>();
+		for (Relationship rel : synthesisMethods.get().evaluateBestPaths(nd)) {
+			chosen.add(rel);
+		}
+		long [] relIds = new long[chosen.size()];
+		for (int i = 0; i < relIds.length; i++) {
+			relIds[i] = chosen.get(i).getId();
+		}
+		chosenRelIds.put(nd.getId(), relIds);
+		return chosen;
+	}
+}
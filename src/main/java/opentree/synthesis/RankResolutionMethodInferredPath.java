@@ -1,5 +1,7 @@
 package opentree.synthesis;
 
+import opentree.TaxonSetUtil;
+
 import gnu.trove.list.array.TLongArrayList;
 
 import java.util.HashMap;
@@ -40,7 +42,7 @@ public class RankResolutionMethodInferredPath implements ResolutionMethod {
 
 	private void storeDescendants(Relationship rel) {
 
-		TLongArrayList descendantIds = new TLongArrayList((long[]) rel.getStartNode().getProperty("mrca"));
+		TLongArrayList descendantIds = new TLongArrayList(TaxonSetUtil.getMrca(rel.getStartNode()));
 		candRelDescendantIdsMap.put(rel, descendantIds);
 
 		// just user feedback for non-terminal nodes
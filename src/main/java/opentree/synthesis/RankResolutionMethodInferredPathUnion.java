@@ -0,0 +1,146 @@
+package opentree.synthesis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import opentree.SortedIdSetUtil;
+import opentree.TaxonSetUtil;
+
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Makes the same choices as RankResolutionMethodInferredPath (a candidate is accepted if every saved relationship
+ * that shares a descendant with it is contained in it, and the contained ones are then dropped), without testing
+ * each candidate against each saved relationship.
+ *
+ * The accepted relationships form nested or disjoint descendant sets, so the union of their sets is kept in one
+ * map from descendant id to the outermost accepted relationship containing it. A candidate is then a single pass
+ * over its own descendant ids: it conflicts if it covers only part of an outermost set it touches, and otherwise
+ * it replaces the outermost sets it touches (along with everything nested in them, which was dropped already when
+ * they were accepted).
+ *
+ * All the incoming relationships of a node are resolved in one call, and the descendant set of a child node is
+ * decoded once however many sources have a relationship from it.
+ */
+public class RankResolutionMethodInferredPathUnion implements ResolutionMethod {
+
+	// for testing
+	private static final boolean VERBOSE = false;
+
+	private static final int NO_OWNER = -1;
+
+	// the union of the accepted descendant sets: id -> position of the outermost accepted rel containing it
+	private final TLongIntHashMap owners = new TLongIntHashMap(16, 0.5f, -1, NO_OWNER);
+
+	// for each accepted rel, in order of acceptance
+	private final ArrayList<Relationship> accepted = new ArrayList<Relationship>();
+	private final TIntArrayList setSize = new TIntArrayList();
+	private final TIntArrayList coveredCount = new TIntArrayList();
+	private boolean [] dropped = new boolean[16];
+
+	private final HashMap<Long, long []> descendantIdsByNode = new HashMap<Long, long []>();
+	private final TIntArrayList touched = new TIntArrayList();
+
+	private void initialize() {
+		owners.clear();
+		accepted.clear();
+		setSize.resetQuick();
+		coveredCount.resetQuick();
+		descendantIdsByNode.clear();
+	}
+
+	/**
+	 * @return the sorted, distinct descendant ids of the start node of `rel`
+	 */
+	private long [] getDescendantIds(Relationship rel) {
+		Long startId = rel.getStartNode().getId();
+		long [] ids = descendantIdsByNode.get(startId);
+		if (ids == null) {
+			ids = TaxonSetUtil.getMrca(rel.getStartNode()).clone();
+			Arrays.sort(ids);
+			ids = SortedIdSetUtil.unique(ids);
+			descendantIdsByNode.put(startId, ids);
+		}
+		return ids;
+	}
+
+	/**
+	 * Accept or reject the candidate against the rels accepted so far.
+	 * @return true if it was accepted
+	 */
+	private boolean resolve(Relationship candidate) {
+		long [] ids = getDescendantIds(candidate);
+
+		// count how much of each outermost accepted set the candidate covers
+		touched.resetQuick();
+		for (long id : ids) {
+			int owner = owners.get(id);
+			if (owner != NO_OWNER) {
+				if (coveredCount.get(owner) == 0) {
+					touched.add(owner);
+				}
+				coveredCount.set(owner, coveredCount.get(owner) + 1);
+			}
+		}
+		boolean conflict = false;
+		for (int i = 0; i < touched.size(); i++) {
+			int owner = touched.get(i);
+			if (coveredCount.get(owner) < setSize.get(owner)) {
+				conflict = true;
+			}
+			coveredCount.set(owner, 0);
+		}
+		if (conflict) {
+			return false;
+		}
+
+		// the candidate contains every accepted set it touches
+		int position = accepted.size();
+		accepted.add(candidate);
+		setSize.add(ids.length);
+		coveredCount.add(0);
+		if (position == dropped.length) {
+			dropped = Arrays.copyOf(dropped, position * 2);
+		}
+		dropped[position] = false;
+		for (int i = 0; i < touched.size(); i++) {
+			dropped[touched.get(i)] = true;
+			if (VERBOSE) {
+				System.out.println("remove saved relationship " + accepted.get(touched.get(i)) + " because it is contained within " + candidate);
+			}
+		}
+		for (long id : ids) {
+			owners.put(id, position);
+		}
+		return true;
+	}
+
+	@Override
+	public Iterable<Relationship> resolveConflicts(Iterable<Relationship> rels) {
+
+		initialize();
+		for (Relationship candidate : rels) {
+			boolean saved = resolve(candidate);
+			if (VERBOSE) {
+				System.out.println("\trel " + candidate.getId() + (saved ? " passed, it will be added" : " failed, it will NOT be added"));
+			}
+		}
+
+		LinkedList<Relationship> bestRels = new LinkedList<Relationship>();
+		for (int i = 0; i < accepted.size(); i++) {
+			if (dropped[i] == false) {
+				bestRels.add(accepted.get(i));
+			}
+		}
+		return bestRels;
+	}
+
+	public String getDescription() {
+		return "prefer relationships with higher ranking, and guarantee a fully acyclic result";
+	}
+}
@@ -9,5 +9,11 @@ public interface RankingCriterion extends Comparator<Relationship> {
 
 	abstract void sort(List<Relationship> rels);
 	abstract String getDescription();
+
+	/**
+	 * Return a rank key for each of `rels`, in the same order. A rel with a lower key ranks higher and rels with equal
+	 * keys are tied, consistently with compare(). The keys only need to be comparable within the returned array.
+	 */
+	abstract long [] getRankKeys(Relationship [] rels);
 	
 }
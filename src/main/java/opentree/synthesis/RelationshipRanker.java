@@ -1,8 +1,6 @@
 package opentree.synthesis;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -40,29 +38,105 @@ public class RelationshipRanker {
 	 * Rank the relationships in the provided iterable according to the defined criteria, and return
 	 * them in ranked order.
 	 * 
+	 * The rank keys of all the rels are computed once for each criterion, and the rels are then sorted in
+	 * a single stable pass on the composite key, so the properties behind the criteria are read once per
+	 * rel rather than once per comparison.
+	 * 
 	 * @param rels
 	 * @return rankedRels
 	 */
 	public Iterable<Relationship> rankRelationships(Iterable<Relationship> rels) {
 
-		ArrayList<Relationship> rankedRels = new ArrayList<Relationship>();
-		
 		if (criteria.isEmpty()) {
 			throw new java.util.NoSuchElementException("no ranking criteria have been assigned");
 		}
 		
+		ArrayList<Relationship> candidates = new ArrayList<Relationship>();
 		for (Relationship rel : rels) {
-			rankedRels.add(rel);
+			candidates.add(rel);
 		}
+		Relationship [] unranked = candidates.toArray(new Relationship[candidates.size()]);
 
-		for (int i = criteria.size() - 1; i >= 0; i--) {
-			// iterate through criteria in reverse order and sort the relationships in that order
-			criteria.get(i).sort(rankedRels); // TEST THIS
-		}		
-		
+		long [][] keys = new long[criteria.size()][];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = criteria.get(i).getRankKeys(unranked);
+		}
+
+		ArrayList<Relationship> rankedRels = new ArrayList<Relationship>(unranked.length);
+		for (int i : sortedOrder(keys, unranked.length)) {
+			rankedRels.add(unranked[i]);
+		}
 		return rankedRels;
 	}
 
+	/**
+	 * Sort `rels` in place by the rank keys of a single criterion.
+	 */
+	static void sortByKeys(List<Relationship> rels, RankingCriterion criterion) {
+		Relationship [] unsorted = rels.toArray(new Relationship[rels.size()]);
+		long [][] keys = {criterion.getRankKeys(unsorted)};
+		int [] order = sortedOrder(keys, unsorted.length);
+		for (int i = 0; i < order.length; i++) {
+			rels.set(i, unsorted[order[i]]);
+		}
+	}
+
+	/**
+	 * Return the positions 0..n-1 sorted by the composite keys (keys[0][i], keys[1][i], ...). The sort
+	 * is stable, which gives the same order as sorting stably by each criterion from last to first.
+	 */
+	static int [] sortedOrder(long [][] keys, int n) {
+		int [] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		if (n > 1) {
+			mergeSort(keys, order, new int[n], 0, n);
+		}
+		return order;
+	}
+
+	private static void mergeSort(long [][] keys, int [] order, int [] tmp, int from, int to) {
+		if (to - from <= 8) {
+			// insertion sort the short runs
+			for (int i = from + 1; i < to; i++) {
+				int cur = order[i];
+				int j = i - 1;
+				while (j >= from && compareKeys(keys, order[j], cur) > 0) {
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = cur;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(keys, order, tmp, from, mid);
+		mergeSort(keys, order, tmp, mid, to);
+		if (compareKeys(keys, order[mid - 1], order[mid]) <= 0) {
+			return;
+		}
+		System.arraycopy(order, from, tmp, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j == to || (i < mid && compareKeys(keys, tmp[i], tmp[j]) <= 0)) {
+				order[k] = tmp[i++];
+			} else {
+				order[k] = tmp[j++];
+			}
+		}
+	}
+
+	private static int compareKeys(long [][] keys, int a, int b) {
+		for (int c = 0; c < keys.length; c++) {
+			if (keys[c][a] != keys[c][b]) {
+				return keys[c][a] < keys[c][b] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
 	public String getDescription() {
 		String description = "Relationships will be ranked (rankings listed in order of priority):\n";
 		for (RankingCriterion rc : criteria) {
@@ -0,0 +1,109 @@
+package opentree.synthesis;
+
+import java.util.HashMap;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+
+/**
+ * Resolves the source metadata node of a relationship through the sourceMetaNodes index once per source,
+ * and keeps the source properties the synthesis criteria use in a small record. One cache is meant to be
+ * shared by all the filter and ranking criteria of a synthesis run, so that comparing relationships during
+ * a sort doesn't hit the index.
+ *
+ * The records are not updated if the metadata nodes change, so a cache should not outlive the synthesis
+ * it was made for.
+ */
+public class SourceMetadataCache {
+
+	private final Index<Node> metadataNodeIndex;
+	private final HashMap<String, SourceMetadata> records;
+
+	// sources without a metadata node
+	private static final SourceMetadata NOT_FOUND = new SourceMetadata(null, null);
+
+	public SourceMetadataCache(Index<Node> sourceMetaNodes) {
+		this.metadataNodeIndex = sourceMetaNodes;
+		this.records = new HashMap<String, SourceMetadata>();
+	}
+
+	/**
+	 * @return the metadata for the source of `rel`, or null if it has no source property or the source has no
+	 * 		metadata node
+	 */
+	public SourceMetadata get(Relationship rel) {
+		if (rel.hasProperty("source") == false) {
+			return null;
+		}
+		return get(String.valueOf(rel.getProperty("source")));
+	}
+
+	/**
+	 * @return the metadata for `source`, or null if it has no metadata node
+	 */
+	public SourceMetadata get(String source) {
+		SourceMetadata md = records.get(source);
+		if (md == null) {
+			//TODO: can have multiple metanodes with multiple lica mappings, this uses the first as the criteria always have
+			IndexHits<Node> hits = metadataNodeIndex.get("source", source);
+			try {
+				md = hits.hasNext() ? new SourceMetadata(source, hits.next()) : NOT_FOUND;
+			} finally {
+				hits.close();
+			}
+			records.put(source, md);
+		}
+		return md == NOT_FOUND ? null : md;
+	}
+
+	/**
+	 * @return the number of sources looked up so far
+	 */
+	public int size() {
+		return records.size();
+	}
+
+	/**
+	 * The source properties (as defined in the SourceProperty enum) of one source.
+	 */
+	public static final class SourceMetadata {
+
+		public final String source;
+		private final Object [] rawValues;
+		private final SourcePropertyValue [] values;
+
+		private SourceMetadata(String source, Node metadataNode) {
+			this.source = source;
+			SourceProperty [] properties = SourceProperty.values();
+			rawValues = new Object[properties.length];
+			values = new SourcePropertyValue[properties.length];
+			if (metadataNode != null) {
+				for (SourceProperty p : properties) {
+					if (metadataNode.hasProperty(p.propertyName)) {
+						rawValues[p.ordinal()] = metadataNode.getProperty(p.propertyName);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the value of `property` as stored on the metadata node, or null if it isn't set
+		 */
+		public Object getRawValue(SourceProperty property) {
+			return rawValues[property.ordinal()];
+		}
+
+		/**
+		 * @return the value of `property`, or null if it isn't set
+		 */
+		public SourcePropertyValue getValue(SourceProperty property) {
+			int i = property.ordinal();
+			if (values[i] == null && rawValues[i] != null) {
+				values[i] = new SourcePropertyValue(property, rawValues[i]);
+			}
+			return values[i];
+		}
+	}
+}
@@ -1,11 +1,8 @@
 package opentree.synthesis;
 
-import java.util.HashSet;
-
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.Index;
-import org.neo4j.graphdb.index.IndexHits;
 
 /**
  * This class makes filtering decisions based on relationship properties as defined in the SourceProperty class, using
@@ -19,7 +16,7 @@ public class SourcePropertyFilterCriterion implements FilterCriterion {
 	private SourceProperty property;
 	private FilterComparisonType c;
 	private TestValue t;
-	private Index<Node> metadataNodeIndex;
+	private SourceMetadataCache metadata;
 	
 	/**
 	 * Will compare the values of the source property defined by `p` to the test value `t` using the comparison method `c`.
@@ -28,29 +25,29 @@ public class SourcePropertyFilterCriterion implements FilterCriterion {
 	 * @param t
 	 */
 	public SourcePropertyFilterCriterion(SourceProperty p, FilterComparisonType c, TestValue t, Index<Node> sourceMetaNodes) {
+		this(p, c, t, new SourceMetadataCache(sourceMetaNodes));
+	}
+
+	/**
+	 * As above, but the source metadata is read through `metadata`, which can be shared with the other criteria.
+	 */
+	public SourcePropertyFilterCriterion(SourceProperty p, FilterComparisonType c, TestValue t, SourceMetadataCache metadata) {
 		this.property = p;
 		this.c = c;
 		this.t = t;
-		metadataNodeIndex = sourceMetaNodes;
+		this.metadata = metadata;
 	}
 	
 	public boolean test(Relationship r) {
 		//TODO: there can be multiple given multiple LICA mappings 
-//		Node m1 = metadataNodeIndex.get("source", r.getProperty("source")).getSingle();
-		if(r.hasProperty("source") == false){
-			return false;
-		}
-		//System.out.println(r+" "+r.getProperty("source"));
-		IndexHits<Node> ih = metadataNodeIndex.get("source", r.getProperty("source"));
-		if(ih.size() == 0){
+		SourceMetadataCache.SourceMetadata md = metadata.get(r);
+		if (md == null) {
 			return false;
 		}
-		Node m1 = ih.next();
-		ih.close();
-		if (m1.hasProperty(property.propertyName) == false){
+		SourcePropertyValue v = md.getValue(property);
+		if (v == null) {
 			return false;
 		}
-		SourcePropertyValue v = new SourcePropertyValue(property, m1.getProperty(property.propertyName));
 		
 		if (c == FilterComparisonType.EQUALTO) {
 			return t.compareTo(v) == 0;
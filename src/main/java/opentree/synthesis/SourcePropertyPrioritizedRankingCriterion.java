@@ -1,13 +1,11 @@
 package opentree.synthesis;
 
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.Index;
-import org.neo4j.graphdb.index.IndexHits;
 
 /**
  * This class ranks relationships by property based on the priority defined in the priortyListIter.
@@ -21,10 +19,11 @@ public class SourcePropertyPrioritizedRankingCriterion implements RankingCriteri
 	private HashMap<String, Integer> priorityMapString;
 	private HashMap<Long, Integer> priorityMapLong;
 	private HashMap<Double, Integer> priorityMapDouble;
-	private Index<Node> metadataNodeIndex;
+	private SourceMetadataCache metadata;
+	private HashMap<SourceMetadataCache.SourceMetadata, Integer> rankBySource;
 	private String desc;
 	
-	private final static Integer NOTRANKED = -999999999;
+	private final static int NOTRANKED = -999999999;
 
 	// for testing
 	private static final boolean VERBOSE = false;
@@ -36,8 +35,16 @@ public class SourcePropertyPrioritizedRankingCriterion implements RankingCriteri
 	 * @param t
 	 */
 	public SourcePropertyPrioritizedRankingCriterion(SourceProperty property, Iterable<Object> priortyListIterable, Index<Node> sourceMetaNodes) {
+		this(property, priortyListIterable, new SourceMetadataCache(sourceMetaNodes));
+	}
+
+	/**
+	 * As above, but the source metadata is read through `metadata`, which can be shared with the other criteria.
+	 */
+	public SourcePropertyPrioritizedRankingCriterion(SourceProperty property, Iterable<Object> priortyListIterable, SourceMetadataCache metadata) {
 		this.property = property;
-		this.metadataNodeIndex = sourceMetaNodes;
+		this.metadata = metadata;
+		this.rankBySource = new HashMap<SourceMetadataCache.SourceMetadata, Integer>();
 
 		int i = 0;
 		if (property.type == String.class) {
@@ -70,98 +77,68 @@ public class SourcePropertyPrioritizedRankingCriterion implements RankingCriteri
 	}
 
 	/**
-	 * Compare the specified source property of the two provided relationships.
+	 * Return the position of the source of `rel` in the priority list, or NOTRANKED if its property value is
+	 * not in the list (or it has no source metadata). Positions are looked up once per source.
 	 */
-	@Override
-	public int compare(Relationship rel1, Relationship rel2) {
-		
-		Object v1 = null;
-		Object v2 = null;
-		if(rel1.hasProperty("source") == false || rel2.hasProperty("source") == false)
-			return 0;
+	private int getRank(Relationship rel) {
 		//TODO: can have multiple metanodes with multiple lica mappings
-		IndexHits<Node> h1 = metadataNodeIndex.get("source", rel1.getProperty("source"));//.next();//.getSingle();
-		IndexHits<Node> h2 = metadataNodeIndex.get("source", rel2.getProperty("source"));//.next();//.getSingle();
-		if(h1.size() == 0 || h2.size() == 0){
-			return 0;
-		}
-		Node m1 = h1.next();
-		Node m2 = h2.next();
-		
-		h1.close();
-		h2.close();
-		if (m1.hasProperty(property.propertyName))
-			v1 = m1.getProperty(property.propertyName);
-
-		if (m2.hasProperty(property.propertyName))
-			v2 = m2.getProperty(property.propertyName);
-
-		if (v1 == null && v2 == null) {
-			return 0;
-		} else if (v2 == NOTRANKED) {
-			return 1;
-		} else if (v1 == NOTRANKED) {
-			return -1;
+		SourceMetadataCache.SourceMetadata md = metadata.get(rel);
+		if (md == null) {
+			return NOTRANKED;
 		}
+		Integer rank = rankBySource.get(md);
+		if (rank == null) {
+			Object v = md.getRawValue(property);
+			rank = NOTRANKED;
+			if (v == null) {
+				// not ranked
+			} else if (property.type == String.class) {
+				if (priorityMapString.containsKey((String) v))
+					rank = priorityMapString.get((String) v);
+			} else if (property.type == Long.class || property.type == Integer.class) {
+				if (priorityMapLong.containsKey((Long) v))
+					rank = priorityMapLong.get((Long) v);
+			} else if (property.type == Double.class) {
+				if (priorityMapDouble.containsKey((Double) v))
+					rank = priorityMapDouble.get((Double) v);
+			} else {
+				throw new java.lang.UnsupportedOperationException("the source property datatype " + String.valueOf(property.type) + " is unrecognized");
+			}
+			rankBySource.put(md, rank);
 
-		Integer rank1 = NOTRANKED;
-		Integer rank2 = NOTRANKED;
-
-		if (property.type == String.class) {
-			if (priorityMapString.containsKey((String) v1))
-				rank1 = priorityMapString.get((String) v1);
-
-			if (priorityMapString.containsKey((String) v2))
-				rank2 = priorityMapString.get((String) v2);
-			
-		} else if (property.type == Long.class || property.type == Integer.class) {
-			if (priorityMapString.containsKey((Long) v1))
-				rank1 = priorityMapLong.get((Long) v1);
-			
-			if (priorityMapString.containsKey((Long) v2))
-				rank2 = priorityMapLong.get((Long) v2);
-
-		} else if (property.type == Double.class) {
-			if (priorityMapString.containsKey((Double) v1))
-				rank1 = priorityMapDouble.get((Double) v1);
-
-			if (priorityMapString.containsKey((Double) v2))
-				rank2 = priorityMapDouble.get((Double) v2);
-
-		} else {
-			throw new java.lang.UnsupportedOperationException("the source property datatype " + String.valueOf(property.type) + " is unrecognized");
+			if (VERBOSE)
+				System.out.println("source " + md.source + " property " + v + (rank == NOTRANKED ? " is not in priority list" : " has rank " + rank));
 		}
-		
-		Integer retval = null;
-		if (rank1 == NOTRANKED && rank2 == NOTRANKED) {
-			retval = 0;
-
-		} else if (rank2 == NOTRANKED) {
-			retval = 1;
+		return rank;
+	}
 
-			if (VERBOSE)
-				System.out.println("rel 2 (relid " + rel2.getId() + "; source " + rel2.getProperty("source") + ") property " + v2 + " is not in priority list; preferring rel 1 (relid " + rel1.getId() + "; source " + rel1.getProperty("source") + ") property " + v1 + ")");
-		
-		} else if (rank1 == NOTRANKED) {
-			retval = -1;
+	/**
+	 * Return the sort key for a rank. Unranked rels go last; among the ranked ones the comparison of the positions
+	 * is reversed (see compare), so the key is the negated position.
+	 */
+	private static int getKey(int rank) {
+		return rank == NOTRANKED ? Integer.MAX_VALUE : -rank;
+	}
 
-			if (VERBOSE)
-				System.out.println("rel 1 (relid " + rel1.getId() + "; name " + rel1.getProperty("source") + ") property " + v1 + " is not in priority list; preferring rel 2 (relid " + rel2.getId() + "; source " + rel2.getProperty("source") + ") property " + v2 + ")");
+	/**
+	 * Compare the specified source property of the two provided relationships.
+	 */
+	@Override
+	public int compare(Relationship rel1, Relationship rel2) {
+		int k1 = getKey(getRank(rel1));
+		int k2 = getKey(getRank(rel2));
+		return k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+	}
 
-		} else {
-			retval = rank1.compareTo(rank2);
-		
-			if (VERBOSE) {
-				System.out.println("rel 1 (relid " + rel1.getId() + "; name " + rel1.getProperty("source") + ") property " + v1 + " || rel 2 (relid " + rel2.getId() + "; source " + rel2.getProperty("source")  + ") property " + v2 + ")");
-				System.out.println("\t" + retval);
-			}
+	public long [] getRankKeys(Relationship [] rels) {
+		long [] keys = new long[rels.length];
+		for (int i = 0; i < rels.length; i++) {
+			keys[i] = getKey(getRank(rels[i]));
 		}
-		
-		// priority is indicated by proximity to the beginning of the list, so we sort in REVERSE!
-		return retval * -1;
+		return keys;
 	}
 
 	public void sort(List<Relationship> rels) {
-		Collections.sort(rels, this);
+		RelationshipRanker.sortByKeys(rels, this);
 	}
 }
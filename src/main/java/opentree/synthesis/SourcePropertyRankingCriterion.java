@@ -1,12 +1,12 @@
 package opentree.synthesis;
 
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.Index;
-import org.neo4j.graphdb.index.IndexHits;
 
 /**
  * This class ranks relationships based on properties defined in the SourceProperty enum.
@@ -20,7 +20,7 @@ public class SourcePropertyRankingCriterion implements RankingCriterion {
 
 	private SourceProperty property;
 	private RankingOrder order;
-	private Index<Node> metadataNodeIndex;
+	private SourceMetadataCache metadata;
 	
 	/**
 	 * Define a ranking order based on property `p` and sort order `o`.
@@ -29,72 +29,85 @@ public class SourcePropertyRankingCriterion implements RankingCriterion {
 	 * @param t
 	 */
 	public SourcePropertyRankingCriterion(SourceProperty p, RankingOrder o, Index<Node> sourceMetaNodes) {
+		this(p, o, new SourceMetadataCache(sourceMetaNodes));
+	}
+
+	/**
+	 * As above, but the source metadata is read through `metadata`, which can be shared with the other criteria.
+	 */
+	public SourcePropertyRankingCriterion(SourceProperty p, RankingOrder o, SourceMetadataCache metadata) {
 		this.property = p;
 		this.order = o;
-		this.metadataNodeIndex = sourceMetaNodes;
+		this.metadata = metadata;
 	}
 	
 	public String getDescription() {
 		return "by source property " + property.propertyName + " in " + order.name() + " order";
 	}
-	
-	@Override
-	public int compare(Relationship rel1, Relationship rel2) {
-		//TODO: there are multiple metanodes when there are multiple licas found
-		if(rel1.hasProperty("source") == false || rel2.hasProperty("source") == false)
-			return 0;
-		IndexHits<Node> h1 = metadataNodeIndex.get("source", rel1.getProperty("source"));//.next();//.getSingle();
-		IndexHits<Node> h2 = metadataNodeIndex.get("source", rel2.getProperty("source"));//.next();//.getSingle();
-		if(h1.size() == 0 || h2.size() == 0){
-			return 0;
-		}
-		Node m1 = h1.next();
-		Node m2 = h2.next();
-		h1.close();
-		h2.close();
 
-//		System.out.println("metadata node 1 " + m1.toString());
-//		System.out.println("metadata node 2 " + m2.toString());
-
-		SourcePropertyValue v1 = null;
-		SourcePropertyValue v2 = null;
-		
-		if (m1.hasProperty(property.propertyName))
-			v1 = new SourcePropertyValue(property, m1.getProperty(property.propertyName));
+	/**
+	 * @return the value used to rank `rel`, or null if its source doesn't have one
+	 */
+	private SourcePropertyValue getKey(Relationship rel) {
+		//TODO: there are multiple metanodes when there are multiple licas found
+		SourceMetadataCache.SourceMetadata md = metadata.get(rel);
+		return md == null ? null : md.getValue(property);
+	}
 
-		if (m2.hasProperty(property.propertyName))
-			v2 = new SourcePropertyValue(property, m2.getProperty(property.propertyName));
+	private int compareKeys(SourcePropertyValue v1, SourcePropertyValue v2) {
 
-		Integer retval = null;
-		
 		// Relationships that have the specified property should be order higher than ones that do not.
 		// NOTE: Collections.sort() sorts in ascending order, but we actually want higher priority elements
 		// at the beginning of the list, so we reverse the order of the comparison here.
 		if (v1 == null && v2 == null) {
-			retval = 0;
+			return 0;
 		} else if (v1 == null) {
-			retval = 1; // reverse
+			return 1; // reverse
 		} else if (v2 == null) {
-			retval = -1; // reverse
+			return -1; // reverse
 
 		// if both rels have the property, then compare them
+		} else if (order == RankingOrder.INCREASING) {
+			return v1.compareTo(v2);
 		} else {
+			return v2.compareTo(v1); // reverse the comparison direction
+		}
+	}
+	
+	@Override
+	public int compare(Relationship rel1, Relationship rel2) {
+		return compareKeys(getKey(rel1), getKey(rel2));
+	}
 
-			if (order == RankingOrder.INCREASING)
-				retval = v1.compareTo(v2);
-			
-			else if (order == RankingOrder.DECREASING)
-				retval = v2.compareTo(v1); // reverse the comparison direction
-
-			else
-				throw new java.lang.UnsupportedOperationException("the ranking method " + order.toString() + " is not recognized");
+	/**
+	 * The keys are the positions of the distinct property values in ranked order, so each rel's value is only
+	 * looked at once however many comparisons the ranking makes.
+	 */
+	public long [] getRankKeys(Relationship [] rels) {
+		final SourcePropertyValue [] values = new SourcePropertyValue[rels.length];
+		Integer [] order = new Integer[rels.length];
+		for (int i = 0; i < rels.length; i++) {
+			values[i] = getKey(rels[i]);
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i, Integer j) {
+				return compareKeys(values[i], values[j]);
+			}
+		});
+		long [] keys = new long[rels.length];
+		long key = 0;
+		for (int i = 0; i < order.length; i++) {
+			if (i > 0 && compareKeys(values[order[i - 1]], values[order[i]]) != 0) {
+				key++;
+			}
+			keys[order[i]] = key;
 		}
-		
-		return retval;
+		return keys;
 	}
 
 	@Override
 	public void sort(List<Relationship> rels) {
-		Collections.sort(rels, this);
+		RelationshipRanker.sortByKeys(rels, this);
 	}
 }
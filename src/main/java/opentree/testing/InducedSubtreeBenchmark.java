@@ -0,0 +1,226 @@
+package opentree.testing;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import opentree.DraftTreeLicaIndex;
+import opentree.GraphDatabaseAgent;
+import opentree.InducedSubtree;
+import opentree.SynthTreeUtil;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Times the extraction of the subtree of a synthetic tree induced by k of its tips with InducedSubtree (from the
+ * DraftTreeLicaIndex of the tree) against walking from each tip up the stored tree until the path meets one already
+ * walked, and checks that both find the same subtree. The newick of each induced subtree is written to a counter, to
+ * time that too.
+ *
+ * The tree is a random binary tree over `nTips` tips, stored as a synthetic tree in a scratch graph.
+ */
+public final class InducedSubtreeBenchmark {
+
+	private static final String TREE_NAME = "induced.subtree.benchmark";
+	private static final int COMMIT_INTERVAL = 10000;
+
+	private final GraphDatabaseAgent graphDb;
+	private final Random random;
+	private final TLongArrayList tipIds = new TLongArrayList();
+	private DraftTreeLicaIndex index;
+
+	public InducedSubtreeBenchmark(GraphDatabaseAgent graphDb, long seed) {
+		this.graphDb = graphDb;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Store the tree by joining random pairs of clades until one is left, and index it.
+	 */
+	public void buildGraph(int nTips) {
+		TLongArrayList clades = new TLongArrayList();
+		int nOps = 0;
+		Transaction tx = graphDb.beginTx();
+		try {
+			for (int i = 0; i < nTips; i++) {
+				Node tip = graphDb.createNode();
+				tip.setProperty("name", "t" + i);
+				tipIds.add(tip.getId());
+				clades.add(tip.getId());
+				if (++nOps % COMMIT_INTERVAL == 0) {
+					tx.success();
+					tx.finish();
+					tx = graphDb.beginTx();
+				}
+			}
+			while (clades.size() > 1) {
+				Node parent = graphDb.createNode();
+				for (int j = 0; j < 2; j++) {
+					int i = random.nextInt(clades.size());
+					Node child = graphDb.getNodeById(clades.get(i));
+					clades.set(i, clades.get(clades.size() - 1));
+					clades.removeAt(clades.size() - 1);
+					SynthTreeUtil.createRelationship(child, parent, TREE_NAME);
+				}
+				clades.add(parent.getId());
+				if (++nOps % COMMIT_INTERVAL == 0) {
+					tx.success();
+					tx.finish();
+					tx = graphDb.beginTx();
+				}
+			}
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		long start = System.nanoTime();
+		index = new DraftTreeLicaIndex(graphDb.getNodeById(clades.get(0)), TREE_NAME);
+		System.out.println("indexed the " + index.size() + " nodes of the tree in " + (System.nanoTime() - start) / 1000000.0 + " ms");
+	}
+
+	/**
+	 * Extract the subtrees induced by `nRuns` random sets of tips of each of the sizes and print the timings.
+	 * @return true if both ways found the same subtrees
+	 */
+	public boolean run(int [] sizes, int nRuns) {
+		boolean identical = true;
+		System.out.println("tips\tinduced nodes\tpath walk ms\tinduced subtree ms\tnewick ms\tnewick chars");
+		for (int k : sizes) {
+			if (k > tipIds.size()) {
+				System.out.println(k + "\tskipped, the tree has " + tipIds.size() + " tips");
+				continue;
+			}
+			long walkNanos = 0;
+			long inducedNanos = 0;
+			long newickNanos = 0;
+			long nNodes = 0;
+			CharCounter counter = new CharCounter();
+			for (int r = 0; r < nRuns; r++) {
+				long [] tips = sample(k);
+
+				long start = System.nanoTime();
+				TLongLongHashMap walkParents = walkPaths(tips);
+				walkNanos += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				InducedSubtree subtree = new InducedSubtree(index, tips);
+				inducedNanos += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				try {
+					subtree.writeNewick(graphDb, counter);
+				} catch (IOException e) {
+					throw new RuntimeException(e); // not thrown by the counter
+				}
+				newickNanos += System.nanoTime() - start;
+
+				nNodes += subtree.size();
+				if (sameParents(subtree, walkParents) == false) {
+					identical = false;
+				}
+			}
+			System.out.println(k + "\t" + nNodes / nRuns + "\t" + walkNanos / 1000000.0 / nRuns + "\t" + inducedNanos / 1000000.0 / nRuns
+					+ "\t" + newickNanos / 1000000.0 / nRuns + "\t" + counter.count / nRuns);
+		}
+		System.out.println("identical results: " + identical);
+		return identical;
+	}
+
+	/**
+	 * Find the induced subtree by walking up the stored tree from each tip until the path meets one already walked. The
+	 * nodes where two paths meet are the LICAs of pairs of tips.
+	 * @return the parent in the induced subtree of each of its nodes, -1 for the root
+	 */
+	private TLongLongHashMap walkPaths(long [] tips) {
+		TLongLongHashMap reachedFrom = new TLongLongHashMap(); // the child each walked node was first reached from
+		TLongHashSet induced = new TLongHashSet();
+		for (long tip : tips) {
+			induced.add(tip);
+			Node nd = graphDb.getNodeById(tip);
+			Relationship rel;
+			while ((rel = SynthTreeUtil.getParentRel(nd, TREE_NAME)) != null) {
+				long parentId = rel.getEndNode().getId();
+				if (reachedFrom.containsKey(parentId)) {
+					if (reachedFrom.get(parentId) != nd.getId()) {
+						induced.add(parentId);
+					}
+					break;
+				}
+				reachedFrom.put(parentId, nd.getId());
+				nd = rel.getEndNode();
+			}
+		}
+		TLongLongHashMap parents = new TLongLongHashMap();
+		for (long id : induced.toArray()) {
+			Node nd = graphDb.getNodeById(id);
+			long parentId = -1;
+			Relationship rel;
+			while ((rel = SynthTreeUtil.getParentRel(nd, TREE_NAME)) != null) {
+				nd = rel.getEndNode();
+				if (induced.contains(nd.getId())) {
+					parentId = nd.getId();
+					break;
+				}
+			}
+			parents.put(id, parentId);
+		}
+		return parents;
+	}
+
+	private static boolean sameParents(InducedSubtree subtree, TLongLongHashMap walkParents) {
+		if (subtree.size() != walkParents.size()) {
+			return false;
+		}
+		long [] nodeIds = subtree.getNodeIds();
+		int [] parents = subtree.getParents();
+		for (int i = 0; i < nodeIds.length; i++) {
+			long parentId = parents[i] == -1 ? -1 : nodeIds[parents[i]];
+			if (walkParents.containsKey(nodeIds[i]) == false || walkParents.get(nodeIds[i]) != parentId) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long [] sample(int k) {
+		ArrayList<Long> shuffled = new ArrayList<Long>(tipIds.size());
+		for (int i = 0; i < tipIds.size(); i++) {
+			shuffled.add(tipIds.get(i));
+		}
+		Collections.shuffle(shuffled, random);
+		long [] ids = new long[k];
+		for (int i = 0; i < k; i++) {
+			ids[i] = shuffled.get(i);
+		}
+		return ids;
+	}
+
+	/**
+	 * Counts the characters written to it instead of keeping them.
+	 */
+	private static final class CharCounter implements Appendable {
+		long count;
+
+		public Appendable append(CharSequence csq) {
+			count += csq.length();
+			return this;
+		}
+
+		public Appendable append(CharSequence csq, int start, int end) {
+			count += end - start;
+			return this;
+		}
+
+		public Appendable append(char c) {
+			count += 1;
+			return this;
+		}
+	}
+}
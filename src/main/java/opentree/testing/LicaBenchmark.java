@@ -0,0 +1,340 @@
+package opentree.testing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import gnu.trove.list.array.TLongArrayList;
+
+import opentree.GraphDatabaseAgent;
+import opentree.LicaBipartEvaluatorBS;
+import opentree.LicaContainsAllEvaluatorBS;
+import opentree.LicaUtil;
+import opentree.RelTypes;
+import opentree.TaxonSetUtil;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Traversal;
+
+/**
+ * Times the LICA searches that are made while ingesting a tree against the BitSet evaluators
+ * (LicaBipartEvaluatorBS and LicaContainsAllEvaluatorBS with their visited list, driven the way
+ * LicaUtil used to drive them) and the current LicaUtil.getBipart4j and LicaUtil.getSuperLICAt4j,
+ * and checks that they find the same nodes. The visited lists make the old searches quadratic in
+ * the tree size, so use large trees (e.g. 5,000 tips) to see the per-tree cost.
+ *
+ * The graph is synthetic: a random taxonomy over `nTips` tips plus one partially sampled source
+ * tree, so that both the taxonomy and the mrca/outmrca branches of the bipart evaluator are used.
+ * Each benchmarked "tree" is a random tree over `nTreeTips` of the tips, and a LICA search is made
+ * for each of its internal nodes. The bipart searches widen the mrca and outmrca properties, so each
+ * pass is run in a transaction that is rolled back.
+ */
+public final class LicaBenchmark {
+
+	private final GraphDatabaseAgent graphDb;
+	private final Random random;
+	private final ArrayList<Node> tips = new ArrayList<Node>();
+
+	public LicaBenchmark(GraphDatabaseAgent graphDb, long seed) {
+		this.graphDb = graphDb;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * A clade of the synthetic graph or of a benchmarked tree.
+	 */
+	private static final class Clade {
+		final Node node;
+		final long [] tipIds;
+		Clade(Node node, long [] tipIds) {
+			this.node = node;
+			this.tipIds = tipIds;
+		}
+	}
+
+	/**
+	 * Build the taxonomy and the source tree.
+	 */
+	public void buildGraph(int nTips) {
+		Transaction tx = graphDb.beginTx();
+		try {
+			ArrayList<Clade> clades = new ArrayList<Clade>();
+			for (int i = 0; i < nTips; i++) {
+				Node tip = graphDb.createNode();
+				tip.setProperty("name", "t" + i);
+				long [] mrca = {tip.getId()};
+				TaxonSetUtil.setMrca(tip, mrca, graphDb.getTaxonSetCodec());
+				TaxonSetUtil.setNestedMrca(tip, new long[0], graphDb.getTaxonSetCodec());
+				tips.add(tip);
+				clades.add(new Clade(tip, mrca));
+			}
+			joinRandomly(clades, null);
+
+			// the source tree samples a subset of the tips, and its nodes are "the rest" only of that subset
+			int nSourceTips = Math.min(nTips / 2, 1000);
+			ArrayList<Clade> sourceClades = new ArrayList<Clade>();
+			for (Node tip : sample(nSourceTips)) {
+				long [] mrca = {tip.getId()};
+				sourceClades.add(new Clade(tip, mrca));
+			}
+			long [] sourceTipIds = allTipIds(sourceClades);
+			joinRandomly(sourceClades, sourceTipIds);
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+	}
+
+	/**
+	 * Join random pairs of clades until one is left. If `allIds` is null the new nodes are taxonomy
+	 * nodes, otherwise they get an outmrca of the ids in `allIds` that they do not contain.
+	 */
+	private void joinRandomly(ArrayList<Clade> clades, long [] allIds) {
+		while (clades.size() > 1) {
+			Clade c1 = removeRandom(clades);
+			Clade c2 = removeRandom(clades);
+			Node parent = graphDb.createNode();
+			long [] mrca = merge(c1.tipIds, c2.tipIds);
+			TaxonSetUtil.setMrca(parent, mrca, graphDb.getTaxonSetCodec());
+			if (allIds == null) {
+				TaxonSetUtil.setNestedMrca(parent, new long[0], graphDb.getTaxonSetCodec());
+			} else if (mrca.length < allIds.length) {
+				// LicaBipartEvaluatorBS can't read an empty outmrca, so the source tree root is left without one
+				TaxonSetUtil.setOutMrca(parent, difference(allIds, mrca), graphDb.getTaxonSetCodec());
+			}
+			c1.node.createRelationshipTo(parent, RelTypes.MRCACHILDOF);
+			c2.node.createRelationshipTo(parent, RelTypes.MRCACHILDOF);
+			clades.add(new Clade(parent, mrca));
+		}
+	}
+
+	/**
+	 * Run `nTrees` random trees of `nTreeTips` tips through both sets of evaluators and print the timings.
+	 * @return true if the evaluators found the same nodes for every search
+	 */
+	public boolean run(int nTreeTips, int nTrees) {
+		long [] oldNanos = new long[2];
+		long [] newNanos = new long[2];
+		long [] oldBytes = new long[2];
+		long [] newBytes = new long[2];
+		long nSearches = 0;
+		long nLicas = 0;
+		boolean identical = true;
+		for (int t = 0; t < nTrees; t++) {
+			ArrayList<long []> ins = new ArrayList<long []>();
+			ArrayList<long []> outs = new ArrayList<long []>();
+			randomTreeBipartitions(nTreeTips, ins, outs);
+			nSearches += ins.size();
+
+			ArrayList<long []> oldResults = new ArrayList<long []>();
+			ArrayList<long []> newResults = new ArrayList<long []>();
+			for (int pass = 0; pass < 2; pass++) {
+				boolean bipart = pass == 0;
+				long [] nanosBytes = runTree(ins, outs, bipart, false, oldResults);
+				oldNanos[pass] += nanosBytes[0];
+				oldBytes[pass] += nanosBytes[1];
+				nanosBytes = runTree(ins, outs, bipart, true, newResults);
+				newNanos[pass] += nanosBytes[0];
+				newBytes[pass] += nanosBytes[1];
+			}
+			for (int i = 0; i < oldResults.size(); i++) {
+				nLicas += newResults.get(i).length;
+				if (Arrays.equals(oldResults.get(i), newResults.get(i)) == false) {
+					identical = false;
+				}
+			}
+		}
+		System.out.println("trees: " + nTrees + " tips per tree: " + nTreeTips + " searches per pass: " + nSearches + " licas found: " + nLicas);
+		System.out.println("search\tevaluators\tms per tree\tallocated MB per tree");
+		String [] passNames = {"bipart", "superlica"};
+		for (int pass = 0; pass < 2; pass++) {
+			System.out.println(passNames[pass] + "\tbitset\t" + (oldNanos[pass] / 1000000.0 / nTrees) + "\t" + megabytes(oldBytes[pass], nTrees));
+			System.out.println(passNames[pass] + "\tcurrent\t" + (newNanos[pass] / 1000000.0 / nTrees) + "\t" + megabytes(newBytes[pass], nTrees));
+		}
+		System.out.println("identical results: " + identical);
+		return identical;
+	}
+
+	/**
+	 * Make the LICA search for each bipartition of one tree in a transaction that is rolled back.
+	 * @return {elapsed nanoseconds, allocated bytes (-1 if the jvm can't tell)}
+	 */
+	private long [] runTree(List<long []> ins, List<long []> outs, boolean bipart, boolean current, List<long []> results) {
+		long startBytes = allocatedBytes();
+		long start = System.nanoTime();
+		Transaction tx = graphDb.beginTx();
+		try {
+			for (int i = 0; i < ins.size(); i++) {
+				ArrayList<Node> startNodes = new ArrayList<Node>();
+				for (long id : ins.get(i)) {
+					startNodes.add(graphDb.getNodeById(id));
+				}
+				TLongArrayList inIds = new TLongArrayList(ins.get(i));
+				TLongArrayList outIds = new TLongArrayList(outs.get(i));
+				HashSet<Node> licas;
+				if (bipart && current) {
+					licas = LicaUtil.getBipart4j(startNodes, startNodes, inIds, inIds, outIds, graphDb);
+				} else if (bipart) {
+					licas = getBipartBitSet(startNodes, inIds, outIds);
+				} else if (current) {
+					licas = LicaUtil.getSuperLICAt4j(startNodes, startNodes, inIds, inIds);
+				} else {
+					licas = getSuperLICABitSet(startNodes, inIds);
+				}
+				results.add(sortedIds(licas));
+			}
+		} finally {
+			tx.failure();
+			tx.finish();
+		}
+		long elapsed = System.nanoTime() - start;
+		long endBytes = allocatedBytes();
+		long [] ret = {elapsed, startBytes < 0 ? -1 : endBytes - startBytes};
+		return ret;
+	}
+
+	/**
+	 * LicaUtil.getBipart4j as it was with LicaBipartEvaluatorBS
+	 */
+	private HashSet<Node> getBipartBitSet(List<Node> nodeSetsm, TLongArrayList inIdSet, TLongArrayList outIdSet) {
+		HashSet<Node> retaln = new HashSet<Node>();
+		TLongArrayList testnodes = new TLongArrayList();
+		LicaBipartEvaluatorBS le = new LicaBipartEvaluatorBS();
+		le.setgraphdb(graphDb);
+		le.setInset(inIdSet);
+		le.setOutset(outIdSet);
+		for (Node innode : nodeSetsm) {
+			le.setVisitedSet(testnodes);
+			for (Node tnode : Traversal.description().breadthFirst().evaluator(le).relationships(RelTypes.MRCACHILDOF, Direction.OUTGOING).traverse(innode).nodes()) {
+				retaln.add(tnode);
+			}
+			testnodes = le.getVisitedSet();
+		}
+		return retaln;
+	}
+
+	/**
+	 * LicaUtil.getSuperLICAt4j as it was with LicaContainsAllEvaluatorBS
+	 */
+	private HashSet<Node> getSuperLICABitSet(List<Node> nodeSetsm, TLongArrayList inIdSet) {
+		HashSet<Node> retaln = new HashSet<Node>();
+		LicaContainsAllEvaluatorBS ca = new LicaContainsAllEvaluatorBS();
+		ca.setinIDset(inIdSet);
+		TLongArrayList testnodes = new TLongArrayList();
+		for (Node innode : nodeSetsm) {
+			ca.setVisitedSet(testnodes);
+			for (Node tnode : Traversal.description().depthFirst().evaluator(ca).relationships(RelTypes.MRCACHILDOF, Direction.OUTGOING).traverse(innode).nodes()) {
+				retaln.add(tnode);
+			}
+			testnodes = ca.getVisitedSet();
+		}
+		return retaln;
+	}
+
+	/**
+	 * Fill `ins` and `outs` with the tip ids on either side of each internal node of a random tree,
+	 * in postorder as they would be searched during ingest.
+	 */
+	private void randomTreeBipartitions(int nTreeTips, List<long []> ins, List<long []> outs) {
+		ArrayList<Clade> clades = new ArrayList<Clade>();
+		for (Node tip : sample(nTreeTips)) {
+			long [] ids = {tip.getId()};
+			clades.add(new Clade(null, ids));
+		}
+		long [] treeTipIds = allTipIds(clades);
+		while (clades.size() > 1) {
+			Clade c1 = removeRandom(clades);
+			Clade c2 = removeRandom(clades);
+			long [] in = merge(c1.tipIds, c2.tipIds);
+			ins.add(in);
+			outs.add(difference(treeTipIds, in));
+			clades.add(new Clade(null, in));
+		}
+	}
+
+	private List<Node> sample(int n) {
+		ArrayList<Node> shuffled = new ArrayList<Node>(tips);
+		java.util.Collections.shuffle(shuffled, random);
+		return shuffled.subList(0, Math.min(n, shuffled.size()));
+	}
+
+	private Clade removeRandom(ArrayList<Clade> clades) {
+		int i = random.nextInt(clades.size());
+		Clade c = clades.get(i);
+		clades.set(i, clades.get(clades.size() - 1));
+		clades.remove(clades.size() - 1);
+		return c;
+	}
+
+	private static long [] allTipIds(List<Clade> clades) {
+		long [] ids = new long[clades.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = clades.get(i).tipIds[0];
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	private static long [] sortedIds(HashSet<Node> nodes) {
+		long [] ids = new long[nodes.size()];
+		int i = 0;
+		for (Node nd : nodes) {
+			ids[i++] = nd.getId();
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	/**
+	 * @return the union of two disjoint sorted arrays
+	 */
+	private static long [] merge(long [] a, long [] b) {
+		long [] ret = new long[a.length + b.length];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length || j < b.length) {
+			if (j == b.length || (i < a.length && a[i] < b[j])) {
+				ret[n++] = a[i++];
+			} else {
+				ret[n++] = b[j++];
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the ids of sorted `all` that are not in sorted `sub`
+	 */
+	private static long [] difference(long [] all, long [] sub) {
+		long [] ret = new long[all.length - sub.length];
+		int j = 0, n = 0;
+		for (int i = 0; i < all.length; i++) {
+			if (j < sub.length && sub[j] == all[i]) {
+				j++;
+			} else {
+				ret[n++] = all[i];
+			}
+		}
+		return ret;
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static String megabytes(long bytes, int nTrees) {
+		if (bytes < 0) {
+			return "n/a";
+		}
+		return String.valueOf(bytes / 1048576.0 / nTrees);
+	}
+}
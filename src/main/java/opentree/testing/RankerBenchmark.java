@@ -0,0 +1,145 @@
+package opentree.testing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import opentree.GraphDatabaseAgent;
+import opentree.RelTypes;
+import opentree.synthesis.RankingCriterion;
+import opentree.synthesis.RankingOrder;
+import opentree.synthesis.RelationshipRanker;
+import opentree.synthesis.SourceMetadataCache;
+import opentree.synthesis.SourceProperty;
+import opentree.synthesis.SourcePropertyPrioritizedRankingCriterion;
+import opentree.synthesis.SourcePropertyRankingCriterion;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+
+/**
+ * Times the ranking of candidate relationships with the draft tree criteria (study id priority, then
+ * year) in two ways: sorting the whole list once per criterion with the criteria as comparators (the
+ * way RelationshipRanker used to rank), and RelationshipRanker.rankRelationships, which computes the
+ * rank keys once per rel and sorts on the composite key. Both share one warm SourceMetadataCache, so
+ * the difference is the per-comparison property reads and comparator overhead, not index lookups.
+ *
+ * The graph is synthetic: `nSources` source metadata nodes (some without a study id or a year) and one
+ * node with STREECHILDOF rels from the largest candidate set, each from a random source.
+ */
+public final class RankerBenchmark {
+
+	private final GraphDatabaseAgent graphDb;
+	private final Random random;
+	private final ArrayList<Relationship> rels = new ArrayList<Relationship>();
+	private final ArrayList<Object> priorityList = new ArrayList<Object>();
+
+	public RankerBenchmark(GraphDatabaseAgent graphDb, long seed) {
+		this.graphDb = graphDb;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Make the source metadata nodes and `nRels` candidate rels. About half the study ids are put in the priority list.
+	 */
+	public void buildGraph(int nSources, int nRels) {
+		Index<Node> sourceMetaIndex = graphDb.getNodeIndex("sourceMetaNodes");
+		Transaction tx = graphDb.beginTx();
+		try {
+			for (int i = 0; i < nSources; i++) {
+				Node md = graphDb.createNode();
+				String source = "s" + i;
+				md.setProperty("source", source);
+				if (i % 7 != 0) {
+					String studyId = String.valueOf(1000 + i);
+					md.setProperty(SourceProperty.STUDYID.propertyName, studyId);
+					if (random.nextBoolean()) {
+						priorityList.add(studyId);
+					}
+				}
+				if (i % 5 != 0) {
+					md.setProperty(SourceProperty.YEAR.propertyName, Long.valueOf(1990 + random.nextInt(25)));
+				}
+				sourceMetaIndex.add(md, "source", source);
+			}
+			Collections.shuffle(priorityList, random);
+			Node parent = graphDb.createNode();
+			for (int i = 0; i < nRels; i++) {
+				Relationship rel = graphDb.createNode().createRelationshipTo(parent, RelTypes.STREECHILDOF);
+				rel.setProperty("source", "s" + random.nextInt(nSources));
+				rels.add(rel);
+			}
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+	}
+
+	/**
+	 * Rank random candidate sets of each size in `sizes`, enough sets to rank about `nCandidates` rels per size
+	 * (and at least 10 sets).
+	 * @return true if both ways gave the same order every time
+	 */
+	public boolean run(int [] sizes, int nCandidates) {
+		SourceMetadataCache metadata = new SourceMetadataCache(graphDb.getNodeIndex("sourceMetaNodes"));
+		RankingCriterion [] criteria = {
+				new SourcePropertyPrioritizedRankingCriterion(SourceProperty.STUDYID, priorityList, metadata),
+				new SourcePropertyRankingCriterion(SourceProperty.YEAR, RankingOrder.DECREASING, metadata)};
+		RelationshipRanker ranker = new RelationshipRanker();
+		for (RankingCriterion rc : criteria) {
+			ranker.addCriterion(rc);
+		}
+
+		boolean identical = true;
+		System.out.println("candidates\trankings\tcomparator sort us per ranking\tkey sort us per ranking");
+		for (int size : sizes) {
+			if (size > rels.size()) {
+				System.out.println("skipping " + size + " candidates, there are only " + rels.size() + " rels");
+				continue;
+			}
+			int nRankings = Math.max(10, nCandidates / size);
+			ArrayList<List<Relationship>> sets = new ArrayList<List<Relationship>>();
+			for (int i = 0; i < nRankings; i++) {
+				Collections.shuffle(rels, random);
+				sets.add(new ArrayList<Relationship>(rels.subList(0, size)));
+			}
+
+			// one untimed pass of each to warm up the cache and the jit
+			for (List<Relationship> set : sets) {
+				comparatorSort(criteria, set);
+				ranker.rankRelationships(set);
+			}
+
+			long comparatorNanos = 0;
+			long keyNanos = 0;
+			for (List<Relationship> set : sets) {
+				long start = System.nanoTime();
+				List<Relationship> byComparator = comparatorSort(criteria, set);
+				comparatorNanos += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				Iterable<Relationship> byKeys = ranker.rankRelationships(set);
+				keyNanos += System.nanoTime() - start;
+
+				identical = identical && byComparator.equals(byKeys);
+			}
+			System.out.println(size + "\t" + nRankings + "\t" + (comparatorNanos / 1000.0 / nRankings) + "\t" + (keyNanos / 1000.0 / nRankings));
+		}
+		System.out.println("identical results: " + identical);
+		return identical;
+	}
+
+	/**
+	 * Sort stably by each criterion from last to first, comparing rels with compare().
+	 */
+	private static List<Relationship> comparatorSort(RankingCriterion [] criteria, List<Relationship> rels) {
+		ArrayList<Relationship> ranked = new ArrayList<Relationship>(rels);
+		for (int i = criteria.length - 1; i >= 0; i--) {
+			Collections.sort(ranked, criteria[i]);
+		}
+		return ranked;
+	}
+}
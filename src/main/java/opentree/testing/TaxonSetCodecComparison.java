@@ -0,0 +1,68 @@
+package opentree.testing;
+
+import opentree.GraphDatabaseAgent;
+import opentree.TaxonSetCodec;
+import opentree.TaxonSetUtil;
+import opentree.BitmapTaxonSetCodec;
+import opentree.LongArrayTaxonSetCodec;
+
+import org.neo4j.graphdb.Node;
+
+/**
+ * Compares the stored size and the encode/decode time of the taxon set codecs over all the
+ * mrca, outmrca and nested_mrca properties in a graph. Nothing is written to the graph.
+ */
+public final class TaxonSetCodecComparison {
+
+	private final TaxonSetCodec [] codecs = {TaxonSetUtil.getCodec(LongArrayTaxonSetCodec.NAME), TaxonSetUtil.getCodec(BitmapTaxonSetCodec.NAME)};
+	private final long [] storedBytes = new long[codecs.length];
+	private final long [] encodeNanos = new long[codecs.length];
+	private final long [] decodeNanos = new long[codecs.length];
+	private long nSets = 0;
+	private long nIds = 0;
+	private long largestSet = 0;
+
+	/**
+	 * Measure every taxon set property in the graph.
+	 */
+	public void compare(GraphDatabaseAgent graphDb) {
+		for (Node nd : graphDb.getAllNodes()) {
+			for (String key : TaxonSetUtil.TAXON_SET_PROPERTIES) {
+				if (nd.hasProperty(key)) {
+					add(TaxonSetUtil.getTaxonSet(nd, key));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Measure a single sorted id set.
+	 */
+	public void add(long [] sortedIds) {
+		nSets += 1;
+		nIds += sortedIds.length;
+		largestSet = Math.max(largestSet, sortedIds.length);
+		for (int i = 0; i < codecs.length; i++) {
+			long start = System.nanoTime();
+			Object stored = codecs[i].encode(sortedIds);
+			encodeNanos[i] += System.nanoTime() - start;
+			storedBytes[i] += TaxonSetUtil.storedBytes(stored);
+			start = System.nanoTime();
+			long [] decoded = codecs[i].decode(stored);
+			decodeNanos[i] += System.nanoTime() - start;
+			if (decoded.length > sortedIds.length) {
+				throw new java.lang.IllegalStateException("codec " + codecs[i].getName() + " did not round trip a set");
+			}
+		}
+	}
+
+	public void report() {
+		System.out.println("taxon sets: " + nSets + " ids: " + nIds + " largest set: " + largestSet);
+		System.out.println("codec\tstored bytes\tbytes/id\tencode ms\tdecode ms");
+		for (int i = 0; i < codecs.length; i++) {
+			System.out.println(codecs[i].getName() + "\t" + storedBytes[i] + "\t"
+					+ (nIds == 0 ? 0 : (double) storedBytes[i] / nIds) + "\t"
+					+ (encodeNanos[i] / 1000000) + "\t" + (decodeNanos[i] / 1000000));
+		}
+	}
+}
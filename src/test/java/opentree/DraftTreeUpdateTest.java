@@ -0,0 +1,179 @@
+package opentree;
+
+// junit functions
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+// Core neo4j components for a test db
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+// the opentree package to be tested
+import opentree.GraphExplorer;
+
+public class DraftTreeUpdateTest {
+
+	protected GraphDatabaseService graphDb;
+	protected GraphDatabaseAgent agent;
+	protected GraphExplorer ge;
+	protected Node a, b, c, d, e;
+	protected Node top, r, p, p2, x, q, n, y;
+
+	/**
+	 * The tree nodes, each with its mrca:
+	 * 		top (a, b, c, d, e)
+	 * 		r (a, b, c) and p (d, e), children of top in s1 and s2
+	 * 		x (a, b, c), child of r in s1, and p2 (d, e), child of p in s2
+	 * 		q (d, e), child of p2 in s2
+	 * 		n (a, b), child of x in s1 and of q in s2
+	 * with a and b children of n, c of x, and d and e of q. The synthesis could put n below either x or q, and it goes
+	 * below x as x is nearer the top.
+	 */
+	@Before
+	public void prepareTestDatabase() throws Exception {
+		graphDb = new TestGraphDatabaseFactory().newImpermanentDatabaseBuilder().newGraphDatabase();
+		agent = new GraphDatabaseAgent(graphDb);
+		TaxonSetCodec codec = agent.getTaxonSetCodec();
+		Transaction tx = graphDb.beginTx();
+		try {
+			Node [] tips = new Node[5];
+			for (int i = 0; i < tips.length; i++) {
+				tips[i] = graphDb.createNode();
+				long [] mrca = {tips[i].getId()};
+				TaxonSetUtil.setMrca(tips[i], mrca, codec);
+			}
+			a = tips[0];
+			b = tips[1];
+			c = tips[2];
+			d = tips[3];
+			e = tips[4];
+			top = treeNode(codec, a, b, c, d, e);
+			r = treeNode(codec, a, b, c);
+			p = treeNode(codec, d, e);
+			x = treeNode(codec, a, b, c);
+			p2 = treeNode(codec, d, e);
+			q = treeNode(codec, d, e);
+			n = treeNode(codec, a, b);
+			for (String source : Arrays.asList("s1", "s2", "s3")) {
+				Node md = graphDb.createNode();
+				md.setProperty("source", source);
+				md.setProperty("ot:studyId", source);
+				graphDb.index().forNodes("sourceMetaNodes").add(md, "source", source);
+			}
+			addRel(r, top, "s1");
+			addRel(p, top, "s2");
+			addRel(x, r, "s1");
+			addRel(p2, p, "s2");
+			addRel(q, p2, "s2");
+			addRel(n, x, "s1");
+			addRel(n, q, "s2");
+			addRel(a, n, "s1");
+			addRel(b, n, "s1");
+			addRel(c, x, "s1");
+			addRel(d, q, "s2");
+			addRel(e, q, "s2");
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		ge = new GraphExplorer(graphDb);
+		assertTrue(ge.synthesizeAndStoreDraftTreeBranches(top, Arrays.asList("s2", "s1"), false));
+		assertEquals(x, getDraftParent(n));
+	}
+
+	@After
+	public void destroyTestDatabase() {
+		graphDb.shutdown();
+	}
+
+	private Node treeNode(TaxonSetCodec codec, Node... tips) {
+		Node nd = graphDb.createNode();
+		long [] mrca = new long[tips.length];
+		for (int i = 0; i < tips.length; i++) {
+			mrca[i] = tips[i].getId();
+		}
+		Arrays.sort(mrca);
+		TaxonSetUtil.setMrca(nd, mrca, codec);
+		return nd;
+	}
+
+	private void addRel(Node child, Node parent, String source) {
+		Relationship rel = child.createRelationshipTo(parent, RelTypes.STREECHILDOF);
+		rel.setProperty("source", source);
+		Index<Relationship> sourceRels = graphDb.index().forRelationships("sourceRels");
+		sourceRels.add(rel, "source", source);
+	}
+
+	/**
+	 * @return the draft tree parent of `nd`, or null if it isn't in the draft tree
+	 */
+	private Node getDraftParent(Node nd) {
+		Relationship rel = SynthTreeUtil.getParentRel(nd, GraphBase.DRAFTTREENAME);
+		return rel == null ? null : rel.getEndNode();
+	}
+
+	/**
+	 * Adds the source s3, ranked above the others (the last in the list of preferred sources), with the node y (a, c)
+	 * as a child of x. Then a and c go below y, and n conflicts with y at x. The subtree of r is resynthesized first,
+	 * leaving out n and b, but q is still a parent of n and a full resynthesis places n (with b) there.
+	 */
+	@Test
+	public void testNodeLeftOutOfTheSubtreeIsPlacedElsewhere() {
+		Transaction tx = graphDb.beginTx();
+		try {
+			y = treeNode(agent.getTaxonSetCodec(), a, c);
+			addRel(a, y, "s3");
+			addRel(c, y, "s3");
+			addRel(y, x, "s3");
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		int nReplaced = ge.updateDraftTreeBranches(top, Arrays.asList("s2", "s1", "s3"), ge.getNodesTouchedBySources(Arrays.asList("s3")), false);
+		assertEquals(1, nReplaced);
+		assertEquals(y, getDraftParent(a));
+		assertEquals(y, getDraftParent(c));
+		assertEquals(x, getDraftParent(y));
+		assertEquals(q, getDraftParent(n));
+		assertEquals(n, getDraftParent(b));
+		assertEquals(q, getDraftParent(d));
+		assertEquals(top, getDraftParent(r));
+	}
+
+	/**
+	 * As above, but with n only a child of x, so a full resynthesis leaves n and b out of the draft tree too.
+	 */
+	@Test
+	public void testNodeWithNowhereElseToGoIsLeftOut() {
+		Transaction tx = graphDb.beginTx();
+		try {
+			for (Relationship rel : n.getRelationships(RelTypes.STREECHILDOF)) {
+				if (rel.getEndNode().equals(q)) {
+					rel.delete();
+				}
+			}
+			y = treeNode(agent.getTaxonSetCodec(), a, c);
+			addRel(a, y, "s3");
+			addRel(c, y, "s3");
+			addRel(y, x, "s3");
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		int nReplaced = ge.updateDraftTreeBranches(top, Arrays.asList("s2", "s1", "s3"), ge.getNodesTouchedBySources(Arrays.asList("s3")), false);
+		assertEquals(1, nReplaced);
+		assertEquals(y, getDraftParent(a));
+		assertEquals(x, getDraftParent(y));
+		assertNull(getDraftParent(n));
+		assertNull(getDraftParent(b));
+		assertEquals(top, getDraftParent(p));
+	}
+}
@@ -0,0 +1,165 @@
+package opentree;
+
+// junit functions
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeSet;
+
+// Core neo4j components for a test db
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+// the opentree package to be tested
+import opentree.DraftTreeLicaIndex;
+import opentree.InducedSubtree;
+
+public class InducedSubtreeTest {
+
+	private static final String TREE_NAME = "test_tree";
+
+	protected GraphDatabaseService graphDb;
+
+	@Before
+	public void prepareTestDatabase() {
+		graphDb = new TestGraphDatabaseFactory().newImpermanentDatabaseBuilder().newGraphDatabase();
+	}
+
+	@After
+	public void destroyTestDatabase() {
+		graphDb.shutdown();
+	}
+
+	/**
+	 * Store the tree with the parent positions (see PreorderLicaTableTest) as the synthetic tree TREE_NAME, with the
+	 * nodes named "n" and their position.
+	 * @return the nodes by position
+	 */
+	private Node [] storeTree(int [] parents) {
+		Node [] nodes = new Node[parents.length];
+		Transaction tx = graphDb.beginTx();
+		try {
+			for (int i = 0; i < parents.length; i++) {
+				nodes[i] = graphDb.createNode();
+				nodes[i].setProperty("name", "n" + i);
+				if (i > 0) {
+					SynthTreeUtil.createRelationship(nodes[i], nodes[parents[i]], TREE_NAME);
+				}
+			}
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		return nodes;
+	}
+
+	/**
+	 * Check the subtree induced by the nodes at `positions` against the one found by walking up the parents.
+	 */
+	private void assertInduced(int [] parents, Node [] nodes, DraftTreeLicaIndex index, int... positions) {
+		// the nodes and the LICAs of all their pairs
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int a : positions) {
+			for (int b : positions) {
+				int [] pair = {a, b};
+				expected.add(PreorderLicaTableTest.naiveLica(parents, pair));
+			}
+		}
+		long [] ids = new long[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			ids[i] = nodes[positions[i]].getId();
+		}
+		HashMap<Long, Integer> positionsById = new HashMap<Long, Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			positionsById.put(nodes[i].getId(), i);
+		}
+
+		InducedSubtree subtree = new InducedSubtree(index, ids);
+		long [] subtreeIds = subtree.getNodeIds();
+		int [] subtreeParents = subtree.getParents();
+		assertEquals(expected.size(), subtree.size());
+		assertEquals(-1, subtreeParents[0]);
+		TreeSet<Integer> found = new TreeSet<Integer>();
+		for (int i = 0; i < subtreeIds.length; i++) {
+			int position = positionsById.get(subtreeIds[i]);
+			found.add(position);
+			if (i > 0) {
+				// the parent comes first and is the closest ancestor in the subtree
+				assertTrue(subtreeParents[i] < i);
+				int ancestor = parents[position];
+				while (expected.contains(ancestor) == false) {
+					ancestor = parents[ancestor];
+				}
+				assertEquals(nodes[ancestor].getId(), subtreeIds[subtreeParents[i]]);
+			}
+		}
+		assertEquals(expected, found);
+	}
+
+	@Test
+	public void testChain() throws Exception {
+		int [] parents = PreorderLicaTableTest.chain(100);
+		Node [] nodes = storeTree(parents);
+		DraftTreeLicaIndex index = new DraftTreeLicaIndex(nodes[0], TREE_NAME);
+		assertInduced(parents, nodes, index, 50);
+		assertInduced(parents, nodes, index, 10, 90);
+		assertInduced(parents, nodes, index, 90, 10, 40, 90, 99);
+
+		long [] ids = {nodes[80].getId(), nodes[3].getId()};
+		StringBuilder newick = new StringBuilder();
+		new InducedSubtree(index, ids).writeNewick(new GraphDatabaseAgent(graphDb), newick);
+		assertEquals("(n80)n3", newick.toString());
+	}
+
+	@Test
+	public void testStar() {
+		int [] parents = PreorderLicaTableTest.star(100);
+		Node [] nodes = storeTree(parents);
+		DraftTreeLicaIndex index = new DraftTreeLicaIndex(nodes[0], TREE_NAME);
+		assertInduced(parents, nodes, index, 7);
+		assertInduced(parents, nodes, index, 7, 8);
+		assertInduced(parents, nodes, index, 99, 1, 40, 70, 1);
+		assertInduced(parents, nodes, index, 0, 33);
+	}
+
+	@Test
+	public void testRandomTrees() {
+		Random r = new Random(11);
+		int [] parents = PreorderLicaTableTest.randomTree(300, r);
+		Node [] nodes = storeTree(parents);
+		DraftTreeLicaIndex index = new DraftTreeLicaIndex(nodes[0], TREE_NAME);
+		for (int q = 0; q < 300; q++) {
+			int [] positions = new int[1 + r.nextInt(8)];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = r.nextInt(parents.length);
+			}
+			assertInduced(parents, nodes, index, positions);
+		}
+		// a node with its parent, and with itself again
+		int leaf = parents.length - 1;
+		assertInduced(parents, nodes, index, leaf, parents[leaf], leaf);
+	}
+
+	@Test
+	public void testNodesNotInTheTree() {
+		Node [] nodes = storeTree(PreorderLicaTableTest.chain(5));
+		DraftTreeLicaIndex index = new DraftTreeLicaIndex(nodes[2], TREE_NAME);
+		long [] none = {};
+		long [] outside = {nodes[3].getId(), nodes[1].getId()};
+		for (long [] ids : Arrays.asList(none, outside)) {
+			try {
+				new InducedSubtree(index, ids);
+				fail("no subtree should be induced by " + Arrays.toString(ids));
+			} catch (IllegalArgumentException iae) {
+				// expected
+			}
+		}
+	}
+}
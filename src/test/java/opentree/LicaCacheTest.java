@@ -0,0 +1,166 @@
+package opentree;
+
+// junit functions
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import gnu.trove.list.array.TLongArrayList;
+
+// Core neo4j components for a test db
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+// the opentree package to be tested
+import opentree.LicaCache;
+
+public class LicaCacheTest {
+
+	protected GraphDatabaseService graphDb;
+	protected GraphDatabaseAgent agent;
+	protected Node a, b, c, d, e;
+	protected Node ab;
+	protected Node root;
+	protected Node x; // a tree node with the mrca (a) and the outmrca (c)
+
+	protected LicaCache cache;
+	protected TaxonSetOverlay overlay;
+
+	/**
+	 * The taxa ((a,b),c,d,e) and the tree node x below the root with a as its child.
+	 */
+	@Before
+	public void prepareTestDatabase() {
+		graphDb = new TestGraphDatabaseFactory().newImpermanentDatabaseBuilder().newGraphDatabase();
+		agent = new GraphDatabaseAgent(graphDb);
+		TaxonSetCodec codec = agent.getTaxonSetCodec();
+		Transaction tx = graphDb.beginTx();
+		try {
+			Node [] tips = new Node[5];
+			for (int i = 0; i < tips.length; i++) {
+				tips[i] = graphDb.createNode();
+				long [] mrca = {tips[i].getId()};
+				TaxonSetUtil.setMrca(tips[i], mrca, codec);
+			}
+			a = tips[0];
+			b = tips[1];
+			c = tips[2];
+			d = tips[3];
+			e = tips[4];
+			ab = graphDb.createNode();
+			TaxonSetUtil.setMrca(ab, ids(a, b), codec);
+			root = graphDb.createNode();
+			TaxonSetUtil.setMrca(root, ids(a, b, c, d, e), codec);
+			x = graphDb.createNode();
+			TaxonSetUtil.setMrca(x, ids(a), codec);
+			TaxonSetUtil.setOutMrca(x, ids(c), codec);
+			a.createRelationshipTo(ab, RelTypes.MRCACHILDOF);
+			b.createRelationshipTo(ab, RelTypes.MRCACHILDOF);
+			a.createRelationshipTo(x, RelTypes.MRCACHILDOF);
+			for (Node nd : Arrays.asList(ab, c, d, e, x)) {
+				nd.createRelationshipTo(root, RelTypes.MRCACHILDOF);
+			}
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		cache = new LicaCache();
+		overlay = new TaxonSetOverlay();
+	}
+
+	@After
+	public void destroyTestDatabase() {
+		graphDb.shutdown();
+	}
+
+	private static long [] ids(Node... nodes) {
+		long [] ids = new long[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			ids[i] = nodes[i].getId();
+		}
+		return ids;
+	}
+
+	private HashSet<Node> search(List<Node> startNodes, long [] inIds, long [] outIds) {
+		TLongArrayList in = new TLongArrayList(inIds);
+		return cache.getBipart4j(startNodes, startNodes, in, in, new TLongArrayList(outIds), agent, overlay);
+	}
+
+	/** ab and x, visiting a, b, ab and x and widening the mrca of x to (a, b) */
+	private HashSet<Node> searchAB() {
+		return search(Arrays.asList(a, b), ids(a, b), ids(c));
+	}
+
+	/** d, visiting only d */
+	private HashSet<Node> searchD() {
+		return search(Arrays.asList(d), ids(d), ids(a));
+	}
+
+	@Test
+	public void testHitUntilAVisitedNodeChanges() {
+		HashSet<Node> licas = searchAB();
+		assertEquals(new HashSet<Node>(Arrays.asList(ab, x)), licas);
+		assertEquals(licas, searchAB());
+		assertEquals(1, cache.getHits());
+
+		// nodes the search didn't visit
+		cache.nodeChanged(c.getId());
+		cache.nodeChanged(root.getId());
+		assertEquals(licas, searchAB());
+		assertEquals(2, cache.getHits());
+
+		cache.nodeChanged(ab.getId());
+		assertEquals(licas, searchAB());
+		assertEquals(2, cache.getHits());
+		assertEquals(4, cache.getLookups());
+	}
+
+	@Test
+	public void testRelationshipAdded() {
+		searchAB();
+
+		// between visited nodes, and from a node the search didn't visit
+		cache.relationshipAdded(b.getId(), x.getId());
+		cache.relationshipAdded(c.getId(), ab.getId());
+		searchAB();
+		assertEquals(1, cache.getHits());
+
+		// from a visited node to one the search didn't reach
+		cache.relationshipAdded(x.getId(), root.getId());
+		searchAB();
+		assertEquals(1, cache.getHits());
+		searchAB();
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void testWideningBySearchDropsTheSearchesThatVisitedTheNode() {
+		searchAB();
+		searchD();
+
+		// widens the mrca of x to (a, b, e)
+		HashSet<Node> licas = search(Arrays.asList(a), ids(a, e), ids(c));
+		assertEquals(new HashSet<Node>(Arrays.asList(x)), licas);
+		assertArrayEquals(ids(a, b, e), overlay.getMrca(x));
+
+		searchD();
+		assertEquals(1, cache.getHits());
+		searchAB();
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void testClear() {
+		searchD();
+		cache.clear();
+		searchD();
+		assertEquals(0, cache.getHits());
+	}
+}
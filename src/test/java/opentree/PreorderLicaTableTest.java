@@ -0,0 +1,211 @@
+package opentree;
+
+// junit functions
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+// the opentree package to be tested
+import opentree.PreorderLicaTable;
+
+public class PreorderLicaTableTest {
+
+	/**
+	 * @return the node id at a preorder position, which is not the position so that the two aren't mixed up
+	 */
+	static long id(int position) {
+		return 1000 + 3L * position;
+	}
+
+	static PreorderLicaTable table(int [] parents) {
+		long [] ids = new long[parents.length];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = id(i);
+		}
+		return new PreorderLicaTable(ids, parents);
+	}
+
+	static int [] chain(int n) {
+		int [] parents = new int[n];
+		for (int i = 0; i < n; i++) {
+			parents[i] = i - 1;
+		}
+		return parents;
+	}
+
+	static int [] star(int n) {
+		int [] parents = new int[n];
+		parents[0] = -1;
+		return parents;
+	}
+
+	/**
+	 * @return the parent positions of a random tree of n nodes, in preorder
+	 */
+	static int [] randomTree(int n, Random r) {
+		ArrayList<ArrayList<Integer>> children = new ArrayList<ArrayList<Integer>>();
+		for (int i = 0; i < n; i++) {
+			children.add(new ArrayList<Integer>());
+			if (i > 0) {
+				// mostly close to the new node, so the tree is deep as well as bushy
+				int parent = r.nextBoolean() ? i - 1 - r.nextInt(Math.min(i, 3)) : r.nextInt(i);
+				children.get(parent).add(i);
+			}
+		}
+		int [] parents = new int[n];
+		int [] positions = new int[n];
+		int [] stack = new int[n];
+		int top = 0;
+		int next = 0;
+		stack[0] = 0;
+		while (top >= 0) {
+			int nd = stack[top--];
+			positions[nd] = next++;
+			for (int c = children.get(nd).size() - 1; c >= 0; c--) {
+				stack[++top] = children.get(nd).get(c);
+			}
+		}
+		parents[0] = -1;
+		for (int nd = 0; nd < n; nd++) {
+			for (int child : children.get(nd)) {
+				parents[positions[child]] = positions[nd];
+			}
+		}
+		return parents;
+	}
+
+	/**
+	 * @return the position of the LICA of the positions, found by walking up from them
+	 */
+	static int naiveLica(int [] parents, int [] positions) {
+		int [] depths = new int[parents.length];
+		for (int i = 1; i < parents.length; i++) {
+			depths[i] = depths[parents[i]] + 1;
+		}
+		int lica = positions[0];
+		for (int p : positions) {
+			while (depths[p] > depths[lica]) {
+				p = parents[p];
+			}
+			while (depths[lica] > depths[p]) {
+				lica = parents[lica];
+			}
+			while (p != lica) {
+				p = parents[p];
+				lica = parents[lica];
+			}
+		}
+		return lica;
+	}
+
+	static long [] ids(int... positions) {
+		long [] ids = new long[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			ids[i] = id(positions[i]);
+		}
+		return ids;
+	}
+
+	@Test
+	public void testChain() {
+		PreorderLicaTable t = table(chain(200));
+		for (int i = 0; i < 200; i++) {
+			for (int j = i; j < 200; j++) {
+				assertEquals(id(i), t.getLICA(ids(i, j)));
+				assertEquals(id(i), t.getLICA(ids(j, i)));
+			}
+		}
+		assertTrue(t.isAncestor(id(3), id(150)));
+		assertFalse(t.isAncestor(id(150), id(3)));
+		assertEquals(id(149), t.getParent(id(150)));
+		assertEquals(-1, t.getParent(id(0)));
+		assertEquals(199, t.getRight(0));
+	}
+
+	@Test
+	public void testStar() {
+		PreorderLicaTable t = table(star(200));
+		// leaves in the same block, in neighbouring blocks and more than two blocks apart
+		assertEquals(id(0), t.getLICA(ids(1, 2)));
+		assertEquals(id(0), t.getLICA(ids(31, 32)));
+		assertEquals(id(0), t.getLICA(ids(5, 40)));
+		assertEquals(id(0), t.getLICA(ids(5, 70)));
+		assertEquals(id(0), t.getLICA(ids(199, 1, 100)));
+		assertEquals(id(0), t.getLICA(ids(0, 150)));
+		assertEquals(id(77), t.getLICA(ids(77)));
+		assertEquals(id(0), t.getParent(id(199)));
+	}
+
+	@Test
+	public void testSingleRepeatedAndNestedIds() {
+		int [] parents = randomTree(300, new Random(3));
+		PreorderLicaTable t = table(parents);
+		for (int i = 0; i < parents.length; i++) {
+			assertEquals(id(i), t.getLICA(ids(i)));
+			assertEquals(id(i), t.getLICA(ids(i, i, i)));
+			if (i > 0) {
+				// a node with its parent and with the root
+				assertEquals(id(parents[i]), t.getLICA(ids(i, parents[i], i)));
+				assertEquals(id(0), t.getLICA(ids(0, i)));
+			}
+		}
+	}
+
+	@Test
+	public void testRandomTreesAgainstWalkingUp() {
+		Random r = new Random(17);
+		int [] sizes = {1, 2, 31, 32, 33, 63, 64, 65, 129, 500, 3000};
+		for (int n : sizes) {
+			int [] parents = randomTree(n, r);
+			PreorderLicaTable t = table(parents);
+			for (int q = 0; q < 2000; q++) {
+				int [] positions = new int[1 + r.nextInt(5)];
+				for (int i = 0; i < positions.length; i++) {
+					positions[i] = r.nextInt(n);
+				}
+				long [] ids = new long[positions.length];
+				for (int i = 0; i < positions.length; i++) {
+					ids[i] = id(positions[i]);
+				}
+				assertEquals("tree of " + n + " nodes", id(naiveLica(parents, positions)), t.getLICA(ids));
+			}
+		}
+	}
+
+	@Test
+	public void testNodesNotInTheTree() {
+		PreorderLicaTable t = table(chain(10));
+		assertEquals(-1, t.getLICA(new long[0]));
+		long [] unknown = {id(2), 5};
+		assertEquals(-1, t.getLICA(unknown));
+		assertEquals(-1, t.getPosition(5));
+		assertFalse(t.isAncestor(5, id(2)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotInPreorder() {
+		int [] parents = {-1, 2, 0};
+		table(parents);
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		int [] parents = randomTree(100, new Random(5));
+		PreorderLicaTable t = table(parents);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		t.write(new DataOutputStream(bytes));
+		PreorderLicaTable read = PreorderLicaTable.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(t.size(), read.size());
+		for (int i = 0; i < t.size(); i++) {
+			assertEquals(t.getNodeId(i), read.getNodeId(i));
+			assertEquals(t.getParent(id(i)), read.getParent(id(i)));
+			assertEquals(t.getRight(i), read.getRight(i));
+		}
+	}
+}
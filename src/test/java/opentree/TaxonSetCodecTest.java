@@ -0,0 +1,86 @@
+package opentree;
+
+// junit functions
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import gnu.trove.set.hash.TLongHashSet;
+
+// the opentree package to be tested
+import opentree.BitmapTaxonSetCodec;
+import opentree.LongArrayTaxonSetCodec;
+import opentree.TaxonSetUtil;
+
+public class TaxonSetCodecTest {
+
+	private final BitmapTaxonSetCodec bitmap = new BitmapTaxonSetCodec();
+
+	private void assertRoundTrip(long [] sortedIds) {
+		long [] decoded = TaxonSetUtil.decode(bitmap.encode(sortedIds));
+		assertArrayEquals(sortedIds, decoded);
+	}
+
+	@Test
+	public void testEmptyAndSingle() {
+		assertRoundTrip(new long[0]);
+		long [] single = {12345678L};
+		assertRoundTrip(single);
+	}
+
+	@Test
+	public void testAllContainerTypes() {
+		// a long run, a sparse array and a dense random chunk, spread over several chunks
+		TLongHashSet ids = new TLongHashSet();
+		for (long i = 70000; i < 200000; i++) {
+			ids.add(i);
+		}
+		for (long i = 0; i < 3000; i++) {
+			ids.add(300000 + 7 * i);
+		}
+		Random r = new Random(17);
+		for (int i = 0; i < 20000; i++) {
+			ids.add(5L * 65536 + r.nextInt(65536));
+		}
+		ids.add(Integer.MAX_VALUE * 3L);
+		long [] sortedIds = ids.toArray();
+		java.util.Arrays.sort(sortedIds);
+		assertRoundTrip(sortedIds);
+
+		// the long run must compress well below the long[] size
+		long [] run = new long[130000];
+		for (int i = 0; i < run.length; i++) {
+			run[i] = 70000 + i;
+		}
+		assertTrue(TaxonSetUtil.storedBytes(bitmap.encode(run)) < 100);
+	}
+
+	@Test
+	public void testRepeatsAreKept() {
+		long [] withDups = {1, 1, 2, 5, 5, 5, 70000, 70000};
+		assertRoundTrip(withDups);
+
+		// repeats in a run container and at the ends of the set
+		long [] run = new long[1006];
+		run[0] = 69999;
+		run[1] = 69999;
+		for (int i = 0; i < 1000; i++) {
+			run[i + 2] = 70000 + i;
+		}
+		run[1002] = 70500;
+		run[1003] = 70999;
+		run[1004] = 70999;
+		run[1005] = 70999;
+		java.util.Arrays.sort(run);
+		assertRoundTrip(run);
+	}
+
+	@Test
+	public void testLongArrayIsStillReadable() {
+		long [] ids = {3, 9, 27};
+		Object stored = new LongArrayTaxonSetCodec().encode(ids);
+		assertFalse(bitmap.canDecode(stored));
+		assertArrayEquals(ids, TaxonSetUtil.decode(stored));
+	}
+}